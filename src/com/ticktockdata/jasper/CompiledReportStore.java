@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2018 Joseph A Miller
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ticktockdata.jasper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import net.sf.jasperreports.engine.JRConstants;
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JasperReport;
+import net.sf.jasperreports.engine.util.JRLoader;
+import net.sf.jasperreports.engine.util.JRSaver;
+import static com.ticktockdata.jasper.ReportManager.logger;
+
+/**
+ * Directory of compiled (.jasper) reports that survives a restart, so a
+ * report only needs to be compiled once per change of its .jrxml file.
+ * <p>
+ * Files are named &lt;report&gt;-&lt;path hash&gt;-&lt;content hash&gt;.jasper,
+ * where the content hash also covers the JasperReports and Java versions.  A
+ * modified .jrxml (or an upgrade) gives a new name, so a stale file is never
+ * loaded, and the old file for the same path is deleted when the new one is
+ * saved.
+ * <p>
+ * This class is used only by the ReportCache.
+ *
+ * @since Oct 18, 2026
+ */
+final class CompiledReportStore {
+
+    /**
+     * Included in the content hash, so reports compiled by a different
+     * version of JasperReports (or Java) are not loaded
+     */
+    private static final String VERSION_KEY = "JR " + getJasperReportsVersion()
+            + " / " + JRConstants.SERIAL_VERSION_UID
+            + " / Java " + System.getProperty("java.specification.version");
+
+    private final File dir;
+
+    /**
+     * @param dir the cache directory, created if it does not exist
+     * @throws IOException if the directory can not be created
+     */
+    CompiledReportStore(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can not create compiled report directory: " + dir.getAbsolutePath());
+        }
+        this.dir = dir;
+    }
+
+    File getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Loads the compiled report for this .jrxml file, if it was saved from the
+     * current version of the file.
+     *
+     * @param file the .jrxml file
+     * @return the compiled report, or null if there is none (or it is
+     * unreadable)
+     */
+    JasperReport load(File file) {
+
+        File jasper;
+        try {
+            jasper = getCompiledFile(file);
+        } catch (IOException ex) {
+            logger.warn("Could not read report file " + file + ": " + ex.getMessage());
+            return null;
+        }
+        if (!jasper.isFile()) {
+            return null;
+        }
+        try {
+            Object obj = JRLoader.loadObject(jasper);
+            if (obj instanceof JasperReport) {
+                logger.debug("Loaded compiled report from " + jasper);
+                return (JasperReport) obj;
+            }
+        } catch (JRException | RuntimeException ex) {
+            logger.warn("Could not load compiled report " + jasper + ", it will be recompiled", ex);
+        }
+        jasper.delete();
+        return null;
+    }
+
+    /**
+     * Saves the compiled report, replacing any older one for the same file.
+     *
+     * @param file the .jrxml file that was compiled
+     * @param report
+     */
+    void save(File file, JasperReport report) {
+
+        File tmp = null;
+        try {
+            File jasper = getCompiledFile(file);
+            tmp = File.createTempFile("compiling-", ".tmp", dir);
+            JRSaver.saveObject(report, tmp);
+            Files.move(tmp.toPath(), jasper.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            tmp = null;
+            logger.debug("Saved compiled report to " + jasper);
+
+            // remove the files compiled from older versions of this report
+            String prefix = getPrefix(file);
+            File[] old = dir.listFiles((File d, String name) -> name.startsWith(prefix) && !name.equals(jasper.getName()));
+            if (old != null) {
+                for (File f : old) {
+                    f.delete();
+                }
+            }
+        } catch (JRException | IOException | RuntimeException ex) {
+            logger.warn("Could not save compiled report for " + file, ex);
+        } finally {
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    private File getCompiledFile(File file) throws IOException {
+        MessageDigest md = newDigest();
+        md.update(Files.readAllBytes(file.toPath()));
+        md.update(VERSION_KEY.getBytes(StandardCharsets.UTF_8));
+        return new File(dir, getPrefix(file) + toHex(md.digest(), 16) + ".jasper");
+    }
+
+    private static String getPrefix(File file) {
+        String name = file.getName().replaceFirst("(?i)\\.jrxml$", "").replaceAll("[^A-Za-z0-9_.]", "_");
+        MessageDigest md = newDigest();
+        md.update(file.getAbsolutePath().getBytes(StandardCharsets.UTF_8));
+        return name + "-" + toHex(md.digest(), 8) + "-";
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            // every Java platform is required to support SHA-256
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    static String toHex(byte[] bytes, int count) {
+        StringBuilder sb = new StringBuilder(count * 2);
+        for (int i = 0; i < count && i < bytes.length; i++) {
+            sb.append(String.format("%02x", bytes[i]));
+        }
+        return sb.toString();
+    }
+
+    private static String getJasperReportsVersion() {
+        Package p = JasperReport.class.getPackage();
+        String version = (p == null ? null : p.getImplementationVersion());
+        return (version == null ? "unknown" : version);
+    }
+
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright (C) 2018 Joseph A Miller
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ticktockdata.jasper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import net.sf.jasperreports.engine.JRRuntimeException;
+import net.sf.jasperreports.engine.JRVirtualizable;
+import net.sf.jasperreports.engine.fill.JRAbstractLRUVirtualizer;
+
+/**
+ * Keeps the pages that are paged out in memory, compressed, like
+ * JRGzipVirtualizer, but with a much cheaper codec:
+ * <ul>
+ * <li>LZ - a simple LZ77 block codec (in the style of LZ4), very fast, and
+ * the pages of a report compress well with it because they repeat the same
+ * styles and class names
+ * <li>DEFLATE - raw deflate at BEST_SPEED, smaller but slower than LZ
+ * </ul>
+ * Each thread reuses its Deflater / Inflater and buffers, so no streams are
+ * created for each page.  The last maxSize pages are kept uncompressed.
+ * <p>
+ * Created for {@link JasperReportImpl.Virtualization#LZ} and
+ * {@link JasperReportImpl.Virtualization#DEFLATE}.
+ *
+ * @since Oct 18, 2026
+ */
+final class CompressingVirtualizer extends JRAbstractLRUVirtualizer {
+
+    static enum Codec {
+        LZ,
+        DEFLATE
+    }
+
+    /**
+     * a compressed page, and its uncompressed length
+     */
+    private static final class Page {
+
+        private final byte[] data;
+        private final int length;
+
+        private Page(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+    /**
+     * a ByteArrayOutputStream that lets the buffer be used without copying
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+
+        private Buffer() {
+            super(16 * 1024);
+        }
+
+        private byte[] array() {
+            return buf;
+        }
+    }
+
+    /**
+     * the reusable buffers and codec state of one thread
+     */
+    private static final class Work {
+
+        private final Buffer page = new Buffer();
+        private byte[] out = new byte[16 * 1024];
+        private final int[] table = new int[1 << HASH_BITS];
+        private Deflater deflater = null;
+        private Inflater inflater = null;
+
+        /**
+         * @return the output buffer, grown (keeping its content) if smaller
+         * than size
+         */
+        private byte[] out(int size) {
+            if (out.length < size) {
+                out = Arrays.copyOf(out, Math.max(size, out.length * 2));
+            }
+            return out;
+        }
+    }
+
+    private static final String EXCEPTION_MESSAGE_KEY_NO_DATA_FOUND = "fill.virtualizer.no.data.found";
+    private static final int HASH_BITS = 14;
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_OFFSET = 0xFFFF;
+
+    private static final ThreadLocal<Work> WORK = ThreadLocal.withInitial(Work::new);
+
+    private final Codec codec;
+    private final Map<String, Page> pages = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxSize the number of pages kept uncompressed
+     * @param codec
+     */
+    CompressingVirtualizer(int maxSize, Codec codec) {
+        super(maxSize);
+        this.codec = codec;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    protected void pageOut(JRVirtualizable o) throws IOException {
+
+        if (pages.containsKey(o.getUID())) {
+            if (!isReadOnly(o)) {
+                throw new IllegalStateException("Cannot virtualize data because the data for object UID \""
+                        + o.getUID() + "\" already exists.");
+            }
+            return;
+        }
+
+        Work work = WORK.get();
+        work.page.reset();
+        writeData(o, work.page);
+        int length = work.page.size();
+        byte[] src = work.page.array();
+
+        byte[] data;
+        if (codec == Codec.DEFLATE) {
+            // raw inflate needs one extra byte after the data
+            data = Arrays.copyOf(work.out, deflate(work, src, length) + 1);
+        } else {
+            data = Arrays.copyOf(work.out, compress(work, src, length));
+        }
+        pages.put(o.getUID(), new Page(data, length));
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    protected void pageIn(JRVirtualizable o) throws IOException {
+
+        Page page = pages.get(o.getUID());
+        if (page == null) {
+            throw new JRRuntimeException(EXCEPTION_MESSAGE_KEY_NO_DATA_FOUND, new Object[]{o.getUID()});
+        }
+
+        // not a pooled buffer, reading the page may page out others
+        byte[] data = new byte[page.length];
+        if (codec == Codec.DEFLATE) {
+            inflate(WORK.get(), page, data);
+        } else {
+            decompress(page.data, data, page.length);
+        }
+        readData(o, new ByteArrayInputStream(data));
+
+        if (!isReadOnly(o)) {
+            // Wait until we know it worked before tossing the data.
+            pages.remove(o.getUID());
+        }
+    }
+
+    @Override
+    protected void dispose(String virtualId) {
+        pages.remove(virtualId);
+    }
+
+    @Override
+    public void cleanup() {
+        pages.clear();
+        reset();
+    }
+
+    // ==================================================================== DEFLATE
+    private static int deflate(Work work, byte[] src, int length) {
+
+        if (work.deflater == null) {
+            work.deflater = new Deflater(Deflater.BEST_SPEED, true);
+        }
+        Deflater deflater = work.deflater;
+        deflater.reset();
+        deflater.setInput(src, 0, length);
+        deflater.finish();
+        byte[] out = work.out(length + (length >> 4) + 64);
+        int size = 0;
+        while (!deflater.finished()) {
+            if (size == out.length) {
+                out = work.out(out.length * 2);
+            }
+            size += deflater.deflate(out, size, out.length - size);
+        }
+        return size;
+    }
+
+    private static void inflate(Work work, Page page, byte[] data) throws IOException {
+
+        if (work.inflater == null) {
+            work.inflater = new Inflater(true);
+        }
+        Inflater inflater = work.inflater;
+        inflater.reset();
+        inflater.setInput(page.data);
+        try {
+            int size = 0;
+            while (size < page.length && !inflater.finished()) {
+                int n = inflater.inflate(data, size, page.length - size);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                size += n;
+            }
+            if (size != page.length) {
+                throw new IOException("Compressed page is truncated: " + size + " of " + page.length + " bytes");
+            }
+        } catch (DataFormatException ex) {
+            throw new IOException("Compressed page is corrupt", ex);
+        }
+    }
+
+    // ========================================================================= LZ
+    // A sequence is: literal count (varint), the literals, then - unless the
+    // input ended - match length - MIN_MATCH (varint) and the offset (2 bytes)
+    private static int compress(Work work, byte[] src, int length) {
+
+        byte[] out = work.out(length + (length >> 6) + 16);
+        int[] table = work.table;
+        Arrays.fill(table, -1);
+
+        int o = 0;
+        int anchor = 0;
+        int i = 0;
+        int misses = 0;
+        int limit = length - MIN_MATCH;
+        while (i <= limit) {
+            int value = readInt(src, i);
+            int h = (value * -1640531535) >>> (32 - HASH_BITS);
+            int ref = table[h];
+            table[h] = i;
+            if (ref < 0 || i - ref > MAX_OFFSET || readInt(src, ref) != value) {
+                // skip faster through data that does not compress
+                i += 1 + (misses++ >>> 6);
+                continue;
+            }
+            misses = 0;
+            int match = MIN_MATCH;
+            while (i + match < length && src[ref + match] == src[i + match]) {
+                match++;
+            }
+            o = writeVarInt(out, o, i - anchor);
+            System.arraycopy(src, anchor, out, o, i - anchor);
+            o += i - anchor;
+            o = writeVarInt(out, o, match - MIN_MATCH);
+            int offset = i - ref;
+            out[o++] = (byte) offset;
+            out[o++] = (byte) (offset >>> 8);
+            i += match;
+            anchor = i;
+        }
+        o = writeVarInt(out, o, length - anchor);
+        System.arraycopy(src, anchor, out, o, length - anchor);
+        return o + length - anchor;
+    }
+
+    private static void decompress(byte[] in, byte[] data, int length) throws IOException {
+
+        int[] pos = {0};
+        int d = 0;
+        try {
+            while (true) {
+                int literals = readVarInt(in, pos);
+                System.arraycopy(in, pos[0], data, d, literals);
+                pos[0] += literals;
+                d += literals;
+                if (pos[0] >= in.length) {
+                    break;
+                }
+                int match = readVarInt(in, pos) + MIN_MATCH;
+                int offset = (in[pos[0]] & 0xFF) | ((in[pos[0] + 1] & 0xFF) << 8);
+                pos[0] += 2;
+                // byte by byte, the match may overlap what it copies
+                for (int from = d - offset, end = d + match; d < end; d++, from++) {
+                    data[d] = data[from];
+                }
+            }
+        } catch (IndexOutOfBoundsException ex) {
+            throw new IOException("Compressed page is corrupt", ex);
+        }
+        if (d != length) {
+            throw new IOException("Compressed page is truncated: " + d + " of " + length + " bytes");
+        }
+    }
+
+    private static int readInt(byte[] b, int i) {
+        return (b[i] & 0xFF) | ((b[i + 1] & 0xFF) << 8) | ((b[i + 2] & 0xFF) << 16) | (b[i + 3] << 24);
+    }
+
+    private static int writeVarInt(byte[] out, int o, int value) {
+        while ((value & ~0x7F) != 0) {
+            out[o++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[o++] = (byte) value;
+        return o;
+    }
+
+    private static int readVarInt(byte[] in, int[] pos) {
+        int value = 0;
+        int shift = 0;
+        while (true) {
+            byte b = in[pos[0]++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+
+}
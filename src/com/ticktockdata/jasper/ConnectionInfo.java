@@ -23,6 +23,7 @@ import java.io.Serializable;
 import java.security.InvalidParameterException;
 import java.sql.Connection;
 import java.sql.Driver;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
@@ -37,6 +38,15 @@ import javax.swing.SwingUtilities;
  */
 public class ConnectionInfo implements Serializable {
 
+    /** Default min number of open connections, see {@link #setMinConnections(int)} */
+    public static final int DEFAULT_MIN_CONNECTIONS = 1;
+    /** Default max number of open connections, see {@link #setMaxConnections(int)} */
+    public static final int DEFAULT_MAX_CONNECTIONS = 10;
+    /** Default seconds before an idle connection is closed, see {@link #setIdleTimeout(int)} */
+    public static final int DEFAULT_IDLE_TIMEOUT = 300;
+    /** Default seconds to wait for a free connection, see {@link #setBorrowTimeout(int)} */
+    public static final int DEFAULT_BORROW_TIMEOUT = 60;
+
     /** Identifier can only be set via constructor - 
      * equals() is implemented solely on the Identifier */
     private String identifier;
@@ -46,7 +56,12 @@ public class ConnectionInfo implements Serializable {
     private String url = null;
     private String user = null;
     private String password = null;
-    private Connection conn = null;
+    private int minConnections = DEFAULT_MIN_CONNECTIONS;
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    private int idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private int borrowTimeout = DEFAULT_BORROW_TIMEOUT;
+    private QueryProfile queryProfile = new QueryProfile();
+    private transient ConnectionPool pool = null;
     
     private boolean initialized = false;
 
@@ -155,62 +170,195 @@ public class ConnectionInfo implements Serializable {
     
     
     /**
-     * This is called to get the database connection.
+     * @return the min number of connections kept open
+     */
+    public int getMinConnections() {
+        return minConnections;
+    }
+
+    /**
+     * @param minConnections the min number of connections kept open, even
+     * when idle (default {@link #DEFAULT_MIN_CONNECTIONS})
+     */
+    public void setMinConnections(int minConnections) {
+        if (minConnections < 0) {
+            throw new InvalidParameterException("Min Connections may not be less than 0!");
+        }
+        this.minConnections = minConnections;
+    }
+
+    /**
+     * @return the max number of connections open at once
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * This is also the max number of reports that can fill at the same time
+     * with this connection, others wait for a free connection.
+     * @param maxConnections the max number of connections open at once
+     * (default {@link #DEFAULT_MAX_CONNECTIONS})
+     */
+    public void setMaxConnections(int maxConnections) {
+        if (maxConnections < 1) {
+            throw new InvalidParameterException("Max Connections may not be less than 1!");
+        }
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * @return seconds before an idle connection is closed
+     */
+    public int getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * @param idleTimeout seconds before an idle connection is closed (unless
+     * only the min are open), zero or less never closes them (default
+     * {@link #DEFAULT_IDLE_TIMEOUT})
+     */
+    public void setIdleTimeout(int idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * @return seconds to wait for a free connection
+     */
+    public int getBorrowTimeout() {
+        return borrowTimeout;
+    }
+
+    /**
+     * @param borrowTimeout seconds to wait for a free connection when all
+     * of them are in use (default {@link #DEFAULT_BORROW_TIMEOUT})
+     */
+    public void setBorrowTimeout(int borrowTimeout) {
+        if (borrowTimeout < 0) {
+            throw new InvalidParameterException("Borrow Timeout may not be less than 0!");
+        }
+        this.borrowTimeout = borrowTimeout;
+    }
+    
+    
+    /**
+     * @return how the report queries are run, never null
+     */
+    public QueryProfile getQueryProfile() {
+        return queryProfile;
+    }
+
+    /**
+     * @param queryProfile how the report queries are run on this connection,
+     * applied to each fill by the ReportManager
+     */
+    public void setQueryProfile(QueryProfile queryProfile) {
+        if (queryProfile == null) {
+            throw new InvalidParameterException("Query Profile may not be null!");
+        }
+        this.queryProfile = queryProfile;
+    }
+    
+    
+    /**
+     * This is called to get a database connection from this connection's pool.
      * Should only be called internally and by ReportConnectionManager.
- Synchronized for thread safety.
- <p>Shows an error message (JOptionPane) if no connection can be made.
+     * The connection <b>must be closed</b> when done with, which returns it
+     * to the pool.
+     * <p>Shows an error message (JOptionPane) if no connection can be made,
+     * unless the reports are filled headless.
      * @return null if no connection can be made
      */
-    protected synchronized Connection getConnection() {
+    protected Connection getConnection() {
         
-        if (conn != null) return conn;
+        try {
+            return getPool().borrow();
+        } catch (Exception ex) {
+            LOGGER.error("Failed to get a database connection with the information provided!", ex);
+            if (!ReportManager.isHeadlessFill()) {
+                JOptionPane.showMessageDialog(null, 
+                        "Failed to make a database connection\n"
+                                + "with the information provided!\n"
+                                + "Driver = " + driverClass + "\nURL = " + url + "\n"
+                                + "User = " + user + ", Password = " + password + "\n"
+                                + "Error: " + ex.toString(), 
+                        "Database Error:", JOptionPane.ERROR_MESSAGE);
+            }
+            return null;
+        }
+    }
+    
+    /**
+     * Gets a connection from the pool without waiting, and without showing
+     * an error dialog.
+     * @return null if all of the connections are in use
+     * @throws SQLException if no connection could be opened
+     */
+    Connection tryGetConnection() throws SQLException {
+        return getPool().tryBorrow();
+    }
+    
+    /**
+     * Synchronized so only one pool is created.
+     */
+    private synchronized ConnectionPool getPool() {
+        if (pool == null) {
+            pool = new ConnectionPool(this);
+        }
+        return pool;
+    }
+    
+    /**
+     * Opens a new database connection, used by the ConnectionPool.
+     * @return the new connection
+     * @throws SQLException 
+     */
+    Connection openConnection() throws SQLException {
         
         loadDriverIfNeeded();
         
-        try {
-            // create properties - allows creating if User and/or Password is null
-            Properties props = new Properties();
-            if (user != null) {
-                props.put("user", user);
-            }
-            if (password != null) {
-                props.put("password", password);
-            }
-            
-            conn = java.sql.DriverManager.getConnection(url, props);
-            
-        } catch (Exception ex) {
-            LOGGER.error("Failed to make a database connection with the information provided!", ex);
-            JOptionPane.showMessageDialog(null, 
-                    "Failed to make a database connection\n"
-                            + "with the information provided!\n"
-                            + "Driver = " + driverClass + "\nURL = " + url + "\n"
-                            + "User = " + user + ", Password = " + password + "\n"
-                            + "Error: " + ex.toString(), 
-                    "Database Error:", JOptionPane.ERROR_MESSAGE);
-            conn = null;
+        // create properties - allows creating if User and/or Password is null
+        Properties props = new Properties();
+        if (user != null) {
+            props.put("user", user);
+        }
+        if (password != null) {
+            props.put("password", password);
         }
         
-        return conn;
+        return java.sql.DriverManager.getConnection(url, props);
+    }
+    
+    /**
+     * @return the statistics of the connection pool, for the STATUS command
+     */
+    public synchronized String getPoolStatus() {
+        if (pool == null) {
+            return "Connection pool " + getIdentifier() + ": not opened yet";
+        }
+        return pool.getStatusMessage();
     }
 
     /**
-     * This closes the database connection, if it is not already closed.
+     * This closes the database connections, if they are not already closed.
+     * Connections that are in use are closed when they are returned.
      * Should only be called internally and by ReportConnectionManager.
- Synchronized for thread safety.
+     * Synchronized for thread safety.
      */
     protected synchronized void closeConnection() {
         
-        if (conn == null) {
+        if (pool == null) {
             LOGGER.warn("Database connection for " + getIdentifier() + " is null, already closed");
             return;
         }
         try {
-            conn.close();
+            pool.close();
             LOGGER.info("Successfully closed database connection for " + getIdentifier());
         } catch (Exception ex) {
             LOGGER.error("Failed to close database connection for " + getIdentifier(), ex);
         }
+        pool = null;
         
     }
     
@@ -275,7 +423,7 @@ public class ConnectionInfo implements Serializable {
     }
     
     
-    private void loadDriverIfNeeded() {
+    private synchronized void loadDriverIfNeeded() {
         
         if (!initialized) {
             if (driverClass != null) {
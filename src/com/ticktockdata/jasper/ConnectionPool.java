@@ -0,0 +1,435 @@
+/*
+ * Copyright (C) 2018 Joseph A Miller
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ticktockdata.jasper;
+
+import static com.ticktockdata.jasper.ReportConnectionManager.LOGGER;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The pool of database connections of one {@link ConnectionInfo}.
+ * <p>
+ * {@link #borrow()} hands out an idle connection (after checking that it is
+ * still valid, so a restarted database does not break the next report), or
+ * opens a new one if fewer than the max are open, or else waits for one to be
+ * returned.  The Connection handed out is a proxy, calling close() on it
+ * returns the real connection to the pool.  If the borrower changed the
+ * auto-commit or read-only setting it is rolled back and reset first.
+ * <p>
+ * Every {@link #EVICT_INTERVAL_SECONDS} the connections that have been idle
+ * longer than the idle timeout are closed, down to the min size, and the pool
+ * is filled back up to the min size.
+ * <p>
+ * The sizes and timeouts are read from the ConnectionInfo each time they are
+ * needed, so changing them takes effect right away.
+ *
+ * @since Oct 18, 2026
+ */
+final class ConnectionPool {
+
+    static final int EVICT_INTERVAL_SECONDS = 30;
+    /**
+     * a connection returned less than this long ago is not validated again
+     */
+    private static final long VALIDATION_BYPASS_MILLIS = 500;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+
+    private static final ScheduledExecutorService EVICTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ConnectionPool-evictor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * a real connection, and the settings it is reset to when returned
+     */
+    private static final class Pooled {
+
+        private final Connection conn;
+        private final boolean autoCommit;
+        private final boolean readOnly;
+        private long lastUsed = System.currentTimeMillis();
+        private volatile boolean dirty = false;
+
+        private Pooled(Connection conn) throws SQLException {
+            this.conn = conn;
+            this.autoCommit = conn.getAutoCommit();
+            this.readOnly = conn.isReadOnly();
+        }
+    }
+
+    /**
+     * the borrower's view of a Pooled connection, close() returns it
+     */
+    private final class Handle implements InvocationHandler {
+
+        private final Pooled pooled;
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+
+        private Handle(Pooled pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+            switch (method.getName()) {
+                case "close":
+                    if (closed.compareAndSet(false, true)) {
+                        release(pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    if (closed.get()) {
+                        return true;
+                    }
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled " + pooled.conn;
+                default:
+            }
+            if (closed.get()) {
+                if (method.getName().equals("isValid")) {
+                    return false;
+                }
+                throw new SQLException("The connection was already returned to the pool of " + info.getIdentifier());
+            }
+            if (method.getName().startsWith("set")) {
+                pooled.dirty = true;
+            }
+            try {
+                return method.invoke(pooled.conn, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+    }
+
+    private final ConnectionInfo info;
+    private final Deque<Pooled> idle = new ArrayDeque<>();   // most recently used first
+    private final ScheduledFuture<?> evictTask;
+    /**
+     * idle + borrowed + being opened
+     */
+    private int total = 0;
+    private int waiting = 0;
+    private boolean closed = false;
+
+    // statistics
+    private long openedCount = 0;
+    private long borrowedCount = 0;
+    private long invalidCount = 0;
+    private long evictedCount = 0;
+    private long timeoutCount = 0;
+
+    /**
+     * @param info opens the connections, and has the pool settings
+     */
+    ConnectionPool(ConnectionInfo info) {
+        this.info = info;
+        this.evictTask = EVICTOR.scheduleWithFixedDelay(this::evict,
+                0, EVICT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Gets a connection from the pool, the caller must close() it to give it
+     * back.  Waits up to the ConnectionInfo's borrow timeout if all of the
+     * connections are in use.
+     *
+     * @return a valid connection
+     * @throws SQLException if no connection could be opened, or none became
+     * free in time
+     */
+    Connection borrow() throws SQLException {
+        return borrow(true);
+    }
+
+    /**
+     * Gets a connection from the pool without waiting, the caller must
+     * close() it to give it back.
+     *
+     * @return a valid connection, or null if all of them are in use
+     * @throws SQLException if no connection could be opened
+     */
+    Connection tryBorrow() throws SQLException {
+        return borrow(false);
+    }
+
+    private Connection borrow(boolean waitForFree) throws SQLException {
+
+        long deadline = System.currentTimeMillis() + info.getBorrowTimeout() * 1000L;
+        while (true) {
+            Pooled pooled;
+            synchronized (this) {
+                while (true) {
+                    if (closed) {
+                        throw new SQLException("The connection pool of " + info.getIdentifier() + " is closed");
+                    }
+                    pooled = idle.pollFirst();
+                    if (pooled != null || total < info.getMaxConnections()) {
+                        break;
+                    }
+                    if (!waitForFree) {
+                        return null;
+                    }
+                    long wait = deadline - System.currentTimeMillis();
+                    if (wait <= 0) {
+                        timeoutCount++;
+                        throw new SQLException("Timed out waiting for a connection to " + info.getIdentifier()
+                                + ", all " + total + " are in use");
+                    }
+                    waiting++;
+                    try {
+                        wait(wait);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for a connection to " + info.getIdentifier(), ex);
+                    } finally {
+                        waiting--;
+                    }
+                }
+                if (pooled == null) {
+                    total++;    // reserve it while it is opened
+                }
+            }
+
+            if (pooled == null) {
+                pooled = open();
+            } else if (!isValid(pooled)) {
+                LOGGER.info("Discarded an invalid connection to " + info.getIdentifier());
+                synchronized (this) {
+                    invalidCount++;
+                }
+                discard(pooled);
+                continue;
+            }
+            synchronized (this) {
+                borrowedCount++;
+            }
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, new Handle(pooled));
+        }
+    }
+
+    /**
+     * Closes the idle connections, the borrowed ones are closed when they are
+     * returned.  The pool can not be used after this.
+     */
+    void close() {
+        List<Pooled> toClose;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            evictTask.cancel(false);
+            toClose = new ArrayList<>(idle);
+            idle.clear();
+            total -= toClose.size();
+            notifyAll();
+        }
+        for (Pooled pooled : toClose) {
+            closeQuietly(pooled);
+        }
+        LOGGER.info("Closed the connection pool of " + info.getIdentifier()
+                + (total > 0 ? ", " + total + " in use are closed when returned" : ""));
+    }
+
+    /**
+     * @return user-readable statistics, for the STATUS command
+     */
+    synchronized String getStatusMessage() {
+        return "Connection pool " + info.getIdentifier() + ": "
+                + (total - idle.size()) + " in use, " + idle.size() + " idle (min "
+                + info.getMinConnections() + ", max " + info.getMaxConnections() + "), "
+                + waiting + " waiting, " + borrowedCount + " borrowed, "
+                + openedCount + " opened, " + invalidCount + " invalid, "
+                + evictedCount + " evicted, " + timeoutCount + " timed out";
+    }
+
+    /**
+     * Opens a new connection, its slot in total must already be reserved.
+     */
+    private Pooled open() throws SQLException {
+        try {
+            Pooled pooled = new Pooled(info.openConnection());
+            synchronized (this) {
+                openedCount++;
+            }
+            LOGGER.debug("Opened a new connection to " + info.getIdentifier());
+            return pooled;
+        } catch (SQLException | RuntimeException ex) {
+            synchronized (this) {
+                total--;
+                notifyAll();
+            }
+            throw ex;
+        }
+    }
+
+    private boolean isValid(Pooled pooled) {
+        if (System.currentTimeMillis() - pooled.lastUsed < VALIDATION_BYPASS_MILLIS) {
+            return true;
+        }
+        try {
+            return pooled.conn.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException | AbstractMethodError ex) {
+            // a pre-JDBC 4 driver, this is the best that can be done
+            try {
+                return !pooled.conn.isClosed();
+            } catch (SQLException x) {
+                return false;
+            }
+        }
+    }
+
+    private void release(Pooled pooled) {
+
+        boolean keep = reset(pooled);
+        synchronized (this) {
+            if (keep && !closed) {
+                pooled.lastUsed = System.currentTimeMillis();
+                idle.addFirst(pooled);
+                notifyAll();
+                return;
+            }
+        }
+        discard(pooled);
+    }
+
+    /**
+     * Undoes what the borrower changed.
+     *
+     * @return false if the connection is broken
+     */
+    private boolean reset(Pooled pooled) {
+        try {
+            if (pooled.conn.isClosed()) {
+                return false;
+            }
+            if (pooled.dirty) {
+                if (!pooled.conn.getAutoCommit()) {
+                    pooled.conn.rollback();
+                }
+                pooled.conn.setAutoCommit(pooled.autoCommit);
+                pooled.conn.setReadOnly(pooled.readOnly);
+                pooled.dirty = false;
+            }
+            pooled.conn.clearWarnings();
+            return true;
+        } catch (SQLException ex) {
+            LOGGER.warn("Failed to reset a returned connection to " + info.getIdentifier(), ex);
+            return false;
+        }
+    }
+
+    private void discard(Pooled pooled) {
+        synchronized (this) {
+            total--;
+            notifyAll();
+        }
+        closeQuietly(pooled);
+    }
+
+    private void closeQuietly(Pooled pooled) {
+        try {
+            pooled.conn.close();
+        } catch (SQLException ex) {
+            LOGGER.debug("Error closing a connection to " + info.getIdentifier(), ex);
+        }
+    }
+
+    /**
+     * Closes the connections idle for too long, then opens connections up to
+     * the min size.
+     */
+    private void evict() {
+
+        List<Pooled> expired = new ArrayList<>();
+        int missing;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            int idleTimeout = info.getIdleTimeout();
+            if (idleTimeout > 0) {
+                long cutoff = System.currentTimeMillis() - idleTimeout * 1000L;
+                // least recently used are at the end
+                Iterator<Pooled> it = idle.descendingIterator();
+                while (it.hasNext() && total > info.getMinConnections()) {
+                    Pooled pooled = it.next();
+                    if (pooled.lastUsed >= cutoff) {
+                        break;
+                    }
+                    it.remove();
+                    expired.add(pooled);
+                    total--;
+                }
+                evictedCount += expired.size();
+            }
+            missing = Math.max(0, Math.min(info.getMinConnections(), info.getMaxConnections()) - total);
+            total += missing;
+        }
+
+        for (Pooled pooled : expired) {
+            closeQuietly(pooled);
+        }
+        if (!expired.isEmpty()) {
+            LOGGER.debug("Closed " + expired.size() + " idle connections to " + info.getIdentifier());
+        }
+
+        for (int i = 0; i < missing; i++) {
+            Pooled pooled;
+            try {
+                pooled = open();
+            } catch (SQLException | RuntimeException ex) {
+                LOGGER.warn("Failed to open a connection to " + info.getIdentifier() + ": " + ex.toString());
+                synchronized (this) {
+                    total -= missing - i - 1;
+                }
+                return;
+            }
+            synchronized (this) {
+                if (!closed) {
+                    idle.addLast(pooled);
+                    notifyAll();
+                    continue;
+                }
+            }
+            discard(pooled);
+        }
+    }
+
+}
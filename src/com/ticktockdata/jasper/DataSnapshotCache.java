@@ -0,0 +1,344 @@
+/*
+ * Copyright (C) 2018 Joseph A Miller
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ticktockdata.jasper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import net.sf.jasperreports.data.cache.ColumnDataCacheHandler;
+import net.sf.jasperreports.data.cache.DataCacheHandler;
+import net.sf.jasperreports.data.cache.DataSnapshot;
+import net.sf.jasperreports.data.cache.PopulatedSnapshotCacheHandler;
+import net.sf.jasperreports.engine.JRConstants;
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.util.JRLoader;
+import net.sf.jasperreports.engine.util.JRSaver;
+import static com.ticktockdata.jasper.ReportManager.logger;
+
+/**
+ * Cache of the data of filled reports, as JasperReports columnar
+ * DataSnapshots, for reports that have a
+ * {@link JasperReportImpl#setDataSnapshotTTL(int)}.
+ * <p>
+ * The first fill of a report (for a {@link FilledReportCache.Key}) records the
+ * rows of all its datasets with a ColumnDataCacheHandler.  Later fills with the
+ * same key, until the TTL expires, are filled from the snapshot with a
+ * PopulatedSnapshotCacheHandler, without running any query.  So printing a
+ * report after previewing it, or exporting it to another format, does not
+ * touch the database, even when the filled report itself is not cached.
+ * <p>
+ * At most {@link #DEFAULT_MAX_ENTRIES} snapshots are kept in memory, the least
+ * recently used are removed.  If a store directory is set the snapshots are
+ * also saved there (in the compact column format), and are loaded from there
+ * when not in memory, also after a restart.  A snapshot with values that are
+ * not serializable is only kept in memory.
+ * <p>
+ * This class is used only by the ReportManager and ReportFill.
+ *
+ * @since Oct 18, 2026
+ */
+final class DataSnapshotCache {
+
+    static final int DEFAULT_MAX_ENTRIES = 32;
+
+    private static final String SUFFIX = ".snapshot";
+
+    /**
+     * A saved snapshot, with the key it was recorded for
+     */
+    private static final class Saved implements Serializable {
+
+        private static final long serialVersionUID = JRConstants.SERIAL_VERSION_UID;
+
+        private final String file;
+        private final long modified;
+        private final String connectionID;
+        private final TreeMap<String, Object> params;
+        private final long expires;
+        private final DataSnapshot snapshot;
+
+        private Saved(FilledReportCache.Key key, long expires, DataSnapshot snapshot) {
+            this.file = key.getFile();
+            this.modified = key.getModified();
+            this.connectionID = key.getConnectionID();
+            this.params = key.getParams();
+            this.expires = expires;
+            this.snapshot = snapshot;
+        }
+
+        private boolean isFor(FilledReportCache.Key key) {
+            return modified == key.getModified() && file.equals(key.getFile())
+                    && Objects.equals(connectionID, key.getConnectionID()) && params.equals(key.getParams());
+        }
+    }
+
+    private static final class Entry {
+
+        private final DataSnapshot snapshot;
+        private final long expires;
+
+        private Entry(DataSnapshot snapshot, long expires) {
+            this.snapshot = snapshot;
+            this.expires = expires;
+        }
+    }
+
+    private final Object lock = new Object();
+    /**
+     * access-ordered, so iteration starts at the least recently used
+     */
+    private final LinkedHashMap<FilledReportCache.Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+    private volatile File dir = null;
+
+    private long hits = 0;
+    private long loads = 0;
+    private long misses = 0;
+    private long recorded = 0;
+
+    /**
+     * @param report
+     * @return the key of the report's current parameters, or null if the
+     * report's data is not cached
+     */
+    FilledReportCache.Key keyFor(JasperReportImpl report) {
+        if (report.getDataSnapshotTTL() <= 0) {
+            return null;
+        }
+        return FilledReportCache.Key.of(report);
+    }
+
+    /**
+     * @param key
+     * @return a handler that fills from the cached snapshot, or that records
+     * one if there is none
+     */
+    DataCacheHandler handlerFor(FilledReportCache.Key key) {
+        DataSnapshot snapshot = get(key);
+        if (snapshot != null) {
+            return new PopulatedSnapshotCacheHandler(snapshot);
+        }
+        return new ColumnDataCacheHandler();
+    }
+
+    /**
+     * @param key
+     * @return the cached snapshot from memory or the store directory, or
+     * null if there is none (or it expired)
+     */
+    DataSnapshot get(FilledReportCache.Key key) {
+
+        synchronized (lock) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expires >= System.currentTimeMillis()) {
+                hits++;
+                return entry.snapshot;
+            }
+            entries.remove(key);
+        }
+
+        Saved saved = load(key);
+        synchronized (lock) {
+            if (saved == null) {
+                misses++;
+                return null;
+            }
+            loads++;
+            entries.put(key, new Entry(saved.snapshot, saved.expires));
+            trim();
+            return saved.snapshot;
+        }
+    }
+
+    /**
+     * Keeps the snapshot recorded by a fill, and saves it to the store
+     * directory if there is one.  Does nothing if the handler did not record
+     * a complete snapshot.
+     *
+     * @param key
+     * @param handler the handler the report was filled with
+     * @param ttl seconds the snapshot is kept
+     */
+    void put(FilledReportCache.Key key, DataCacheHandler handler, int ttl) {
+
+        if (!(handler instanceof ColumnDataCacheHandler) || !handler.isSnapshotPopulated()) {
+            return;
+        }
+        DataSnapshot snapshot = handler.getDataSnapshot();
+        long expires = System.currentTimeMillis() + ttl * 1000L;
+        synchronized (lock) {
+            entries.put(key, new Entry(snapshot, expires));
+            recorded++;
+            trim();
+        }
+        logger.debug("Recorded the data of " + key + " for " + ttl + " seconds");
+        save(key, expires, snapshot);
+    }
+
+    /**
+     * Removes a snapshot that could not be filled from, from memory and the
+     * store directory.
+     *
+     * @param key
+     */
+    void remove(FilledReportCache.Key key) {
+        synchronized (lock) {
+            entries.remove(key);
+        }
+        File d = dir;
+        if (d != null) {
+            getFile(d, key).delete();
+        }
+    }
+
+    /**
+     * Must be called while holding the lock
+     */
+    private void trim() {
+        long now = System.currentTimeMillis();
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            Entry e = it.next();
+            if (entries.size() > maxEntries || e.expires < now) {
+                it.remove();
+            }
+        }
+    }
+
+    private Saved load(FilledReportCache.Key key) {
+
+        File d = dir;
+        if (d == null) {
+            return null;
+        }
+        File f = getFile(d, key);
+        if (!f.isFile()) {
+            return null;
+        }
+        try {
+            Object obj = JRLoader.loadObject(f);
+            if (obj instanceof Saved && ((Saved) obj).isFor(key)) {
+                Saved saved = (Saved) obj;
+                if (saved.expires >= System.currentTimeMillis()) {
+                    logger.debug("Loaded the data of " + key + " from " + f);
+                    return saved;
+                }
+                f.delete();
+            }
+        } catch (JRException | RuntimeException ex) {
+            logger.warn("Could not load the data snapshot " + f + ", the report will be filled from the database", ex);
+            f.delete();
+        }
+        return null;
+    }
+
+    private void save(FilledReportCache.Key key, long expires, DataSnapshot snapshot) {
+
+        File d = dir;
+        if (d == null || !snapshot.isPersistable()) {
+            return;
+        }
+        File tmp = null;
+        try {
+            File f = getFile(d, key);
+            tmp = File.createTempFile("recording-", ".tmp", d);
+            JRSaver.saveObject(new Saved(key, expires, snapshot), tmp);
+            Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            tmp = null;
+            logger.debug("Saved the data of " + key + " to " + f);
+        } catch (JRException | IOException | RuntimeException ex) {
+            // a parameter or field value that is not serializable
+            logger.debug("Could not save the data snapshot of " + key, ex);
+        } finally {
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    private static File getFile(File dir, FilledReportCache.Key key) {
+        String name = new File(key.getFile()).getName().replaceFirst("(?i)\\.jrxml$", "").replaceAll("[^A-Za-z0-9_.]", "_");
+        MessageDigest md = CompiledReportStore.newDigest();
+        md.update((key.getFile() + "\n" + key.getModified() + "\n" + key.getConnectionID() + "\n"
+                + key.getParams()).getBytes(StandardCharsets.UTF_8));
+        return new File(dir, name + "-" + CompiledReportStore.toHex(md.digest(), 16) + SUFFIX);
+    }
+
+    /**
+     * @param dir where the snapshots are saved, created if it does not exist,
+     * null to keep them in memory only
+     * @throws IOException if the directory can not be created
+     */
+    void setDirectory(File dir) throws IOException {
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can not create data snapshot directory: " + dir.getAbsolutePath());
+        }
+        this.dir = dir;
+    }
+
+    /**
+     * @param maxEntries max number of snapshots kept in memory
+     */
+    void setMaxEntries(int maxEntries) {
+        synchronized (lock) {
+            this.maxEntries = maxEntries;
+            trim();
+        }
+    }
+
+    /**
+     * Removes all snapshots, from memory and the store directory.
+     *
+     * @return count of snapshots removed
+     */
+    int clear() {
+        int count;
+        synchronized (lock) {
+            count = entries.size();
+            entries.clear();
+        }
+        File d = dir;
+        File[] files = (d == null ? null : d.listFiles((File f, String name) -> name.endsWith(SUFFIX)));
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return user-readable summary of the cache, for the STATUS command
+     */
+    String getStatusMessage() {
+        synchronized (lock) {
+            File d = dir;
+            return "Data snapshots: " + entries.size() + " of " + maxEntries + " in memory, "
+                    + hits + " hits, " + loads + " loaded, " + misses + " misses, " + recorded + " recorded"
+                    + (d == null ? "" : ", saved to " + d.getAbsolutePath());
+        }
+    }
+
+}
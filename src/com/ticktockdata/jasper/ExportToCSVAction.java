@@ -2,12 +2,17 @@ package com.ticktockdata.jasper;
 
 import com.ticktockdata.jasper.PrintStatusEvent.StatusCode;
 import java.io.File;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
 import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
 import javax.swing.filechooser.FileFilter;
+import net.sf.jasperreports.engine.JRException;
 import net.sf.jasperreports.engine.JasperPrint;
 import net.sf.jasperreports.engine.export.JRCsvExporter;
 import net.sf.jasperreports.export.SimpleCsvExporterConfiguration;
+import net.sf.jasperreports.export.WriterExporterOutput;
 import net.sf.jasperreports.export.SimpleExporterInput;
 import net.sf.jasperreports.export.SimpleWriterExporterOutput;
 
@@ -37,9 +42,25 @@ public class ExportToCSVAction extends PrintExecutor {
 
     @Override
     public boolean execute(JasperPrint print) {
+        return execute(Collections.singletonList(print));
+    }
+
+    /**
+     * Exports all the reports to one file, in order.
+     */
+    @Override
+    public boolean execute(List<JasperPrint> prints) {
 
         try {
 
+            OutputStream stream = getReport().getExportOutputStream();
+            if (stream != null) {
+                // the caller takes the output, there is no file to choose
+                export(prints, new SimpleWriterExporterOutput(stream));
+                getReport().setExportOutputStream(null);
+                return !canceled;
+            }
+
             String filePath = getReport().getExportFilePath();
             if (filePath == null) {
                 // allow user to choose
@@ -114,20 +135,7 @@ public class ExportToCSVAction extends PrintExecutor {
                     return false;
                 }
             }
-            JRCsvExporter exporter = new JRCsvExporter();
-
-            exporter.setExporterInput(new SimpleExporterInput(print));
-            exporter.setExporterOutput(new SimpleWriterExporterOutput(file));
-
-            SimpleCsvExporterConfiguration config = new SimpleCsvExporterConfiguration();
-
-            System.out.println("Configuraton: FieldDelimiter = $$" + config.getFieldDelimiter() + "$$, enclosure = $$" + config.getFieldEnclosure() + "$$, record delimiter = $$" + config.getRecordDelimiter());
-            exporter.setConfiguration(config);
-
-            if (canceled) {
-                return false;
-            }
-            exporter.exportReport();
+            export(prints, new SimpleWriterExporterOutput(file));
 
             // clear the report path after exporting
             getReport().setExportFilePath(null);
@@ -145,6 +153,28 @@ public class ExportToCSVAction extends PrintExecutor {
         return !canceled;
     }
 
+    /**
+     * Exports the reports to the output, unless canceled
+     */
+    private void export(List<JasperPrint> prints, WriterExporterOutput output) throws JRException {
+
+        JRCsvExporter exporter = new JRCsvExporter();
+
+        exporter.setExporterInput(SimpleExporterInput.getInstance(prints));
+        exporter.setExporterOutput(output);
+
+        SimpleCsvExporterConfiguration config = new SimpleCsvExporterConfiguration();
+
+        logger.debug("CSV configuration: field delimiter = " + config.getFieldDelimiter()
+                + ", enclosure = " + config.getFieldEnclosure() + ", record delimiter = " + config.getRecordDelimiter());
+        exporter.setConfiguration(config);
+
+        if (canceled) {
+            return;
+        }
+        exporter.exportReport();
+    }
+
     @Override
     public void cancelExecute() {
         canceled = true;
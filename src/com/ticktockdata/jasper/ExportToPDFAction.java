@@ -2,11 +2,16 @@ package com.ticktockdata.jasper;
 
 import com.ticktockdata.jasper.PrintStatusEvent.StatusCode;
 import java.io.File;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
 import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
 import javax.swing.filechooser.FileFilter;
+import net.sf.jasperreports.engine.JRException;
 import net.sf.jasperreports.engine.JasperPrint;
 import net.sf.jasperreports.engine.export.JRPdfExporter;
+import net.sf.jasperreports.export.OutputStreamExporterOutput;
 import net.sf.jasperreports.export.SimpleExporterInput;
 import net.sf.jasperreports.export.SimpleOutputStreamExporterOutput;
 import net.sf.jasperreports.export.SimplePdfExporterConfiguration;
@@ -37,11 +42,27 @@ public class ExportToPDFAction extends PrintExecutor {
 
     @Override
     public boolean execute(JasperPrint print) {
+        return execute(Collections.singletonList(print));
+    }
+
+    /**
+     * Exports all the reports to one file, in order.
+     */
+    @Override
+    public boolean execute(List<JasperPrint> prints) {
 
         try {
             
             canceled = false;
             
+            OutputStream stream = getReport().getExportOutputStream();
+            if (stream != null) {
+                // the caller takes the output, there is no file to choose
+                export(prints, new SimpleOutputStreamExporterOutput(stream));
+                getReport().setExportOutputStream(null);
+                return !canceled;
+            }
+
             String filePath = getReport().getExportFilePath();
             if (filePath == null) {
                 // allow user to choose
@@ -117,19 +138,7 @@ public class ExportToPDFAction extends PrintExecutor {
                     return false;
                 }
             }
-            JRPdfExporter exporter = new JRPdfExporter();
-            exporter.setExporterInput(new SimpleExporterInput(print));
-            exporter.setExporterOutput(new SimpleOutputStreamExporterOutput(file));
-
-            SimplePdfExporterConfiguration config = new SimplePdfExporterConfiguration();
-            config.setCompressed(Boolean.TRUE);
-
-            exporter.setConfiguration(config);
-
-            if (canceled) {
-                return false;
-            }
-            exporter.exportReport();
+            export(prints, new SimpleOutputStreamExporterOutput(file));
 
             // clear the report path after exporting
             getReport().setExportFilePath(null);
@@ -147,6 +156,26 @@ public class ExportToPDFAction extends PrintExecutor {
         return !canceled;
     }
 
+    /**
+     * Exports the reports to the output, unless canceled
+     */
+    private void export(List<JasperPrint> prints, OutputStreamExporterOutput output) throws JRException {
+
+        JRPdfExporter exporter = new JRPdfExporter();
+        exporter.setExporterInput(SimpleExporterInput.getInstance(prints));
+        exporter.setExporterOutput(output);
+
+        SimplePdfExporterConfiguration config = new SimplePdfExporterConfiguration();
+        config.setCompressed(Boolean.TRUE);
+
+        exporter.setConfiguration(config);
+
+        if (canceled) {
+            return;
+        }
+        exporter.exportReport();
+    }
+
     @Override
     public void cancelExecute() {
         canceled = true;
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2018 Joseph A Miller
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ticktockdata.jasper;
+
+import java.sql.Connection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import net.sf.jasperreports.engine.JRDataSource;
+import net.sf.jasperreports.engine.JRVirtualizer;
+import net.sf.jasperreports.engine.JasperPrint;
+import net.sf.jasperreports.engine.JasperReport;
+
+/**
+ * Lets identical fills that run at the same time share one fill.  The first
+ * {@link ReportFill} for a {@link Key} fills the report, the ones that start
+ * before it is done wait for its JasperPrint and give it to their own
+ * PrintExecutor, without touching the database.
+ * <p>
+ * Two fills are identical if they have the same compiled report (so the same
+ * report file, unchanged), connection and parameter values (compared with
+ * equals()).  Fills are never shared if they are virtualized (the pages
+ * belong to the filling report's virtualizer), or if a parameter is a
+ * connection, data source or virtualizer.
+ *
+ * @since Oct 18, 2026
+ */
+final class FillCoalescer {
+
+    /**
+     * identifies identical fills
+     */
+    static final class Key {
+
+        private final JasperReport jasperReport;
+        private final String reportPath;
+        private final String connectionID;
+        /**
+         * sorted, so the hash does not depend on the order they were set in
+         */
+        private final TreeMap<String, Object> params;
+        private final int hash;
+
+        private Key(JasperReport jasperReport, String reportPath, String connectionID, Map<String, Object> params) {
+            this.jasperReport = jasperReport;
+            this.reportPath = reportPath;
+            this.connectionID = connectionID;
+            this.params = new TreeMap<>(params);
+            this.hash = Objects.hash(System.identityHashCode(jasperReport), reportPath, connectionID, this.params);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) obj;
+            return hash == k.hash && jasperReport == k.jasperReport
+                    && Objects.equals(reportPath, k.reportPath)
+                    && Objects.equals(connectionID, k.connectionID)
+                    && params.equals(k.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return reportPath + " @ " + connectionID + " #" + Integer.toHexString(hash);
+        }
+    }
+
+    private final Map<Key, CompletableFuture<JasperPrint>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong sharedCount = new AtomicLong();
+    private volatile boolean enabled = true;
+
+    /**
+     * @param enabled false to fill every report on its own
+     */
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param report
+     * @param jasperReport the compiled report that is filled
+     * @return the key of the fill, or null if it may not be shared
+     */
+    Key keyFor(JasperReportImpl report, JasperReport jasperReport) {
+
+        if (!enabled || jasperReport == null
+                || report.getVirtualization() != JasperReportImpl.Virtualization.NONE
+                || !isShareable(report.getParams())) {
+            return null;
+        }
+        return new Key(jasperReport, report.getReportPath(), report.getConnectionID(), report.getParams());
+    }
+
+    /**
+     * @param params
+     * @return false if a parameter is a connection, data source or
+     * virtualizer, or has no name, so the result of the fill belongs to it
+     */
+    static boolean isShareable(Map<String, Object> params) {
+        for (Map.Entry<String, Object> e : params.entrySet()) {
+            Object v = e.getValue();
+            if (e.getKey() == null || v instanceof Connection || v instanceof JRDataSource
+                    || v instanceof JRVirtualizer) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param key
+     * @param mine completed by the caller with its JasperPrint, if it is the
+     * first
+     * @return mine if the caller is the first and must fill the report,
+     * otherwise the result of the fill already running
+     */
+    CompletableFuture<JasperPrint> join(Key key, CompletableFuture<JasperPrint> mine) {
+        CompletableFuture<JasperPrint> running = inFlight.putIfAbsent(key, mine);
+        if (running == null) {
+            return mine;
+        }
+        sharedCount.incrementAndGet();
+        return running;
+    }
+
+    /**
+     * Called by the first fill when it is done, before completing its future,
+     * so the fills that start after this fill on their own.
+     *
+     * @param key
+     * @param mine
+     */
+    void done(Key key, CompletableFuture<JasperPrint> mine) {
+        inFlight.remove(key, mine);
+    }
+
+    /**
+     * @return user-readable summary, for the STATUS command
+     */
+    String getStatusMessage() {
+        return "Shared fills: " + sharedCount.get() + " (" + inFlight.size() + " shareable fills running)"
+                + (enabled ? "" : " (sharing is off)");
+    }
+
+}
@@ -16,44 +16,39 @@
  */
 package com.ticktockdata.jasper;
 
-import com.ticktockdata.jasper.PrintStatusEvent.StatusCode;
 import java.awt.event.ActionEvent;
 import javax.swing.JFrame;
 import javax.swing.SwingUtilities;
 import javax.swing.Timer;
 import net.sf.jasperreports.engine.JasperPrint;
-import net.sf.jasperreports.engine.fill.AsynchronousFillHandle;
-import net.sf.jasperreports.engine.fill.AsynchronousFilllListener;
 import net.sf.jasperreports.engine.fill.FillListener;
 import static com.ticktockdata.jasper.ReportManager.logger;
 
 /**
- * This class takes care of both filling and viewing / printing / executing a
- * {@link JasperReportImpl} by starting the Fill process, then calling the
- * report's execute method after fill is complete.
+ * This class shows the progress of filling and viewing / printing / executing
+ * a {@link JasperReportImpl}.  The work itself is done by a {@link ReportFill},
+ * which starts the Fill process, then calls the report's execute method after
+ * fill is complete.
  * <p>
  * This uses an {@link net.sf.jasperreports.engine.fill.AsynchronousFillHandle}
  * to allow canceling the process and to help avoid tying up the
  * {@link java.awt.EventDispatchThread} Thread, but this class itself must be
  * run from EDT in order to prevent issues with Fill Parameter and Processing
- * dialogs.
+ * dialogs.  When there is no display (or the dialog would never be shown)
+ * the JasperReportImpl uses a ReportFill without this dialog.
  * <p>
- * This class will fire {@link PrintStatusEvent} for FILLED, COMPLETE,
+ * The ReportFill fires {@link PrintStatusEvent} for FILLED, COMPLETE,
  CANCELED, ERROR
  *
  * @author JAM
  * @since Aug 29, 2018
  */
-public class FillMonitor extends javax.swing.JDialog implements AsynchronousFilllListener, FillListener {
+public class FillMonitor extends javax.swing.JDialog implements FillListener {
 
-    private int pageCount = 0;
-    private AsynchronousFillHandle reportHandle;
+    private final ReportFill fill;
     private JasperReportImpl report;
     private Timer timer;
-    private boolean canceled = true;
-    private boolean error = true;
-    private Throwable throwable = null;
-    private boolean stopped = false;
+    private volatile boolean stopped = false;
 
 
     /**
@@ -70,15 +65,9 @@ public class FillMonitor extends javax.swing.JDialog implements AsynchronousFill
         initComponents();
         this.pack();
 
-        try {
-            reportHandle = AsynchronousFillHandle.createHandle(
-                    report.getJasperReport(),
-                    report.getParams(),
-                    ReportConnectionManager.getReportConnection(report.getConnectionID()));
-        } catch (Exception ex) {
-            logger.error("Error creating AsynchronousFillHandle for report!", ex);
-            throwable = ex;
-            error = true;
+        fill = new ReportFill(report);
+        if (fill.isFinished()) {
+            // failed to create the fill handle, ERROR already fired
             stopMonitor();
             return;
         }
@@ -86,9 +75,9 @@ public class FillMonitor extends javax.swing.JDialog implements AsynchronousFill
         // it always allows interrupt, but if false then waits x seconds before showing.
         this.cmdCancel.setEnabled(true);    //report.isAllowInterrupt());
 
-        // add listeners for fill report
-        this.reportHandle.addFillListener(this);
-        this.reportHandle.addListener(this);
+        // show progress, and close when finished
+        fill.setProgressListener(this);
+        fill.setOnFinish(this::stopMonitor);
 
         if (report.getParent() != null) {
             this.setLocationRelativeTo(report.getParent());
@@ -118,28 +107,48 @@ public class FillMonitor extends javax.swing.JDialog implements AsynchronousFill
     }
 
     /**
-     * This must be called to terminate monitor. Is called from the
-     * reportCanceled / reportFillError / reportFinished methods
+     * This must be called to terminate monitor. Is called when the ReportFill
+     * finishes (canceled / error / finished)
      */
     private void stopMonitor() {
 
-        if (timer != null) {
-            timer.stop();
-            timer = null;
+        try {
+            if (timer != null) {
+                timer.stop();
+                timer = null;
+            }
+
+            this.setVisible(false);
+            dispose();
+        } finally {
+            stopped = true; // must be set to true or isFilling will never return false!
         }
-        
-        this.setVisible(false);
-        stopped = true; // must be set to true or isFilling will never return false!
-        dispose();
 
     }
 
     /**
-     * /**
-     * Starts the actual report filling process.
+     * @return the fill that this dialog is monitoring
+     */
+    ReportFill getReportFill() {
+        return fill;
+    }
+
+    /**
+     * Starts the actual report filling process.  Does nothing if the monitor
+     * failed to start (then isError() is true).
      */
     public void startFill() {
-        reportHandle.startFill();
+        fill.start();
+    }
+
+    /**
+     * Blocks until the report is filled and executed, canceled, or fails.
+     * Wakes up from the fill listener callbacks, not by polling.
+     *
+     * @throws InterruptedException
+     */
+    public void waitForFinish() throws InterruptedException {
+        fill.waitForFinish();
     }
 
     /**
@@ -156,11 +165,11 @@ public class FillMonitor extends javax.swing.JDialog implements AsynchronousFill
      * @return true if there was an error, false otherwise
      */
     public boolean isError() {
-        return error;
+        return fill.isError();
     }
 
     public boolean isCanceled() {
-        return canceled;
+        return fill.isCanceled();
     }
     
     /**
@@ -170,7 +179,7 @@ public class FillMonitor extends javax.swing.JDialog implements AsynchronousFill
      * @return
      */
     public Throwable getThrowable() {
-        return throwable;
+        return fill.getThrowable();
     }
 
     /**
@@ -180,7 +189,7 @@ public class FillMonitor extends javax.swing.JDialog implements AsynchronousFill
      * @return
      */
     public int getPageCount() {
-        return pageCount;
+        return fill.getPageCount();
     }
 
     /**
@@ -243,14 +252,8 @@ public class FillMonitor extends javax.swing.JDialog implements AsynchronousFill
 
     private void cmdCancelActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_cmdCancelActionPerformed
 
-        try {
-            reportHandle.cancellFill();
-            report.getPrintExecutor().cancelExecute();
-            logger.info("User Canceled Report execution!");
-        } catch (Exception ex) {
-            logger.error("Error canceling the report execution!", ex);
-            throwable = ex;
-        }
+        fill.cancel();
+        logger.info("User Canceled Report execution!");
 
     }//GEN-LAST:event_cmdCancelActionPerformed
 
@@ -261,40 +264,8 @@ public class FillMonitor extends javax.swing.JDialog implements AsynchronousFill
     private javax.swing.JProgressBar progressBar;
     // End of variables declaration//GEN-END:variables
 
-    @Override
-    public void reportFinished(JasperPrint jasperPrint) {
-
-        report.firePrintStatusChanged(StatusCode.FILLED);
-
-        if (this.report.getPrintExecutor().execute(jasperPrint)) {
-            report.firePrintStatusChanged(StatusCode.COMPLETE);
-        } else {
-            logger.error("Failed to execute the report!");
-        }
-
-        stopMonitor();
-    }
-
-    @Override
-    public void reportCancelled() {
-        canceled = true;
-        report.firePrintStatusChanged(StatusCode.CANCELED);
-        stopMonitor();
-    }
-
-    @Override
-    public void reportFillError(Throwable t) {
-        error = true;
-        logger.error("Error occurred during fillReport: " + t.getLocalizedMessage(), t);
-        throwable = t;
-        report.firePrintStatusChanged(StatusCode.ERROR);
-        stopMonitor();
-    }
-
     @Override
     public void pageGenerated(JasperPrint jasperPrint, final int pageIndex) {
-        logger.debug("Filled page " + pageIndex + " of report " + report.getReportName());
-        pageCount = pageIndex;
         SwingUtilities.invokeLater(new Runnable() {
             @Override
             public void run() {
@@ -310,7 +281,7 @@ public class FillMonitor extends javax.swing.JDialog implements AsynchronousFill
             @Override
             public void run() {
                 if (pageIndex == 0) {
-                    progressBar.setMaximum(pageCount);
+                    progressBar.setMaximum(fill.getPageCount());
                     progressBar.setMinimum(0);
                     progressBar.setIndeterminate(false);
                     progressBar.setString(null);
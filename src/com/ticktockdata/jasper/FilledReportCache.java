@@ -0,0 +1,487 @@
+/*
+ * Copyright (C) 2018 Joseph A Miller
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ticktockdata.jasper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JRPrintElement;
+import net.sf.jasperreports.engine.JRPrintFrame;
+import net.sf.jasperreports.engine.JRPrintPage;
+import net.sf.jasperreports.engine.JRPrintText;
+import net.sf.jasperreports.engine.JasperPrint;
+import net.sf.jasperreports.engine.util.JRLoader;
+import net.sf.jasperreports.engine.util.JRSaver;
+import static com.ticktockdata.jasper.ReportManager.logger;
+
+/**
+ * Cache of filled reports (JasperPrint), so a report that is run again with
+ * the same parameters - to print it after previewing it, or to export it to
+ * another format - is not filled again.  Only used for reports that have a
+ * {@link JasperReportImpl#setResultCacheTTL(int)}.
+ * <p>
+ * The key is the report file and its lastModified, the connection and the
+ * parameter values.  Each entry expires after its report's TTL.
+ * <p>
+ * The filled reports in memory are bounded by their estimated size (from the
+ * count of pages, elements and text), the least recently used are written to
+ * a spill directory when over the limit, and read back in when used again.
+ * The spilled reports are bounded to {@link #SPILL_FACTOR} times the memory
+ * limit, beyond that the least recently used are deleted.
+ * <p>
+ * This class is used only by the ReportManager.
+ *
+ * @since Oct 18, 2026
+ */
+final class FilledReportCache {
+
+    static final int SPILL_FACTOR = 4;
+
+    private static final long PAGE_BYTES = 512;
+    private static final long ELEMENT_BYTES = 256;
+    /**
+     * the spill of an entry that is being written
+     */
+    private static final File PENDING = new File("");
+
+    /**
+     * identifies identical filled reports, also used as the key of the
+     * {@link DataSnapshotCache}
+     */
+    static final class Key {
+
+        private final String file;
+        private final long modified;
+        private final String connectionID;
+        /**
+         * sorted, so the hash does not depend on the order they were set in
+         */
+        private final TreeMap<String, Object> params;
+        private final int hash;
+
+        private Key(String file, long modified, String connectionID, Map<String, Object> params) {
+            this.file = file;
+            this.modified = modified;
+            this.connectionID = connectionID;
+            this.params = new TreeMap<>(params);
+            this.hash = Objects.hash(file, modified, connectionID, this.params);
+        }
+
+        /**
+         * @param report
+         * @return the key of the report's current parameters, or null if the
+         * report file is not found, or a parameter is a connection, data
+         * source or virtualizer
+         */
+        static Key of(JasperReportImpl report) {
+            if (!FillCoalescer.isShareable(report.getParams())) {
+                return null;
+            }
+            File f = ReportManager.getReportFile(report.getReportPath());
+            if (f == null) {
+                return null;
+            }
+            return new Key(f.getAbsolutePath(), f.lastModified(), report.getConnectionID(), report.getParams());
+        }
+
+        String getFile() {
+            return file;
+        }
+
+        long getModified() {
+            return modified;
+        }
+
+        String getConnectionID() {
+            return connectionID;
+        }
+
+        TreeMap<String, Object> getParams() {
+            return params;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) obj;
+            return hash == k.hash && modified == k.modified && file.equals(k.file)
+                    && Objects.equals(connectionID, k.connectionID) && params.equals(k.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return file + " @ " + connectionID + " #" + Integer.toHexString(hash);
+        }
+    }
+
+    /**
+     * A filled report, in memory (print is set) or spilled (spill is set)
+     */
+    private static final class Entry {
+
+        private final long size;
+        private final long expires;
+        private JasperPrint print;
+        private File spill = null;
+        private long spillSize = 0;
+
+        private Entry(JasperPrint print, long size, long expires) {
+            this.print = print;
+            this.size = size;
+            this.expires = expires;
+        }
+
+        private boolean isHeld() {
+            return print != null && spill == null;
+        }
+    }
+
+    private final Object lock = new Object();
+    /**
+     * access-ordered, so iteration starts at the least recently used
+     */
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long maxBytes;
+    private long heapBytes = 0;
+    private long spillBytes = 0;
+    private File spillDir = null;
+
+    private long hits = 0;
+    private long spillHits = 0;
+    private long misses = 0;
+    private long spills = 0;
+    private long dropped = 0;
+
+    /**
+     * @param maxBytes max total estimated size of the filled reports in
+     * memory
+     */
+    FilledReportCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param report
+     * @return the key of the report's current parameters, or null if the
+     * result may not be cached
+     */
+    Key keyFor(JasperReportImpl report) {
+        if (report.getResultCacheTTL() <= 0
+                || report.getVirtualization() != JasperReportImpl.Virtualization.NONE) {
+            return null;
+        }
+        return Key.of(report);
+    }
+
+    /**
+     * @param key
+     * @return the cached filled report, or null if there is none (or it
+     * expired)
+     */
+    JasperPrint get(Key key) {
+
+        File spill;
+        Entry entry;
+        synchronized (lock) {
+            entry = entries.get(key);
+            if (entry != null && entry.expires < System.currentTimeMillis()) {
+                remove(key);
+                entry = null;
+            }
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+            if (entry.print != null) {
+                hits++;
+                return entry.print;
+            }
+            spill = entry.spill;
+        }
+
+        JasperPrint print;
+        try {
+            print = (JasperPrint) JRLoader.loadObject(spill);
+        } catch (JRException | RuntimeException ex) {
+            synchronized (lock) {
+                if (entry.print != null) {
+                    // read back by another thread, which deleted the file
+                    spillHits++;
+                    return entry.print;
+                }
+                logger.warn("Failed to read the spilled report " + spill, ex);
+                if (entries.get(key) == entry) {
+                    remove(key);
+                }
+                misses++;
+            }
+            return null;
+        }
+
+        List<Entry> toSpill;
+        synchronized (lock) {
+            spillHits++;
+            if (entries.get(key) != entry || entry.print != null) {
+                return print;   // removed, or read back by another thread
+            }
+            // back in memory
+            deleteSpill(entry);
+            entry.print = print;
+            heapBytes += entry.size;
+            toSpill = evict(entry);
+        }
+        spill(toSpill);
+        return print;
+    }
+
+    /**
+     * @param key
+     * @param print
+     * @param ttl seconds it is kept
+     */
+    void put(Key key, JasperPrint print, int ttl) {
+
+        long size = estimateSize(print);
+        if (size > maxBytes) {
+            logger.debug("Filled report is too big to cache: " + key + ", " + size + " bytes");
+            return;
+        }
+        List<Entry> toSpill;
+        synchronized (lock) {
+            remove(key);
+            removeExpired();
+            Entry entry = new Entry(print, size, System.currentTimeMillis() + ttl * 1000L);
+            entries.put(key, entry);
+            heapBytes += size;
+            toSpill = evict(entry);
+        }
+        spill(toSpill);
+        logger.debug("Cached filled report " + key + " for " + ttl + " seconds, " + size + " bytes");
+    }
+
+    /**
+     * Picks the least recently used reports in memory to be spilled until
+     * within the limit, and takes them off the heap total.  Drops the least
+     * recently used spilled reports over the spill limit.  Must be called
+     * while holding the lock.
+     *
+     * @param keep never spilled
+     * @return the reports to be written with spill()
+     */
+    private List<Entry> evict(Entry keep) {
+
+        List<Entry> toSpill = new ArrayList<>();
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext() && (heapBytes > maxBytes || spillBytes > maxBytes * SPILL_FACTOR)) {
+            Entry e = it.next().getValue();
+            if (e == keep) {
+                continue;
+            }
+            if (e.isHeld() && heapBytes > maxBytes) {
+                // marked as spilled, but it is in memory until written
+                e.spill = PENDING;
+                heapBytes -= e.size;
+                toSpill.add(e);
+            } else if (e.print == null && spillBytes > maxBytes * SPILL_FACTOR) {
+                it.remove();
+                deleteSpill(e);
+                dropped++;
+            }
+        }
+        return toSpill;
+    }
+
+    /**
+     * Writes the reports picked by evict() to the spill directory, without
+     * holding the lock.
+     */
+    private void spill(List<Entry> toSpill) {
+
+        for (Entry e : toSpill) {
+            File file = null;
+            try {
+                file = File.createTempFile("filled-", ".jrprint", getSpillDir());
+                JRSaver.saveObject(e.print, file);
+            } catch (IOException | JRException | RuntimeException ex) {
+                logger.warn("Failed to spill a filled report to " + file, ex);
+                if (file != null && !file.delete()) {
+                    file.deleteOnExit();
+                }
+                file = null;
+            }
+            synchronized (lock) {
+                if (file != null && entries.containsValue(e)) {
+                    e.spill = file;
+                    e.spillSize = file.length();
+                    e.print = null;
+                    spillBytes += e.spillSize;
+                    spills++;
+                } else {
+                    // failed, or removed while it was written
+                    entries.values().remove(e);
+                    e.print = null;
+                    e.spill = file;
+                    deleteSpill(e);
+                    dropped++;
+                }
+            }
+        }
+    }
+
+    private File getSpillDir() throws IOException {
+        synchronized (lock) {
+            if (spillDir == null || !spillDir.isDirectory()) {
+                spillDir = Files.createTempDirectory("jasperprint-filled").toFile();
+                spillDir.deleteOnExit();
+            }
+            return spillDir;
+        }
+    }
+
+    /**
+     * Must be called while holding the lock
+     */
+    private void remove(Key key) {
+        Entry e = entries.remove(key);
+        if (e != null) {
+            if (e.isHeld()) {
+                heapBytes -= e.size;
+            }
+            deleteSpill(e);
+        }
+    }
+
+    /**
+     * Must be called while holding the lock
+     */
+    private void removeExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry e = it.next().getValue();
+            if (e.expires < now) {
+                it.remove();
+                if (e.isHeld()) {
+                    heapBytes -= e.size;
+                }
+                deleteSpill(e);
+            }
+        }
+    }
+
+    /**
+     * Deletes the spill file, if it was written.  Must be called while
+     * holding the lock.
+     */
+    private void deleteSpill(Entry e) {
+        if (e.print == null && e.spill != null) {
+            spillBytes -= e.spillSize;
+            if (!e.spill.delete()) {
+                e.spill.deleteOnExit();
+            }
+        }
+        if (e.print == null || e.spill == PENDING) {
+            e.spill = null;
+            e.spillSize = 0;
+        }
+    }
+
+    /**
+     * @return count of filled reports removed
+     */
+    int clear() {
+        synchronized (lock) {
+            int count = entries.size();
+            for (Entry e : entries.values()) {
+                deleteSpill(e);
+            }
+            entries.clear();
+            heapBytes = 0;
+            return count;
+        }
+    }
+
+    /**
+     * @param maxBytes max total estimated size of the filled reports in
+     * memory
+     */
+    void setMaxBytes(long maxBytes) {
+        List<Entry> toSpill;
+        synchronized (lock) {
+            this.maxBytes = maxBytes;
+            toSpill = evict(null);
+        }
+        spill(toSpill);
+    }
+
+    /**
+     * @return user-readable summary of the cache, for the STATUS command
+     */
+    String getStatusMessage() {
+        synchronized (lock) {
+            return "Filled report cache: " + entries.size() + " reports, "
+                    + heapBytes / 1024 + " of " + maxBytes / 1024 + " KB in memory, "
+                    + spillBytes / 1024 + " KB spilled, " + hits + " hits, " + spillHits
+                    + " read back, " + misses + " misses, " + spills + " spilled, " + dropped + " dropped";
+        }
+    }
+
+    /**
+     * Estimates the memory used by a filled report from its page, element
+     * and text counts.
+     *
+     * @param print
+     * @return
+     */
+    static long estimateSize(JasperPrint print) {
+        long size = 0;
+        for (JRPrintPage page : print.getPages()) {
+            size += PAGE_BYTES + estimateSize(page.getElements());
+        }
+        return size;
+    }
+
+    private static long estimateSize(List<JRPrintElement> elements) {
+        long size = 0;
+        for (JRPrintElement element : elements) {
+            size += ELEMENT_BYTES;
+            if (element instanceof JRPrintText) {
+                String text = ((JRPrintText) element).getFullText();
+                size += (text == null ? 0 : 2L * text.length());
+            } else if (element instanceof JRPrintFrame) {
+                size += estimateSize(((JRPrintFrame) element).getElements());
+            }
+        }
+        return size;
+    }
+
+}
@@ -307,6 +307,11 @@ public class JasperPrintMain {
                 + "\n"
                 + "When using any method other then java -jar, you must end\n"
                 + "each command list with a ';' character as the last parameter.\n"
+                + "A program that sends many commands can keep one connection\n"
+                + "open with the " + PrintServer.Command.SESSION + " command, then send each command\n"
+                + "as '<request_id> <Command>', the arguments and ';'.  Each reply\n"
+                + "line starts with the request_id, a line '<request_id> ;' ends\n"
+                + "the reply (Java programs can use the ClientPool class).\n"
                 + "\n"
                 + "Following is a list of valid commands:\n"
                 + PrintServer.Command.START + "   (starts a server process for printing via command line)\n"
@@ -315,6 +320,9 @@ public class JasperPrintMain {
                 + PrintServer.Command.CLOSE + "   (Close a specified database connection on a server)\n"
                 + PrintServer.Command.CLEAR + "   (dump report cache to force reload of reports)\n"
                 + PrintServer.Command.PRINT + "   (prints a report using a specified server)\n"
+                + PrintServer.Command.SUBMIT + "  (same as PRINT, replies with a job ID at once, then use\n"
+                + "         " + PrintServer.Command.POLL + ", " + PrintServer.Command.WAIT + ", " + PrintServer.Command.CANCEL + " and " + PrintServer.Command.RESULT + " with the job ID)\n"
+                + PrintServer.Command.BATCH + "   (prints a report once for each row of parameters)\n"
                 + "\n"
                 + "To get additional info on any of the above commands use " + PrintServer.Command.HELP + "\n"
                 + "    Example:  " + PrintServer.Command.HELP + " " + PrintServer.Command.START + "\n"
@@ -333,7 +341,7 @@ public class JasperPrintMain {
                 + "--fonts (path of directory containing JasperReport font extensions (must be .jar files))\n"
                 + "--silent OR -si (suppresses visible Message Boxes)\n"
                 + "--verbose OR -v (increases terminal output)\n"
-                + "--no-tray suppresses the tray icon. (Only effective with " + PrintServer.Command.START + " command)\n"
+                + "--no-tray suppresses the tray icon, and reports are filled without a progress dialog. (Only effective with " + PrintServer.Command.START + " command)\n"
                 + getHelpFooter();
     }
     
@@ -364,6 +372,51 @@ public class JasperPrintMain {
                 + "--user <user_name>\n"
                 + "--password <password>\n"
                 + "\n"
+                + "The following optional arguments tune how many reports\n"
+                + "run at the same time:\n"
+                + "--workers <count> (reports executing at once, default = processor count)\n"
+                + "--queue <count> (reports that may wait for a worker, default = " + ReportManager.DEFAULT_QUEUE_CAPACITY + ")\n"
+                + "--max_jobs <count> (max reports running at once on this connection)\n"
+                + "--request_threads <count> (requests the server runs at once,\n"
+                + "       default = " + PrintServer.DEFAULT_REQUEST_THREADS + ")\n"
+                + "--subreport_threads <count> (fills subreports on this many\n"
+                + "       shared threads, each with its own connection,\n"
+                + "       default = 0, a new thread for each subreport)\n"
+                + "\n"
+                + "The following optional arguments size the pool of\n"
+                + "database connections:\n"
+                + "--min_conns <count> (kept open, default = " + ConnectionInfo.DEFAULT_MIN_CONNECTIONS + ")\n"
+                + "--max_conns <count> (open at once, default = " + ConnectionInfo.DEFAULT_MAX_CONNECTIONS + ")\n"
+                + "--evict_secs <seconds> (an idle connection is closed after\n"
+                + "       this long, default = " + ConnectionInfo.DEFAULT_IDLE_TIMEOUT + ", 0 = never)\n"
+                + "\n"
+                + "The following optional arguments tune the report queries:\n"
+                + "--rows_per_fetch <count> (streams the rows, fetching this\n"
+                + "       many at a time, for reports with very many rows)\n"
+                + "--sql_timeout <seconds> (a query running longer is\n"
+                + "       canceled, default = no limit)\n"
+                + "--prefetch_rows <count> (reads about this many rows ahead\n"
+                + "       on another thread while the report fills, default = 0)\n"
+                + "\n"
+                + "The following optional arguments bound the cache of\n"
+                + "compiled reports (least recently used are removed):\n"
+                + "--cache_max <count> (default = " + ReportManager.DEFAULT_CACHE_MAX_ENTRIES + " reports)\n"
+                + "--cache_mb <megabytes> (estimated size, default = no limit)\n"
+                + "--cache_dir <directory> (saves compiled reports there, so\n"
+                + "       they are not compiled again after a restart)\n"
+                + "--warm <report_directory> (compiles every .jrxml there\n"
+                + "       in the background once the server is started)\n"
+                + "--result_cache_mb <megabytes> (default = " + ReportManager.DEFAULT_RESULT_CACHE_BYTES / 1024 / 1024 + ", memory\n"
+                + "       used by filled reports kept for --result_ttl)\n"
+                + "--snapshot_max <count> (default = 32, data snapshots kept\n"
+                + "       in memory for --snapshot_ttl)\n"
+                + "--snapshot_dir <directory> (saves the data snapshots there,\n"
+                + "       so they are used again after a restart)\n"
+                + "--job_table <count> (default = 1000, jobs started by SUBMIT\n"
+                + "       kept for POLL / RESULT, the oldest finished are removed)\n"
+                + "--job_results_mb <megabytes> (default = 256, memory used by\n"
+                + "       the output of SUBMIT --return true kept for RESULT)\n"
+                + "\n"
                 + "JasperPrint does not contain any database drivers,\n"
                 + "you will need to add them via --classpath.\n"
                 + "\n"
@@ -402,6 +455,13 @@ public class JasperPrintMain {
                 + "When using the " + PrintServer.Command.PRINT + " command you then specify\n"
                 + "which Database Connection to use with --identifier (-id)\n"
                 + "\n"
+                + "--max_jobs <count> limits how many reports may run at the\n"
+                + "same time on the connection being added.\n"
+                + "--min_conns, --max_conns and --evict_secs size its pool\n"
+                + "of database connections, and --rows_per_fetch,\n"
+                + "--sql_timeout and --prefetch_rows tune its queries,\n"
+                + "as for " + PrintServer.Command.START + ".\n"
+                + "\n"
                 + "\n Note that ADD cannot be used when communicating to the\n"
                 + "Server Socket directly via TCP socket,\n"
                 + "only via command: java -jar ADD <args>.\n"
@@ -427,6 +487,20 @@ public class JasperPrintMain {
                 + "--file (or --report) <full_path_to_.jrxml_file> (required)\n"
                 + "--action <PRINT | PREVIEW | EXPORT_TO_xxx>\n"
                 + "       (default action is PREVIEW if none specified)\n"
+                + "--job_priority <n> (default = 0, when reports are waiting\n"
+                + "       for a free worker the highest priority runs first)\n"
+                + "--spool_mode <NONE | FILE | SWAP_FILE | MAPPED_SWAP_FILE | GZIP | LZ | DEFLATE>\n"
+                + "       (default = NONE, for very large reports, keeps only\n"
+                + "       some pages in memory)\n"
+                + "--spool_pages <n> (default = " + JasperReportImpl.DEFAULT_VIRTUALIZER_PAGES + ", pages kept in memory\n"
+                + "       when a --spool_mode is set)\n"
+                + "--result_ttl <seconds> (default = 0, reuses the filled report\n"
+                + "       if run again with the same parameters within this time)\n"
+                + "--snapshot_ttl <seconds> (default = 0, fills from the data of\n"
+                + "       an earlier run with the same parameters within this\n"
+                + "       time, without querying the database)\n"
+                + "--subreport_pool <true | false> (fill the subreports on the\n"
+                + "       shared subreport threads, default = --subreport_threads > 0)\n"
                 + "\n"
                 + "When using the PRINT action:\n"
                 + "--printer <printer_name> (if no printer specified\n"
@@ -442,6 +516,9 @@ public class JasperPrintMain {
                 + "xxx must be one of: PDF | CSV | XLS | HTML\n"
                 + "--xfile <file_to_save> (shows file picker if missing)\n"
                 + "--overwrite <true | false> (asks if false, default = false)\n"
+                + "--return <true | false> (default = false, if true the server\n"
+                + "       sends the output back on the connection instead of\n"
+                + "       saving it, it is written to --xfile on this computer)\n"
                 + "\n"
                 + "Regardless of the print action, you must always\n"
                 + "specify the required report parameters unless the\n"
@@ -460,7 +537,7 @@ public class JasperPrintMain {
                 + "To send a report parameter via the command line use:\n"
                 + "--parameter <type> <name> <value>\n"
                 + "where <type> is one of: STRING | LONG | INTEGER \n"
-                + "| BIGDECIMAL | BOOLEAN | DATE | TIMESTAMP\n"
+                + "| BIGDECIMAL | BOOLEAN | DATE | TIMESTAMP | TIME\n"
                 + "<name> is the name of the parameter, and \n"
                 + "<value> is the value to be set.\n"
                 + "\n"
@@ -469,6 +546,7 @@ public class JasperPrintMain {
                 + "     Note that the hours are required to be in 24 hr value\n"
                 + "     and Seconds and Milliseconds are optional.\n"
                 + "     Also note that timestamp needs to be quoted, as it contains spaces.\n"
+                + "For TIME the format is:  'HH:MM:SS' (seconds are optional)\n"
                 + getHelpFooter();
         
     }
@@ -523,6 +601,72 @@ public class JasperPrintMain {
                 + getHelpFooter();
     }
     
+    public static String getHelpJobs() {
+        return
+                getHelpHeader()
+                + "Help with " + PrintServer.Command.SUBMIT + ", " + PrintServer.Command.POLL + ", " + PrintServer.Command.WAIT + ", " + PrintServer.Command.CANCEL + " and " + PrintServer.Command.RESULT + ":\n"
+                + "Used to run a report without keeping the connection open\n"
+                + "until it is finished.\n"
+                + "\n"
+                + PrintServer.Command.SUBMIT + " takes the same arguments as PRINT (see HELP PRINT),\n"
+                + "it replies at once with: INFO | Submitted job <job_id>\n"
+                + "With an EXPORT_TO_xxx action and --return true the exported\n"
+                + "output is kept on the server until it is fetched by RESULT.\n"
+                + "\n"
+                + "The other commands take the job ID:\n"
+                + "--job_id <job_id> (required)\n"
+                + "\n"
+                + PrintServer.Command.POLL + "   (replies with: INFO | Job <job_id> <STATUS>)\n"
+                + PrintServer.Command.WAIT + "   (replies the same once the job is finished)\n"
+                + "       --timeout <seconds> (default = 0 = no limit, replies\n"
+                + "       with the current status when it expires)\n"
+                + PrintServer.Command.CANCEL + " (cancels the job if it is not finished)\n"
+                + PrintServer.Command.RESULT + " (the final status of a finished job, and removes\n"
+                + "       the job from the server)\n"
+                + "       --return true --xfile <file_to_save> (writes the kept\n"
+                + "       output to the file on this computer)\n"
+                + "       --overwrite <true | false> (default = false)\n"
+                + "\n"
+                + "The server keeps up to --job_table jobs (see HELP START),\n"
+                + "the oldest finished jobs are removed if it is full, so\n"
+                + "collect the RESULT of your jobs when they are finished."
+                + getHelpFooter();
+    }
+    
+    public static String getHelpBatch() {
+        return
+                getHelpHeader()
+                + "Help with BATCH: Used to Print or Export the same\n"
+                + "report for many sets of parameters, such as a\n"
+                + "statement for each customer.  The report is loaded\n"
+                + "once and the rows are filled at the same time on\n"
+                + "the server's report workers.\n"
+                + "\n"
+                + "BATCH takes the same arguments as PRINT (see HELP PRINT),\n"
+                + "--parameter values are used for every row.  Also:\n"
+                + "--rows_file <csv_file> (required, the first line is the\n"
+                + "       names of the report parameters separated by commas,\n"
+                + "       each other line is one row of values, such as:\n"
+                + "           customer_id,statement_date\n"
+                + "           1001,2026-10-01\n"
+                + "       each value is read as the class of the report's\n"
+                + "       parameter, with the formats of --parameter)\n"
+                + "--merge <true | false> (default = false, if true all rows\n"
+                + "       are printed as one print job or exported to one\n"
+                + "       --xfile, in the order of the rows)\n"
+                + "\n"
+                + "Without --merge each row is a document of its own, with an\n"
+                + "EXPORT_TO_xxx action the --xfile must contain {row} (the\n"
+                + "row number) or {<parameter_name>}, which are replaced\n"
+                + "by the row's values, such as:\n"
+                + "       --xfile /statements/statement-{customer_id}.pdf\n"
+                + "\n"
+                + "When sent via a socket the rows follow a line --rows,\n"
+                + "before the ending ';'.  The reply is sent once the rows\n"
+                + "are queued, the server logs the result of the batch."
+                + getHelpFooter();
+    }
+    
     public static String getHelpClear() {
         return
                 getHelpHeader()
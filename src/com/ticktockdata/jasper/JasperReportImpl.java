@@ -21,13 +21,27 @@ import com.ticktockdata.jasper.PrintStatusEvent.StatusCode;
 import com.ticktockdata.jasper.gui.PromptDialog;
 import com.ticktockdata.jasperserver.ServerManager;
 import java.awt.Component;
+import java.awt.GraphicsEnvironment;
 import java.io.File;
 import java.io.FileInputStream;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.InvalidParameterException;
+import net.sf.jasperreports.engine.JRRuntimeException;
+import net.sf.jasperreports.engine.JRVirtualizer;
 import net.sf.jasperreports.engine.JasperReport;
+import net.sf.jasperreports.engine.fill.JRFileVirtualizer;
+import net.sf.jasperreports.engine.fill.JRGzipVirtualizer;
+import net.sf.jasperreports.engine.fill.JRSwapFileVirtualizer;
+import net.sf.jasperreports.engine.fill.JRVirtualizationContext;
+import net.sf.jasperreports.engine.fill.StoreFactoryVirtualizer;
+import net.sf.jasperreports.engine.util.JRSwapFile;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import javax.swing.AbstractButton;
 import javax.swing.SwingUtilities;
 import org.apache.log4j.Level;
@@ -38,12 +52,82 @@ import javax.swing.JOptionPane;
  * This is the primary class (wrapper) for running a JasperReport. You (the
  * programmer) should generally work with this rather than
  * {@link net.sf.jasperreports.engine.JasperReport}
+ * <p>
+ * Each execute() runs a separate {@link ReportJob}, so a report (for example
+ * the one of a PrintButton) can be executed again while it is still running.
  *
  * @author JAM
  * @since Aug 29, 2018
  */
 public class JasperReportImpl implements Runnable {
 
+    /**
+     * How the pages of a filled report are kept, see
+     * {@link #setVirtualization(Virtualization)}.
+     */
+    public static enum Virtualization {
+        /**
+         * All pages are kept on the heap (the default)
+         */
+        NONE,
+        /**
+         * Pages over the limit are written to one file each
+         * (JRFileVirtualizer)
+         */
+        FILE,
+        /**
+         * Pages over the limit are written to a single swap file
+         * (JRSwapFileVirtualizer)
+         */
+        SWAP_FILE,
+        /**
+         * Like SWAP_FILE, but the swap file is memory-mapped, which is much
+         * faster when it is on a fast disk (MappedVirtualizerStore)
+         */
+        MAPPED_SWAP_FILE,
+        /**
+         * Pages over the limit are kept on the heap, but gzip compressed
+         * (JRGzipVirtualizer)
+         */
+        GZIP,
+        /**
+         * Like GZIP, but with a fast LZ codec, a few times faster than GZIP
+         * for a little less saving (CompressingVirtualizer)
+         */
+        LZ,
+        /**
+         * Like GZIP, but deflate at the fastest level, with the Deflater and
+         * buffers reused (CompressingVirtualizer)
+         */
+        DEFLATE;
+
+        /**
+         * Trims and is not case-sensitive, '-' may be used for '_'.
+         *
+         * @param text
+         * @return null if invalid, instead of throwing error.
+         */
+        public static Virtualization fromString(String text) {
+            try {
+                return valueOf(text.trim().toUpperCase().replace('-', '_'));
+            } catch (Exception ex) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Default for {@link #setVirtualizerMaxPages(int)}
+     */
+    public static final int DEFAULT_VIRTUALIZER_PAGES = 100;
+
+    /**
+     * Reports run on a pool of worker threads, but the PromptComponentFactory
+     * shares its prompt components between reports, so only one prompt
+     * dialog may be showing at a time.
+     */
+    private static final Object PROMPT_LOCK = new Object();
+
 //    private JasperReport jasperReport = null;
     private String reportName = null;
     private String reportPath = null;
@@ -62,12 +146,16 @@ public class JasperReportImpl implements Runnable {
     private boolean promptForParameters = true;
     private int progressDelay = 5;
     private String connectionID = ServerManager.DEFAULT_IDENTIFIER;
+    /**
+     * jobs with a higher priority are run first, see {@link #setPriority(int)}
+     */
+    private int priority = 0;
 
     /**
      * This is used to make JasperReport accessible, but is only valid during
      * filling of report
      */
-    private JasperReport currentJasperReport = null;
+    private volatile JasperReport currentJasperReport = null;
     /**
      * fields required by Action
      */
@@ -78,17 +166,28 @@ public class JasperReportImpl implements Runnable {
     private boolean showDialog = true;
     private String exportFilePath = null;
     private boolean overwriteExportFile = false;
+    private OutputStream exportOutputStream = null;
+    private Virtualization virtualization = Virtualization.NONE;
+    private int virtualizerMaxPages = DEFAULT_VIRTUALIZER_PAGES;
+    private int resultCacheTTL = 0;
+    private int dataSnapshotTTL = 0;
+    private Boolean pooledSubreports = null;
+    /**
+     * the virtualizer of the current execution, cleaned up when the
+     * PrintExecutor is done with the filled report
+     */
+    private JRVirtualizer virtualizer = null;
 
     /**
      * Each prompt filler in list is called after compiling, but before
      * executing. There is no guarantee in what order the fillers will be
      * called!
      */
-    private List<PrintPromptFiller> promptFillers = new ArrayList<PrintPromptFiller>();
+    private List<PrintPromptFiller> promptFillers = new CopyOnWriteArrayList<PrintPromptFiller>();
     /**
      * Status listeners get notified of events that occur during
      */
-    private List<PrintStatusListener> statusListeners = new ArrayList<PrintStatusListener>();
+    private List<PrintStatusListener> statusListeners = new CopyOnWriteArrayList<PrintStatusListener>();
 
     /**
      * fields required by ExportAction
@@ -97,11 +196,18 @@ public class JasperReportImpl implements Runnable {
      * Used by executeReport so we know if the report successfully filled or
      * not.
      */
-    private boolean processing = false;    // becomes true if execute() is called, false when finished = true
-    private boolean error = false;      // becomes true if execution error
-    private boolean canceled = false;   // becomes true if execution canceled
-    private StatusCode status = StatusCode.UNDEFINED;
-    private FillMonitor monitor = null;
+    private volatile boolean processing = false;    // becomes true if execute() is called, false when finished = true
+    private volatile boolean error = false;      // becomes true if execution error
+    private volatile boolean canceled = false;   // becomes true if execution canceled
+    private volatile StatusCode status = StatusCode.UNDEFINED;
+    private volatile ReportFill fill = null;
+    private volatile long queueWaitTime = 0;   // ms spent waiting for a worker, set when the job starts
+    private volatile CompletableFuture<StatusCode> completion = CompletableFuture.completedFuture(StatusCode.UNDEFINED);
+    /**
+     * the job started by the last call to execute(), the run state getters
+     * return its state
+     */
+    private volatile ReportJob lastJob = null;
 
     /**
      * Basic no-args constructor.
@@ -117,6 +223,68 @@ public class JasperReportImpl implements Runnable {
         setReportPath(reportPath);
     }
 
+    /**
+     * Used by {@link ReportJob}, sets everything from the definition.
+     *
+     * @param def
+     */
+    JasperReportImpl(ReportDefinition def) {
+        this.reportPath = def.getReportPath();
+        this.reportName = def.getReportName();
+        this.connectionID = def.getConnectionID();
+        this.printer = def.getPrinter();
+        this.copies = def.getCopies();
+        this.collate = def.isCollate();
+        this.duplex = def.getDuplex();
+        this.showDialog = def.isShowDialog();
+        this.exportFilePath = def.getExportFilePath();
+        this.overwriteExportFile = def.isOverwriteExportFile();
+        this.exportOutputStream = def.getExportOutputStream();
+        this.virtualization = def.getVirtualization();
+        this.virtualizerMaxPages = def.getVirtualizerMaxPages();
+        this.resultCacheTTL = def.getResultCacheTTL();
+        this.dataSnapshotTTL = def.getDataSnapshotTTL();
+        this.pooledSubreports = def.getPooledSubreports();
+        this.promptForParameters = def.isPromptForParameters();
+        this.progressDelay = def.getProgressDelay();
+        this.priority = def.getPriority();
+        this.params.putAll(def.getParams());
+        this.parent = def.getParent();
+        this.printButton = def.getPrintButton();
+        this.promptFillers.addAll(def.getPromptFillers());
+        this.statusListeners.addAll(def.getStatusListeners());
+        if (def.getPrintAction() != printAction) {
+            setPrintAction(def.getPrintAction());
+        }
+    }
+
+    /**
+     * A snapshot of how this report is set up now, which can be executed any
+     * number of times (at the same time) with {@link ReportDefinition#newJob()}.
+     * Changes made to this report afterwards do not change the definition.
+     *
+     * @return
+     */
+    public ReportDefinition getDefinition() {
+        return new ReportDefinition(this, reportName, promptFillers, statusListeners);
+    }
+
+    /**
+     * @return the job started by the last call to {@link execute()}, or null
+     * if not executed yet
+     */
+    public ReportJob getLastJob() {
+        return lastJob;
+    }
+
+    /**
+     * The run state (status, error, canceled...) is that of the last job.
+     */
+    private JasperReportImpl current() {
+        ReportJob job = lastJob;
+        return (job == null ? this : job);
+    }
+
     /**
      * The JasperReport object is stored and managed by the Report Manager. It
      * is not cached within this JasperReportImpl class, but this method can be
@@ -143,8 +311,10 @@ public class JasperReportImpl implements Runnable {
      * parameters before executing.
      *
      * @param prefs
+     * @return completes with the final status of this execution, see
+     * {@link execute()}
      */
-    public void execute(PrintPreferences prefs) {
+    public CompletableFuture<StatusCode> execute(PrintPreferences prefs) {
 
         logger.trace("Calling execute w/prefs = " + prefs);
         if (prefs != null) {
@@ -156,7 +326,7 @@ public class JasperReportImpl implements Runnable {
         } else {
             logger.warn("Execute called with null prefs");
         }
-        execute();
+        return execute();
     }
 
     /**
@@ -166,57 +336,84 @@ public class JasperReportImpl implements Runnable {
      * <p>
      * This is NOT the actual filling / executing of report method. This calls
      * {@link ReportManager}.executeReport(JasperReportImpl), which queues the
-     * job to a {@link java.util.concurrent.ThreadPoolExecutor}
-     * (Executors.newSingleThreadExecutor()) which in turn calls the
-     * {@link run()} method of this class.
+     * job to the ReportManager's pool of worker threads, which in turn calls
+     * the {@link run()} method of this class.
+     * <p>
+     * Each call executes a new {@link ReportJob} of the current
+     * {@link getDefinition()}, with its own copy of the parameters, so the
+     * report may be executed again before the last execution is finished.
+     * The status getters of this report return the state of the last job.
      * <p>
+     * The returned future completes when this execution fires
+     * {@link StatusCode#COMPLETE}, {@link StatusCode#CANCELED} or
+     * {@link StatusCode#ERROR}, with that status.  It is never completed
+     * exceptionally.
+     *
+     * @return completes with the final status of this execution
      */
-    public void execute() {
+    public CompletableFuture<StatusCode> execute() {
         logger.debug("execute() called, the printer is: " + printer + ", action = " + this.getPrintAction());
 
+        ReportJob job = getDefinition().newJob();
+        lastJob = job;
+        // the export file is only used once, see setExportFilePath
+        exportFilePath = null;
+        exportOutputStream = null;
+
+        return job.execute();
+    }
+
+    /**
+     * Resets the run state and queues this to the ReportManager.
+     *
+     * @return completes with the final status of this execution
+     */
+    CompletableFuture<StatusCode> submit() {
+
+        CompletableFuture<StatusCode> result = new CompletableFuture<>();
+        completion = result;
         status = StatusCode.UNDEFINED;
         error = false;
         canceled = false;
         processing = true;
+        queueWaitTime = 0;
 
         setPrintButtonEnabled(false);
         ReportManager.executeReport(this);
         setPrintButtonEnabled(true);
+        return result;
     }
 
     /**
-     * Calls {@link execute()} on a secondary thread and waits for it to
-     * complete.
+     * Calls {@link execute()} and waits for it to complete.
      * <p>
      * <b>Warning: </b> This should not be called from the EventDispatchThread!
      *
-     * @return
+     * @return true if the report completed, false if it was canceled or
+     * failed
      */
     public boolean executeAndWait() {
 
-        boolean success = false;
-
         try {
-
-            // ensure that execute doesn't happen on EDT
-            new Thread(() -> {
-                execute();
-            }).start();
-
-            Thread.sleep(50);
-
-            while (isProcessing()) {
-                Thread.sleep(25);
-            }
-
-            success = !(isCanceled() || isError());
-
-        } catch (Throwable ex) {
-            logger.error("Failed to convert to PDF: " + ex.getLocalizedMessage(), ex);
+            return execute().get() == StatusCode.COMPLETE;
+        } catch (InterruptedException ex) {
+            logger.warn("Interrupted while waiting for report " + getReportName());
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            logger.error("Failed to execute the report: " + ex.getLocalizedMessage(), ex);
         }
+        return false;
 
-        return success;
+    }
 
+    /**
+     * The completion of the last call to {@link execute()}, which is already
+     * completed (with UNDEFINED) if the report has never been executed.
+     *
+     * @return completes with the final status of the last execution
+     */
+    public CompletableFuture<StatusCode> getCompletion() {
+        return current().completion;
     }
 
     /**
@@ -304,12 +501,12 @@ public class JasperReportImpl implements Runnable {
     /**
      * The PrintExecutor is the class that does the actual printing / preview /
      * export. The default is PREVIEW if not modified. Changing this will also
-     * update the printAction. This method is private, and is set by the
-     * setPrintAction class.
+     * update the printAction. This is set by the setPrintAction method, and
+     * by {@link ReportBatch} for the rows of a merged batch.
      *
      * @param printExecutor the printExecutor to set
      */
-    private void setPrintExecutor(PrintExecutor printExecutor) {
+    void setPrintExecutor(PrintExecutor printExecutor) {
         if (printExecutor == null || !printExecutor.isValid()) {
             throw new IllegalArgumentException("The PrintAction supplied is not valid!");
         }
@@ -317,6 +514,42 @@ public class JasperReportImpl implements Runnable {
         this.printAction = printExecutor.getAction();
     }
 
+    /**
+     * @return the scheduling priority of this report
+     * @see #setPriority(int)
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * Set the scheduling priority.  When reports are waiting for a free worker
+     * those with the higher priority are run first.  Default is 0, negative
+     * values are allowed.
+     *
+     * @param priority
+     */
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * @return milliseconds the last execution waited in the queue before it
+     * started, or 0 if it has not started yet
+     */
+    public long getQueueWaitTime() {
+        return current().queueWaitTime;
+    }
+
+    /**
+     * Called by the ReportScheduler when the job is handed to a worker.
+     *
+     * @param millis
+     */
+    void setQueueWaitTime(long millis) {
+        this.queueWaitTime = millis;
+    }
+
     public Action getPrintAction() {
         return printAction;
     }
@@ -424,7 +657,7 @@ public class JasperReportImpl implements Runnable {
      * @return
      */
     public boolean isProcessing() {
-        return processing;
+        return current().processing;
     }
 
     /**
@@ -432,7 +665,7 @@ public class JasperReportImpl implements Runnable {
      * @return true if the report execution was canceled for any reason
      */
     public boolean isCanceled() {
-        return canceled;
+        return current().canceled;
     }
 
     /**
@@ -440,7 +673,7 @@ public class JasperReportImpl implements Runnable {
      * @return true if executing the report invokes an error
      */
     public boolean isError() {
-        return error;
+        return current().error;
     }
 
     /**
@@ -450,7 +683,7 @@ public class JasperReportImpl implements Runnable {
      * @return
      */
     public StatusCode getStatus() {
-        return status;
+        return current().status;
     }
 
     /**
@@ -460,6 +693,11 @@ public class JasperReportImpl implements Runnable {
      * @param cancel
      */
     public void setCanceled(boolean cancel) {
+        ReportJob job = lastJob;
+        if (job != null) {
+            job.setCanceled(cancel);
+            return;
+        }
         canceled = cancel;
         if (cancel == true) {
             firePrintStatusChanged(StatusCode.CANCELED);
@@ -476,6 +714,27 @@ public class JasperReportImpl implements Runnable {
         }
     }
 
+    /**
+     * Cancels this report's execution at any stage: if it is being filled the
+     * fill is interrupted, otherwise it is the same as setCanceled(true).
+     */
+    public void cancel() {
+        ReportJob job = lastJob;
+        if (job != null) {
+            job.cancel();
+            return;
+        }
+        if (!processing) {
+            return;     // already finished
+        }
+        ReportFill f = fill;
+        if (f != null && !f.isFinished()) {
+            f.cancel();     // CANCELED is fired when the fill stops
+        } else {
+            setCanceled(true);
+        }
+    }
+
     /**
      * @return the number of seconds to wait before showing a cancelable
      *         progress dialog.
@@ -602,22 +861,31 @@ public class JasperReportImpl implements Runnable {
         }
 
         // now fire listeners and give the listners a chance to cancel, etc.
-        for (PrintStatusListener listener : statusListeners) {
-            listener.statusChanged(new PrintStatusEvent(this, status));
+        if (!statusListeners.isEmpty()) {
+            PrintStatusEvent event = new PrintStatusEvent(this, status, ReportManager.getQueueDepth(), queueWaitTime);
+            for (PrintStatusListener listener : statusListeners) {
+                listener.statusChanged(event);
+            }
+        }
+
+        // wake up anyone waiting on this execution, after the listeners ran
+        if (status == StatusCode.COMPLETE || status == StatusCode.CANCELED || status == StatusCode.ERROR) {
+            completion.complete(status);
         }
     }
 
     /**
-     * This is called by the ReportManager's REPORT_EXECUTOR, which is a
-     * SingleThreadExecutor. Invokes in the following sequence:
+     * This is called by one of the ReportManager's worker threads. Invokes in
+     * the following sequence:
      * <ol>
      * <li>Gets the compiled JasperReport from ReportManager (which caches them)
      * <li>Invokes {@link PrintPromptFiller} to fill report with parameters
      * (including default ones)
      * <li>Invokes a {@link com.ticktockdata.jasper.gui.PromptDialog} if
      * isPromptForParameters() == true
-     * <li>Starts a {@link FillMonitor} to fill the JasperReport
-     * <li>The FillMonitor's reportFinished(JasperPrint) event calls this
+     * <li>Starts a {@link FillMonitor} (or, headless, just a {@link ReportFill})
+     * to fill the JasperReport
+     * <li>The fill's reportFinished(JasperPrint) event calls this
      * report's reportExecutor.execute() to print / preview / export the report.
      * </ol>
      * At any point an error or cancel will (should) stop the process and
@@ -630,6 +898,12 @@ public class JasperReportImpl implements Runnable {
 
         try {
 
+            // canceled while it was waiting in the queue
+            if (canceled) {
+                logger.debug("Report " + getReportName() + " was canceled before it started");
+                return;
+            }
+
             // fire property change that lets interested parties know execution has started
             firePrintStatusChanged(StatusCode.STARTED);
 
@@ -661,12 +935,22 @@ public class JasperReportImpl implements Runnable {
                 return;
             }
 
+            // nothing may be shown on a headless fill, this is never the EDT,
+            // as run is started by a report worker thread
+            final boolean headless = ReportManager.isHeadlessFill() || progressDelay < 0
+                    || GraphicsEnvironment.isHeadless();
+
             // if set then show the prompts dialog.
-            if (isPromptForParameters()) {
-                SwingUtilities.invokeAndWait(() -> {
-                    logger.debug("calling showPromptDialog...");
-                    PromptDialog.showPromptDialog(parent, JasperReportImpl.this);
-                });
+            if (isPromptForParameters() && headless) {
+                logger.warn("Not prompting for parameters of headless report "
+                        + getReportPath() + ", filling with the parameters given");
+            } else if (isPromptForParameters()) {
+                synchronized (PROMPT_LOCK) {
+                    SwingUtilities.invokeAndWait(() -> {
+                        logger.debug("calling showPromptDialog...");
+                        PromptDialog.showPromptDialog(parent, JasperReportImpl.this);
+                    });
+                }
                 logger.trace("did fill parameters");
                 if (canceled) {
                     logger.warn("canceled when prompting for params!");
@@ -681,43 +965,37 @@ public class JasperReportImpl implements Runnable {
             }
 
             // at this point we should have a valid JasperReport
-            // this is never the EDT, as run is started by a SingleThreadExecutor
-            // NOTE: even though this is invokeAndWait it does not block while report is filling
-            SwingUtilities.invokeAndWait(() -> {
-                monitor = new FillMonitor(JasperReportImpl.this);
-                logger.debug("started fill monitor");
-            });
-
-            logger.trace("Starting a Waiter thread and calling .join");
-            Thread waiter = new Thread(() -> {
-                monitor.startFill();
-                while (monitor.isFilling()) {
-                    try {
-                        Thread.sleep(5);
-                    } catch (Exception tx) {
-                        logger.error("Error while waiting on fill monitor", tx);
-                    }
-                }
-                // ToDo: Showing message should NOT be here - need to move outward
-                if (monitor.getThrowable() != null) {
-                    SwingUtilities.invokeLater(() -> {
-                        Throwable cause = monitor.getThrowable();
-                        String msg = "";
-                        while (cause != null) {
-                            msg += "\n" + cause.toString();
-                            cause = cause.getCause();
-                        }
-                        JOptionPane.showMessageDialog(null, "An error occurred filling report:" + msg, "Report Failed", JOptionPane.ERROR_MESSAGE);
-                    });
-                }
-            });
+            if (headless) {
+                // nothing to show, so don't touch the EDT at all
+                fill = new ReportFill(this);
+            } else {
+                // NOTE: even though this is invokeAndWait it does not block while report is filling
+                SwingUtilities.invokeAndWait(() -> {
+                    fill = new FillMonitor(JasperReportImpl.this).getReportFill();
+                    logger.debug("started fill monitor");
+                });
+            }
 
-            // start the waiter thread
-            waiter.start();
-            // current thread waits until waiter dies.
-            waiter.join();
+            // the fill's listener callbacks fire the final status, this
+            // worker just waits for them so it is not free before the job is
+            fill.start();
+            fill.waitForFinish();
+
+            // ToDo: Showing message should NOT be here - need to move outward
+            if (fill.getThrowable() != null && !headless) {
+                final Throwable throwable = fill.getThrowable();
+                SwingUtilities.invokeLater(() -> {
+                    Throwable cause = throwable;
+                    String msg = "";
+                    while (cause != null) {
+                        msg += "\n" + cause.toString();
+                        cause = cause.getCause();
+                    }
+                    JOptionPane.showMessageDialog(null, "An error occurred filling report:" + msg, "Report Failed", JOptionPane.ERROR_MESSAGE);
+                });
+            }
 
-            logger.trace("Waiter has joined!");            
+            logger.trace("Fill has finished");
             error = false;  // why?
 
         } catch (Exception err) {
@@ -726,7 +1004,7 @@ public class JasperReportImpl implements Runnable {
             // remove this report from cache on error, so it can be tried again.
             ReportManager.removeFromCache(reportPath);
         } finally {
-            monitor = null; // free resource
+            fill = null; // free resource
             currentJasperReport = null;
             if (bg != null) {
                 printButton.setBackground(bg);
@@ -858,6 +1136,26 @@ public class JasperReportImpl implements Runnable {
         this.exportFilePath = exportFilePath;
     }
 
+    /**
+     * @return the stream the next export is written to, or null
+     */
+    public OutputStream getExportOutputStream() {
+        return exportOutputStream;
+    }
+
+    /**
+     * Specifies a stream to write the output of an EXPORT_TO_XXX action to,
+     * instead of a file.  If set the export file path is not used, and no
+     * File Picker is shown.  The stream is not closed by the export.
+     * <p>
+     * Like the export file path this is cleared after each execution.
+     *
+     * @param exportOutputStream the stream, or null to export to a file
+     */
+    public void setExportOutputStream(OutputStream exportOutputStream) {
+        this.exportOutputStream = exportOutputStream;
+    }
+
     /**
      * @return the overwriteExportFile
      */
@@ -875,4 +1173,162 @@ public class JasperReportImpl implements Runnable {
         this.overwriteExportFile = overwriteExportFile;
     }
 
+    public Virtualization getVirtualization() {
+        return virtualization;
+    }
+
+    /**
+     * Set this for very large reports, so that only the last
+     * {@link #setVirtualizerMaxPages(int)} pages are kept on the heap while
+     * the report is filled, printed, exported or previewed.  Default is NONE.
+     *
+     * @param virtualization null is the same as NONE
+     */
+    public void setVirtualization(Virtualization virtualization) {
+        this.virtualization = (virtualization == null ? Virtualization.NONE : virtualization);
+    }
+
+    public int getVirtualizerMaxPages() {
+        return virtualizerMaxPages;
+    }
+
+    /**
+     * The number of pages kept on the heap when a virtualization is set.
+     * Default is {@link #DEFAULT_VIRTUALIZER_PAGES}.
+     *
+     * @param maxPages must be at least 1
+     */
+    public void setVirtualizerMaxPages(int maxPages) {
+        if (maxPages < 1) {
+            throw new InvalidParameterException("The virtualizer must keep at least 1 page in memory: " + maxPages);
+        }
+        this.virtualizerMaxPages = maxPages;
+    }
+
+    public int getResultCacheTTL() {
+        return resultCacheTTL;
+    }
+
+    /**
+     * Keeps the filled report for this many seconds, so when the report is
+     * run again with the same connection and parameters (and the .jrxml is
+     * unchanged) it is not filled again.  Only set this for reports whose
+     * data does not change often.  Default is 0, the filled report is not
+     * kept.  Virtualized reports are never kept.
+     *
+     * @param seconds 0 to not keep the filled report
+     */
+    public void setResultCacheTTL(int seconds) {
+        if (seconds < 0) {
+            throw new InvalidParameterException("Result Cache TTL may not be less than 0: " + seconds);
+        }
+        this.resultCacheTTL = seconds;
+    }
+
+    public int getDataSnapshotTTL() {
+        return dataSnapshotTTL;
+    }
+
+    /**
+     * Keeps the data of the filled report (the rows of all its queries) for
+     * this many seconds, so when the report is filled again with the same
+     * connection and parameters (and the .jrxml is unchanged) no query is
+     * run.  Unlike {@link #setResultCacheTTL(int)} only the data is kept, the
+     * report is filled again, and it also works for virtualized reports.
+     * Default is 0, the data is not kept.
+     *
+     * @param seconds 0 to not keep the data
+     */
+    public void setDataSnapshotTTL(int seconds) {
+        if (seconds < 0) {
+            throw new InvalidParameterException("Data Snapshot TTL may not be less than 0: " + seconds);
+        }
+        this.dataSnapshotTTL = seconds;
+    }
+
+    public Boolean getPooledSubreports() {
+        return pooledSubreports;
+    }
+
+    /**
+     * Whether the subreports of this report are filled on the shared pool of
+     * subreport threads, each with its own connection, see
+     * {@link ReportManager#setPooledSubreports(boolean)}.
+     *
+     * @param pooled null (the default) to use the ReportManager's setting
+     */
+    public void setPooledSubreports(Boolean pooled) {
+        this.pooledSubreports = pooled;
+    }
+
+    /**
+     * @return true if the subreports are filled on the shared pool of
+     * subreport threads
+     */
+    boolean isPooledSubreports() {
+        return (pooledSubreports == null ? ReportManager.isPooledSubreports() : pooledSubreports);
+    }
+
+    /**
+     * Creates the virtualizer for this execution, if a virtualization is
+     * set.  It is cleaned up by {@link #releaseVirtualizer()}.
+     *
+     * @return null if virtualization is NONE
+     */
+    synchronized JRVirtualizer createVirtualizer() {
+
+        releaseVirtualizer();
+        String dir = System.getProperty("java.io.tmpdir");
+        switch (virtualization) {
+            case FILE:
+                virtualizer = new JRFileVirtualizer(virtualizerMaxPages, dir);
+                break;
+            case SWAP_FILE:
+                virtualizer = new JRSwapFileVirtualizer(virtualizerMaxPages, new JRSwapFile(dir, 4096, 64), true);
+                break;
+            case MAPPED_SWAP_FILE:
+                // the virtualizer creates one store per filled report
+                final File swapDir = new File(dir);
+                virtualizer = new StoreFactoryVirtualizer(virtualizerMaxPages, (JRVirtualizationContext context) -> {
+                    try {
+                        return new MappedVirtualizerStore(swapDir, 4096, 1024);
+                    } catch (IOException ex) {
+                        throw new JRRuntimeException("Can not create a swap file in " + swapDir, ex);
+                    }
+                });
+                break;
+            case GZIP:
+                virtualizer = new JRGzipVirtualizer(virtualizerMaxPages);
+                break;
+            case LZ:
+                virtualizer = new CompressingVirtualizer(virtualizerMaxPages, CompressingVirtualizer.Codec.LZ);
+                break;
+            case DEFLATE:
+                virtualizer = new CompressingVirtualizer(virtualizerMaxPages, CompressingVirtualizer.Codec.DEFLATE);
+                break;
+            default:
+                virtualizer = null;
+        }
+        if (virtualizer != null) {
+            logger.debug("Filling " + getReportName() + " with " + virtualization + " virtualization, " + virtualizerMaxPages + " pages in memory");
+        }
+        return virtualizer;
+    }
+
+    /**
+     * Deletes the virtualized pages of the last execution (files, swap file
+     * or compressed pages).  Called when the PrintExecutor is done with the
+     * filled report, which for a preview is when the viewer closes.
+     */
+    synchronized void releaseVirtualizer() {
+        if (virtualizer != null) {
+            try {
+                virtualizer.cleanup();
+            } catch (RuntimeException ex) {
+                logger.warn("Error cleaning up the virtualizer of " + reportName, ex);
+            }
+            virtualizer = null;
+        }
+    }
+
 }
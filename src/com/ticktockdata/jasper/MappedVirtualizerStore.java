@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2018 Joseph A Miller
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ticktockdata.jasper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import net.sf.jasperreports.engine.JRRuntimeException;
+import net.sf.jasperreports.engine.JRVirtualizable;
+import net.sf.jasperreports.engine.fill.VirtualizerStore;
+import net.sf.jasperreports.engine.util.VirtualizationSerializer;
+import static com.ticktockdata.jasper.ReportManager.logger;
+
+/**
+ * A swap file for virtualized pages, like JasperReports' SwapFileVirtualizerStore,
+ * but the file is memory-mapped instead of being read and written with a
+ * seek + read / write system call per block.
+ * <p>
+ * The file is mapped in segments of segmentBlocks blocks, a new segment is
+ * added when all blocks are in use.  A page is written to as many blocks as
+ * it needs (they need not be next to each other), and the blocks of a page
+ * that is read back or removed are reused by the next pages.
+ * <p>
+ * One store is created per filled report, by the StoreFactoryVirtualizer of
+ * {@link JasperReportImpl.Virtualization#MAPPED_SWAP_FILE}.  The file is
+ * deleted by dispose().  (On Windows a mapped file can not be deleted until
+ * the mapping is garbage collected, then it is deleted on exit.)
+ *
+ * @since Oct 18, 2026
+ */
+final class MappedVirtualizerStore implements VirtualizerStore {
+
+    /**
+     * the blocks used by one page, and its length
+     */
+    private static final class Handle {
+
+        private final int[] blocks;
+        private final int length;
+
+        private Handle(int[] blocks, int length) {
+            this.blocks = blocks;
+            this.length = length;
+        }
+    }
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final int blockSize;
+    private final int segmentBlocks;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    /**
+     * set bits are blocks in use
+     */
+    private final BitSet used = new BitSet();
+    private final Map<String, Handle> handles = new ConcurrentHashMap<>();
+    private boolean disposed = false;
+
+    /**
+     * @param dir where the swap file is created
+     * @param blockSize bytes per block
+     * @param segmentBlocks blocks per mapped segment, the file grows by this
+     * many blocks at a time
+     * @throws IOException if the file can not be created
+     */
+    MappedVirtualizerStore(File dir, int blockSize, int segmentBlocks) throws IOException {
+        this.blockSize = blockSize;
+        this.segmentBlocks = segmentBlocks;
+        this.file = File.createTempFile("jasper-mapped-", ".swap", dir);
+        this.raf = new RandomAccessFile(file, "rw");
+        this.channel = raf.getChannel();
+        logger.debug("Created mapped swap file " + file);
+    }
+
+    @Override
+    public boolean store(JRVirtualizable<?> o, VirtualizationSerializer serializer) {
+
+        if (handles.containsKey(o.getUID())) {
+            return false;   // already stored (read-only)
+        }
+        try {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream(blockSize);
+            serializer.writeData(o, bout);
+            handles.put(o.getUID(), write(bout.toByteArray()));
+            return true;
+        } catch (IOException ex) {
+            throw new JRRuntimeException("Error writing page " + o.getUID() + " to " + file, ex);
+        }
+    }
+
+    @Override
+    public void retrieve(JRVirtualizable<?> o, boolean remove, VirtualizationSerializer serializer) {
+
+        Handle handle = (remove ? handles.remove(o.getUID()) : handles.get(o.getUID()));
+        if (handle == null) {
+            throw new JRRuntimeException("Page " + o.getUID() + " is not in " + file);
+        }
+        byte[] data = read(handle, remove);
+        try {
+            serializer.readData(o, new ByteArrayInputStream(data));
+        } catch (IOException ex) {
+            throw new JRRuntimeException("Error reading page " + o.getUID() + " from " + file, ex);
+        }
+    }
+
+    @Override
+    public void remove(String objectId) {
+        Handle handle = handles.remove(objectId);
+        if (handle != null) {
+            free(handle);
+        }
+    }
+
+    @Override
+    public synchronized void dispose() {
+
+        if (disposed) {
+            return;
+        }
+        disposed = true;
+        handles.clear();
+        used.clear();
+        segments.clear();
+        try {
+            channel.close();
+            raf.close();
+        } catch (IOException ex) {
+            logger.debug("Error closing mapped swap file " + file, ex);
+        }
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+        logger.debug("Disposed mapped swap file " + file);
+    }
+
+    private synchronized Handle write(byte[] data) throws IOException {
+
+        if (disposed) {
+            throw new IOException("The swap file was disposed: " + file);
+        }
+        int count = Math.max(1, (data.length + blockSize - 1) / blockSize);
+        int[] blocks = new int[count];
+        int block = -1;
+        for (int i = 0; i < count; i++) {
+            block = used.nextClearBit(block + 1);
+            if (block >= segments.size() * segmentBlocks) {
+                grow();
+            }
+            used.set(block);
+            blocks[i] = block;
+
+            int offset = i * blockSize;
+            MappedByteBuffer segment = segments.get(block / segmentBlocks);
+            segment.position((block % segmentBlocks) * blockSize);
+            segment.put(data, offset, Math.min(blockSize, data.length - offset));
+        }
+        return new Handle(blocks, data.length);
+    }
+
+    private synchronized byte[] read(Handle handle, boolean free) {
+
+        if (disposed) {
+            throw new JRRuntimeException("The swap file was disposed: " + file);
+        }
+        byte[] data = new byte[handle.length];
+        for (int i = 0; i < handle.blocks.length; i++) {
+            int block = handle.blocks[i];
+            int offset = i * blockSize;
+            MappedByteBuffer segment = segments.get(block / segmentBlocks);
+            segment.position((block % segmentBlocks) * blockSize);
+            segment.get(data, offset, Math.min(blockSize, data.length - offset));
+        }
+        if (free) {
+            for (int block : handle.blocks) {
+                used.clear(block);
+            }
+        }
+        return data;
+    }
+
+    private synchronized void free(Handle handle) {
+        if (!disposed) {
+            for (int block : handle.blocks) {
+                used.clear(block);
+            }
+        }
+    }
+
+    /**
+     * Maps one more segment at the end of the file (which extends it).
+     */
+    private void grow() throws IOException {
+        long position = (long) segments.size() * segmentBlocks * blockSize;
+        segments.add(channel.map(FileChannel.MapMode.READ_WRITE, position, (long) segmentBlocks * blockSize));
+        logger.trace("Mapped swap file " + file + " grew to " + segments.size() + " segments");
+    }
+
+    @Override
+    public String toString() {
+        return "MappedVirtualizerStore " + file;
+    }
+
+}
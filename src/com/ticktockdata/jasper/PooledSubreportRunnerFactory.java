@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2018 Joseph A Miller
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ticktockdata.jasper;
+
+import java.security.InvalidParameterException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import net.sf.jasperreports.engine.JasperReportsContext;
+import net.sf.jasperreports.engine.SimpleJasperReportsContext;
+import net.sf.jasperreports.engine.fill.JRBaseFiller;
+import net.sf.jasperreports.engine.fill.JRFillSubreport;
+import net.sf.jasperreports.engine.fill.JRSubreportRunner;
+import net.sf.jasperreports.engine.fill.JRSubreportRunnerFactory;
+import net.sf.jasperreports.engine.fill.ThreadExecutorSubreportRunner;
+
+/**
+ * Fills subreports on threads of one pool shared by all fills, instead of a
+ * new thread for each subreport fill (JasperReports' default), which for a
+ * subreport in the detail band is a new thread for every row.
+ * <p>
+ * JasperReports fills a subreport on its own thread page by page, the parent
+ * waits while the subreport fills a page, so each running subreport holds a
+ * thread until it is done.  The pool keeps up to {@link #getMaxThreads()}
+ * threads for reuse, when all of them are busy a subreport gets a new thread
+ * of its own, so nested subreports and concurrent fills can never wait for
+ * each other.
+ * <p>
+ * Each subreport thread runs its queries on its own pooled connection, see
+ * {@link SubreportConnection}, so a subreport query does not share the
+ * connection (and open cursor) of its parent.
+ * <p>
+ * Installed in a fill's context with {@link #install(JasperReportsContext)},
+ * JasperReports creates it by its class name, so it must be public.
+ *
+ * @since Oct 18, 2026
+ */
+public final class PooledSubreportRunnerFactory implements JRSubreportRunnerFactory {
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+    private static final AtomicLong RUN_COUNT = new AtomicLong();
+    private static final AtomicLong EXTRA_COUNT = new AtomicLong();
+
+    private static final ThreadPoolExecutor POOL = new ThreadPoolExecutor(0,
+            Runtime.getRuntime().availableProcessors(), 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+            PooledSubreportRunnerFactory::newThread,
+            (Runnable r, ThreadPoolExecutor executor) -> {
+                // all pooled threads are busy, waiting could deadlock
+                EXTRA_COUNT.incrementAndGet();
+                newThread(r).start();
+            });
+
+    /**
+     * Fills a subreport on a pooled thread, with its own connection
+     */
+    private static final class Runner extends ThreadExecutorSubreportRunner {
+
+        private Runner(JRFillSubreport fillSubreport, JRBaseFiller subreportFiller) {
+            super(fillSubreport, subreportFiller, POOL);
+        }
+
+        @Override
+        public void run() {
+            RUN_COUNT.incrementAndGet();
+            SubreportConnection.enterSubreport();
+            try {
+                super.run();
+            } finally {
+                SubreportConnection.exitSubreport();
+            }
+        }
+    }
+
+    /**
+     * Created by JasperReports
+     */
+    public PooledSubreportRunnerFactory() {
+        super();
+    }
+
+    @Override
+    public JRSubreportRunner createSubreportRunner(JRFillSubreport fillSubreport, JRBaseFiller subreportFiller) {
+        return new Runner(fillSubreport, subreportFiller);
+    }
+
+    private static Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "JasperPrint-subreport-" + THREAD_COUNT.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    }
+
+    /**
+     * @param context the context of a fill
+     * @return a context that fills the subreports with this factory
+     */
+    static JasperReportsContext install(JasperReportsContext context) {
+        SimpleJasperReportsContext child = new SimpleJasperReportsContext(context);
+        child.setProperty(SUBREPORT_RUNNER_FACTORY, PooledSubreportRunnerFactory.class.getName());
+        return child;
+    }
+
+    /**
+     * @param threads the number of threads kept for reuse, default is the
+     * number of processors
+     */
+    static void setMaxThreads(int threads) {
+        if (threads < 1) {
+            throw new InvalidParameterException("The subreport pool must have at least 1 thread: " + threads);
+        }
+        POOL.setMaximumPoolSize(threads);
+    }
+
+    static int getMaxThreads() {
+        return POOL.getMaximumPoolSize();
+    }
+
+    /**
+     * @return user-readable summary of the pool, for the STATUS command
+     */
+    static String getStatusMessage() {
+        return "Subreport threads: " + POOL.getActiveCount() + " busy, " + POOL.getPoolSize() + " of "
+                + POOL.getMaximumPoolSize() + " pooled, " + RUN_COUNT.get() + " subreport fills, "
+                + EXTRA_COUNT.get() + " on extra threads";
+    }
+
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2018 Joseph A Miller
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ticktockdata.jasper;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.sf.jasperreports.engine.JRDataSource;
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JRField;
+import static com.ticktockdata.jasper.ReportManager.logger;
+
+/**
+ * Reads the rows of another JRDataSource on a separate thread, so the
+ * database round trips happen while the filler evaluates the rows already
+ * read, instead of one after the other.
+ * <p>
+ * The producer thread calls next() and getFieldValue() of every field on the
+ * source, and hands the values to the fill thread in chunks through a
+ * bounded queue, so at most about bufferRows rows are held in memory.  When
+ * the fill thread is waiting for rows a partly filled chunk is handed over
+ * right away.
+ * <p>
+ * An error reading the source is thrown by next() on the fill thread.
+ * close() stops the producer (after canceling the running query with
+ * onStop, if the producer is still reading), it must be called before the
+ * source's result set is closed.
+ *
+ * @since Oct 18, 2026
+ */
+final class PrefetchingDataSource implements JRDataSource {
+
+    static final int CHUNK_ROWS = 64;
+
+    private static final Object[][] END = new Object[0][];
+    private static final long OFFER_WAIT_MILLIS = 50;
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+    private static final ExecutorService PRODUCERS = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "JasperPrint-prefetch-" + THREAD_COUNT.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final JRDataSource source;
+    private final JRField[] fields;
+    private final Map<String, Integer> fieldIndex = new HashMap<>();
+    private final int chunkRows;
+    private final BlockingQueue<Object[][]> queue;
+    private final Runnable onStop;
+    private final Future<?> producer;
+
+    private volatile boolean closed = false;
+    /**
+     * the fill thread is waiting for a chunk
+     */
+    private volatile boolean starving = false;
+    private volatile Throwable error = null;
+
+    // used only by the fill thread
+    private Object[][] chunk = null;
+    private int row = 0;
+    private Object[] current = null;
+    private boolean done = false;
+
+    /**
+     * Starts reading the source right away.
+     *
+     * @param source read on the producer thread only, from now on
+     * @param fields the fields whose values are read for each row
+     * @param bufferRows about how many rows may be read ahead
+     * @param onStop cancels the running query, run by close() if the
+     * producer is still reading (may be null)
+     */
+    PrefetchingDataSource(JRDataSource source, JRField[] fields, int bufferRows, Runnable onStop) {
+        this.source = source;
+        this.fields = (fields == null ? new JRField[0] : fields);
+        for (int i = 0; i < this.fields.length; i++) {
+            fieldIndex.put(this.fields[i].getName(), i);
+        }
+        this.chunkRows = Math.max(1, Math.min(CHUNK_ROWS, bufferRows));
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, bufferRows / chunkRows));
+        this.onStop = onStop;
+        this.producer = PRODUCERS.submit(this::produce);
+    }
+
+    @Override
+    public boolean next() throws JRException {
+
+        if (done) {
+            return false;
+        }
+        if (chunk != null && ++row < chunk.length) {
+            current = chunk[row];
+            return true;
+        }
+
+        Object[][] next;
+        starving = true;
+        try {
+            next = queue.take();
+        } catch (InterruptedException ex) {
+            // the fill was canceled
+            Thread.currentThread().interrupt();
+            close();
+            throw new JRException("Interrupted while waiting for the next rows", ex);
+        } finally {
+            starving = false;
+        }
+
+        if (next == END) {
+            done = true;
+            chunk = null;
+            current = null;
+            Throwable t = error;
+            if (t instanceof JRException) {
+                throw (JRException) t;
+            } else if (t != null) {
+                throw new JRException("Error reading the next rows", t);
+            }
+            return false;
+        }
+        chunk = next;
+        row = 0;
+        current = chunk[0];
+        return true;
+    }
+
+    @Override
+    public Object getFieldValue(JRField field) throws JRException {
+        Integer i = fieldIndex.get(field.getName());
+        if (i == null) {
+            throw new JRException("The field " + field.getName() + " was not read ahead");
+        }
+        if (current == null) {
+            throw new JRException("There is no current row");
+        }
+        return current[i];
+    }
+
+    /**
+     * Stops the producer and waits for it, safe to call more than once.
+     */
+    void close() {
+
+        done = true;
+        if (closed) {
+            return;
+        }
+        closed = true;
+        queue.clear();     // so a producer waiting for room sees closed
+        if (!producer.isDone() && onStop != null) {
+            try {
+                onStop.run();
+            } catch (RuntimeException ex) {
+                logger.debug("Error canceling the query being read ahead", ex);
+            }
+        }
+        try {
+            producer.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            logger.debug("Error in the read ahead thread", ex.getCause());
+        }
+    }
+
+    /**
+     * The producer, reads the source until it ends, fails or is closed.
+     */
+    private void produce() {
+
+        try {
+            Object[][] rows = new Object[chunkRows][];
+            int n = 0;
+            while (!closed && source.next()) {
+                Object[] values = new Object[fields.length];
+                for (int i = 0; i < fields.length; i++) {
+                    values[i] = source.getFieldValue(fields[i]);
+                }
+                rows[n++] = values;
+                if (n == chunkRows || (starving && queue.isEmpty())) {
+                    if (!put(n == chunkRows ? rows : Arrays.copyOf(rows, n))) {
+                        return;
+                    }
+                    rows = new Object[chunkRows][];
+                    n = 0;
+                }
+            }
+            if (n > 0 && !put(Arrays.copyOf(rows, n))) {
+                return;
+            }
+        } catch (Throwable t) {
+            if (!closed) {
+                error = t;
+            }
+        }
+        put(END);
+    }
+
+    /**
+     * @return false if closed before there was room
+     */
+    private boolean put(Object[][] rows) {
+        try {
+            while (!closed) {
+                if (queue.offer(rows, OFFER_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2018 Joseph A Miller
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ticktockdata.jasper;
+
+import java.util.Map;
+import net.sf.jasperreports.engine.JRDataSource;
+import net.sf.jasperreports.engine.JRDataset;
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JRValueParameter;
+import net.sf.jasperreports.engine.JasperReportsContext;
+import net.sf.jasperreports.engine.query.JRJdbcQueryExecuter;
+import net.sf.jasperreports.engine.query.JRJdbcQueryExecuterFactory;
+import net.sf.jasperreports.engine.query.JRQueryExecuter;
+import net.sf.jasperreports.engine.query.JRQueryExecuterFactoryBundle;
+import net.sf.jasperreports.engine.query.QueryExecuterFactory;
+import static com.ticktockdata.jasper.ReportManager.logger;
+
+/**
+ * The SQL query executer factory of a fill whose {@link QueryProfile} has
+ * prefetch rows set.  It runs the query like JRJdbcQueryExecuterFactory, and
+ * reads the result set ahead with a {@link PrefetchingDataSource}.
+ * <p>
+ * Registered in the fill's JasperReportsContext with {@link #bundle(int)},
+ * which comes before the default factories.
+ *
+ * @since Oct 18, 2026
+ */
+final class PrefetchingQueryExecuterFactory extends JRJdbcQueryExecuterFactory {
+
+    private static final String[] LANGUAGES = {"sql", "SQL"};
+
+    /**
+     * JRJdbcQueryExecuter that wraps its data source
+     */
+    private static final class Executer extends JRJdbcQueryExecuter {
+
+        private final int prefetchRows;
+        private PrefetchingDataSource prefetching = null;
+
+        private Executer(JasperReportsContext context, JRDataset dataset,
+                Map<String, ? extends JRValueParameter> parameters, int prefetchRows) {
+            super(context, dataset, parameters);
+            this.prefetchRows = prefetchRows;
+        }
+
+        @Override
+        public JRDataSource createDatasource() throws JRException {
+            JRDataSource source = super.createDatasource();
+            if (source == null) {
+                return null;
+            }
+            prefetching = new PrefetchingDataSource(source, dataset.getFields(), prefetchRows, () -> {
+                try {
+                    cancelQuery();
+                } catch (JRException ex) {
+                    logger.debug("Failed to cancel the query being read ahead", ex);
+                }
+            });
+            return prefetching;
+        }
+
+        @Override
+        public synchronized void close() {
+            // the producer must stop before the result set is closed
+            if (prefetching != null) {
+                prefetching.close();
+                prefetching = null;
+            }
+            super.close();
+        }
+    }
+
+    private final int prefetchRows;
+
+    /**
+     * @param prefetchRows about how many rows are read ahead
+     */
+    PrefetchingQueryExecuterFactory(int prefetchRows) {
+        this.prefetchRows = prefetchRows;
+    }
+
+    @Override
+    public JRQueryExecuter createQueryExecuter(JasperReportsContext jasperReportsContext,
+            JRDataset dataset, Map<String, ? extends JRValueParameter> parameters) throws JRException {
+        return new Executer(jasperReportsContext, dataset, parameters, prefetchRows);
+    }
+
+    /**
+     * @param prefetchRows about how many rows are read ahead
+     * @return a bundle with this factory for the SQL language
+     */
+    static JRQueryExecuterFactoryBundle bundle(int prefetchRows) {
+        final QueryExecuterFactory factory = new PrefetchingQueryExecuterFactory(prefetchRows);
+        return new JRQueryExecuterFactoryBundle() {
+            @Override
+            public String[] getLanguages() {
+                return LANGUAGES.clone();
+            }
+
+            @Override
+            public QueryExecuterFactory getQueryExecuterFactory(String language) {
+                for (String l : LANGUAGES) {
+                    if (l.equals(language)) {
+                        return factory;
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+}
@@ -66,6 +66,8 @@ public class PreviewAction extends PrintExecutor {
             viewer = null;
         }
         frameCloser = null;
+        // the viewer no longer needs the virtualized pages
+        getReport().releaseVirtualizer();
     }
     
 
@@ -110,6 +112,7 @@ public class PreviewAction extends PrintExecutor {
     public void cancelExecute() {
         if (viewer != null) {
             viewer.exitForm();
+            dispose();
         } else {
             System.out.println("cancelExecute called and viewer is not null - did not dispose!");
         }
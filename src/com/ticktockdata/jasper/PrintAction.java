@@ -19,6 +19,8 @@ package com.ticktockdata.jasper;
 import static com.ticktockdata.jasper.PrintAction.Duplex.LONG_EDGE;
 import static com.ticktockdata.jasper.PrintAction.Duplex.SHORT_EDGE;
 import java.awt.Window;
+import java.util.Collections;
+import java.util.List;
 import javax.print.PrintService;
 import javax.print.attribute.HashPrintRequestAttributeSet;
 import javax.print.attribute.PrintRequestAttributeSet;
@@ -102,6 +104,17 @@ public class PrintAction extends PrintExecutor {
 
     @Override
     public boolean execute(JasperPrint jasperPrint) {
+        return execute(Collections.singletonList(jasperPrint));
+    }
+
+    /**
+     * Prints all the reports as one print job, the page size and orientation
+     * are taken from the first.
+     */
+    @Override
+    public boolean execute(List<JasperPrint> prints) {
+        
+        JasperPrint jasperPrint = prints.get(0);
 
         try {
             //return JasperPrintManager.printReport(print, showDialog);
@@ -232,7 +245,7 @@ public class PrintAction extends PrintExecutor {
             printExporter = new JRPrintServiceExporter();
             
             // add the printing data (doc) to the exporter
-             printExporter.setExporterInput(new SimpleExporterInput(jasperPrint));
+             printExporter.setExporterInput(SimpleExporterInput.getInstance(prints));
             // set configuration to printExporter
             printExporter.setConfiguration(config);
            
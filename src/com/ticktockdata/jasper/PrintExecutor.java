@@ -16,6 +16,7 @@
  */
 package com.ticktockdata.jasper;
 
+import java.util.List;
 import net.sf.jasperreports.engine.JasperPrint;
 import org.apache.log4j.Logger;
 
@@ -105,6 +106,25 @@ public abstract class PrintExecutor {
      */
     public abstract boolean execute(JasperPrint print);
 
+    /**
+     * Executes several filled reports as one document (one print job or one
+     * export file), in the order of the list.  This is used by
+     * {@link ReportBatch} to merge the reports of its rows.
+     * <p>
+     * The default supports only a single report, the actions that can merge
+     * reports override this.
+     *
+     * @param prints
+     * @return true if the execute action was successful
+     */
+    public boolean execute(List<JasperPrint> prints) {
+        if (prints.size() == 1) {
+            return execute(prints.get(0));
+        }
+        logger.error(getAction() + " can not execute " + prints.size() + " reports as one document");
+        return false;
+    }
+
     /**
      * Allows canceling of a job.
      */
@@ -35,6 +35,8 @@ public class PrintStatusEvent extends java.util.EventObject {
 
     private final StatusCode status;
     private final long when;
+    private final int queueDepth;
+    private final long waitTime;
 
     /**
      *
@@ -42,9 +44,22 @@ public class PrintStatusEvent extends java.util.EventObject {
      * @param status {@link getStatus()}
      */
     public PrintStatusEvent(JasperReportImpl source, StatusCode status) {
+        this(source, status, 0, 0);
+    }
+
+    /**
+     *
+     * @param source
+     * @param status {@link getStatus()}
+     * @param queueDepth {@link getQueueDepth()}
+     * @param waitTime {@link getWaitTime()}
+     */
+    public PrintStatusEvent(JasperReportImpl source, StatusCode status, int queueDepth, long waitTime) {
         super(source);
         this.status = status;
         this.when = System.currentTimeMillis();
+        this.queueDepth = queueDepth;
+        this.waitTime = waitTime;
     }
 
     @Override
@@ -80,4 +95,23 @@ public class PrintStatusEvent extends java.util.EventObject {
         return when;
     }
 
+    /**
+     * The number of reports waiting for a free worker when the event occurred.
+     *
+     * @return
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * The milliseconds the report waited in the queue before it was started,
+     * 0 until the STARTED event.
+     *
+     * @return
+     */
+    public long getWaitTime() {
+        return waitTime;
+    }
+
 }
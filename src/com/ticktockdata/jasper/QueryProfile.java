@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2018 Joseph A Miller
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ticktockdata.jasper;
+
+import java.io.Serializable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.security.InvalidParameterException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import net.sf.jasperreports.engine.JRConstants;
+import net.sf.jasperreports.engine.SimpleJasperReportsContext;
+import net.sf.jasperreports.engine.query.JRJdbcQueryExecuterFactory;
+import net.sf.jasperreports.engine.query.JRQueryExecuterFactoryBundle;
+
+/**
+ * How the report queries are run on a {@link ConnectionInfo}, set with
+ * {@link ConnectionInfo#setQueryProfile(QueryProfile)}.  The default profile
+ * changes nothing.
+ * <p>
+ * Most JDBC drivers (PostgreSQL for one) read the whole result set into memory
+ * before the first row is returned, unless the query uses a forward-only,
+ * read-only cursor with a fetch size, and (for PostgreSQL) auto-commit is
+ * off.  {@link #streaming(int)} is a profile that does all of that, so a
+ * report with millions of rows is filled with constant memory.
+ * <p>
+ * The fetch size and cursor type are set as JasperReports properties of the
+ * fill, so a report (or dataset) can still set its own
+ * net.sf.jasperreports.jdbc.* properties.  Auto-commit is set back on, and
+ * the transaction rolled back, when the connection is returned to the pool.
+ * <p>
+ * With prefetch rows set, the rows of the SQL queries are read on a separate
+ * thread while the report is filled, see {@link PrefetchingDataSource}.  This
+ * helps most when the database is on another computer.
+ *
+ * @since Oct 18, 2026
+ */
+public class QueryProfile implements Serializable {
+
+    private static final long serialVersionUID = JRConstants.SERIAL_VERSION_UID;
+
+    private int fetchSize = 0;
+    private boolean forwardOnly = false;
+    private boolean autoCommitOff = false;
+    private int statementTimeout = 0;
+    private int prefetchRows = 0;
+
+    /**
+     * Creates the default profile, which changes nothing.
+     */
+    public QueryProfile() {
+        super();
+    }
+
+    /**
+     * @param fetchSize rows fetched at a time
+     * @return a profile with forward-only read-only cursors, the fetch size,
+     * and auto-commit off during the fill
+     */
+    public static QueryProfile streaming(int fetchSize) {
+        QueryProfile profile = new QueryProfile();
+        profile.setFetchSize(fetchSize);
+        profile.setForwardOnly(true);
+        profile.setAutoCommitOff(true);
+        return profile;
+    }
+
+    /**
+     * @return rows fetched at a time, 0 for the driver's default
+     */
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * @param fetchSize rows fetched at a time, 0 for the driver's default
+     */
+    public void setFetchSize(int fetchSize) {
+        if (fetchSize < 0) {
+            throw new InvalidParameterException("Fetch Size may not be less than 0!");
+        }
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * @return true if the queries use forward-only, read-only cursors
+     */
+    public boolean isForwardOnly() {
+        return forwardOnly;
+    }
+
+    /**
+     * @param forwardOnly true to run the queries with forward-only, read-only
+     * cursors
+     */
+    public void setForwardOnly(boolean forwardOnly) {
+        this.forwardOnly = forwardOnly;
+    }
+
+    /**
+     * @return true if auto-commit is turned off while a report is filled
+     */
+    public boolean isAutoCommitOff() {
+        return autoCommitOff;
+    }
+
+    /**
+     * @param autoCommitOff true to turn auto-commit off while a report is
+     * filled
+     */
+    public void setAutoCommitOff(boolean autoCommitOff) {
+        this.autoCommitOff = autoCommitOff;
+    }
+
+    /**
+     * @return seconds a query may run, 0 for no limit
+     */
+    public int getStatementTimeout() {
+        return statementTimeout;
+    }
+
+    /**
+     * @param statementTimeout seconds a query may run before it is canceled,
+     * 0 for no limit
+     */
+    public void setStatementTimeout(int statementTimeout) {
+        if (statementTimeout < 0) {
+            throw new InvalidParameterException("Statement Timeout may not be less than 0!");
+        }
+        this.statementTimeout = statementTimeout;
+    }
+
+    /**
+     * @return about how many rows are read ahead, 0 if they are not
+     */
+    public int getPrefetchRows() {
+        return prefetchRows;
+    }
+
+    /**
+     * @param prefetchRows about how many rows of a SQL query are read ahead
+     * on another thread while the report is filled, 0 to read them on the
+     * fill thread (the default)
+     */
+    public void setPrefetchRows(int prefetchRows) {
+        if (prefetchRows < 0) {
+            throw new InvalidParameterException("Prefetch Rows may not be less than 0!");
+        }
+        this.prefetchRows = prefetchRows;
+    }
+
+    /**
+     * Sets the fetch size and cursor type properties of a fill's context,
+     * and the query executer that reads ahead if there are prefetch rows.
+     *
+     * @param context
+     */
+    void applyTo(SimpleJasperReportsContext context) {
+        if (fetchSize > 0) {
+            context.setProperty(JRJdbcQueryExecuterFactory.PROPERTY_JDBC_FETCH_SIZE, String.valueOf(fetchSize));
+        }
+        if (forwardOnly) {
+            // the values JRJdbcQueryExecuter understands
+            context.setProperty(JRJdbcQueryExecuterFactory.PROPERTY_JDBC_RESULT_SET_TYPE, "forwardOnly");
+            context.setProperty(JRJdbcQueryExecuterFactory.PROPERTY_JDBC_CONCURRENCY, "readOnly");
+        }
+        if (prefetchRows > 0) {
+            context.setExtensions(JRQueryExecuterFactoryBundle.class,
+                    Collections.singletonList(PrefetchingQueryExecuterFactory.bundle(prefetchRows)));
+        }
+    }
+
+    /**
+     * Prepares a connection for a fill: turns auto-commit off, and if there
+     * is a statement timeout, returns a connection that sets it on every
+     * statement it creates.
+     *
+     * @param conn a pooled connection
+     * @return conn, or a wrapper around it, closing the wrapper closes conn
+     * @throws SQLException
+     */
+    Connection applyTo(Connection conn) throws SQLException {
+
+        if (autoCommitOff && conn.getAutoCommit()) {
+            conn.setAutoCommit(false);
+        }
+        if (statementTimeout <= 0) {
+            return conn;
+        }
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    Object result;
+                    try {
+                        result = method.invoke(conn, args);
+                    } catch (InvocationTargetException ex) {
+                        throw ex.getCause();
+                    }
+                    if (result instanceof Statement) {
+                        // createStatement, prepareStatement and prepareCall
+                        ((Statement) result).setQueryTimeout(statementTimeout);
+                    }
+                    return result;
+                });
+    }
+
+    @Override
+    public String toString() {
+        return "QueryProfile fetchSize=" + fetchSize + ", forwardOnly=" + forwardOnly
+                + ", autoCommitOff=" + autoCommitOff + ", statementTimeout=" + statementTimeout
+                + ", prefetchRows=" + prefetchRows;
+    }
+
+}
@@ -0,0 +1,472 @@
+/*
+ * Copyright (C) 2018 Joseph A Miller
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ticktockdata.jasper;
+
+import com.ticktockdata.jasper.PrintExecutor.Action;
+import com.ticktockdata.jasper.PrintStatusEvent.StatusCode;
+import static com.ticktockdata.jasper.ReportManager.logger;
+import java.io.File;
+import java.security.InvalidParameterException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import net.sf.jasperreports.engine.JRParameter;
+import net.sf.jasperreports.engine.JasperPrint;
+import net.sf.jasperreports.engine.JasperReport;
+
+/**
+ * Executes one {@link ReportDefinition} for many rows of parameters, such as
+ * the same statement for each customer.  The report is compiled (or taken
+ * from the cache) once, and each row is a {@link ReportJob} of the same
+ * definition with the row's parameters added, so the rows are filled on the
+ * ReportManager's worker threads at the same time.  Only a few more rows than
+ * there are workers are queued at once, so a large batch does not fill the
+ * report queue.
+ * <p>
+ * The output is either:
+ * <ul>
+ * <li>one document for each row: with an EXPORT_TO_XXX action the export
+ * file path must contain <b>{row}</b> (the row number, from 1) or
+ * <b>{&lt;parameter_name&gt;}</b>, which are replaced by the row's values.
+ * <li>merged: the filled rows are printed as one print job, or exported to
+ * one file, in the order of the rows.  All filled rows are kept in memory
+ * until the last one is filled, so the rows are not virtualized.  If any row
+ * fails nothing is printed / exported.
+ * </ul>
+ * The rows are never prompted for parameters.
+ *
+ * @since Oct 18, 2026
+ */
+public final class ReportBatch {
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{([^{}]+)\\}");
+    /**
+     * characters of a parameter value that may not be in a file name, or
+     * would add directories
+     */
+    private static final Pattern FILE_UNSAFE = Pattern.compile("[\\\\/:*?\"<>|\\s]");
+
+    private final ReportDefinition definition;
+    private final boolean merge;
+    private final Map<String, Class<?>> parameterClasses = new HashMap<>();
+    /**
+     * the parameters in the export file of each row, each row must have a
+     * value for them
+     */
+    private final List<String> fileParameters = new ArrayList<>();
+    private final List<Map<String, Object>> rows = new ArrayList<>();
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private final AtomicInteger pumping = new AtomicInteger();
+    private final CompletableFuture<StatusCode> completion = new CompletableFuture<>();
+    private final Set<ReportJob> running = new HashSet<>();
+    /**
+     * the export files of the rows started so far, no two rows may export
+     * to the same file
+     */
+    private final Set<String> exportFiles = new HashSet<>();
+    private JasperPrint[] prints = null;
+    private int next = 0;
+    private int completed = 0;
+    private int failed = 0;
+    private boolean finished = false;
+    private volatile boolean canceled = false;
+
+    /**
+     * Compiles the report (if it is not cached), so a report that does not
+     * compile fails before any row is added.
+     *
+     * @param definition the report and its settings, its parameters are used
+     * for every row (unless the row has the same parameter)
+     * @param merge true to print / export all rows as one document
+     * @throws InvalidParameterException if the report does not exist or can
+     * not be compiled, or the action can not be used for this batch
+     */
+    public ReportBatch(ReportDefinition definition, boolean merge) {
+
+        this.definition = definition;
+        this.merge = merge;
+
+        Action action = definition.getPrintAction();
+        String path = definition.getExportFilePath();
+        if (merge && action == Action.PREVIEW) {
+            throw new InvalidParameterException("A merged batch can not be previewed, use the PRINT or an EXPORT_TO_XXX action");
+        }
+        boolean perRowExport = !merge && action.toString().contains("EXPORT");
+        if (perRowExport && (path == null || !PLACEHOLDER.matcher(path).find())) {
+            throw new InvalidParameterException("The export file of each row must contain {row} or {<parameter_name>}: " + path);
+        }
+
+        JasperReport jasperReport = ReportManager.getJasperReport(definition.getReportPath());
+        if (jasperReport == null) {
+            throw new InvalidParameterException("The report could not be compiled: " + definition.getReportPath());
+        }
+        for (JRParameter p : jasperReport.getParameters()) {
+            if (!p.isSystemDefined()) {
+                parameterClasses.put(p.getName(), p.getValueClass());
+            }
+        }
+
+        // a placeholder that is never replaced would export every row to
+        // the same file
+        if (perRowExport) {
+            Matcher m = PLACEHOLDER.matcher(path);
+            while (m.find()) {
+                String name = m.group(1);
+                if (!"row".equals(name) && !parameterClasses.containsKey(name)) {
+                    throw new InvalidParameterException("The report has no parameter named " + name
+                            + ", the export file may contain only {row} or {<parameter_name>}: " + path);
+                }
+                if (!"row".equals(name)) {
+                    fileParameters.add(name);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param name
+     * @return the class of the report's parameter, or null if the report has
+     * no such parameter
+     */
+    public Class<?> getParameterClass(String name) {
+        return parameterClasses.get(name);
+    }
+
+    /**
+     * Adds a row, must be called before {@link #execute()}.
+     *
+     * @param params the parameters of the row
+     * @throws InvalidParameterException if the row has no value for a
+     * parameter of the export file
+     */
+    public synchronized void addRow(Map<String, Object> params) {
+        if (started.get()) {
+            throw new IllegalStateException("Can not add rows to a batch that is already executed");
+        }
+        for (String name : fileParameters) {
+            if (params.get(name) == null && definition.getParams().get(name) == null) {
+                throw new InvalidParameterException("Row " + (rows.size() + 1) + " has no value for {" + name
+                        + "} of the export file");
+            }
+        }
+        rows.add(new HashMap<>(params));
+    }
+
+    /**
+     * @return number of rows
+     */
+    public synchronized int getRowCount() {
+        return rows.size();
+    }
+
+    /**
+     * @return number of rows that completed
+     */
+    public synchronized int getCompletedCount() {
+        return completed;
+    }
+
+    /**
+     * @return number of rows that failed or were canceled
+     */
+    public synchronized int getFailedCount() {
+        return failed;
+    }
+
+    public String getReportPath() {
+        return definition.getReportPath();
+    }
+
+    /**
+     * Starts filling the rows, it does not wait for them.  A batch can be
+     * executed only once.
+     *
+     * @return completes with COMPLETE when all rows (and the merged document)
+     * completed, with CANCELED if the batch was canceled, or with ERROR if
+     * any row failed.  It is never completed exceptionally.
+     */
+    public CompletableFuture<StatusCode> execute() {
+
+        if (!started.compareAndSet(false, true)) {
+            throw new IllegalStateException("A ReportBatch can only be executed once");
+        }
+        synchronized (this) {
+            if (merge) {
+                prints = new JasperPrint[rows.size()];
+            }
+        }
+        logger.debug("Executing a batch of " + rows.size() + " rows of " + definition.getReportPath() + (merge ? ", merged" : ""));
+        pump();
+        return completion;
+    }
+
+    /**
+     * Cancels the rows that are running, and does not start any more.
+     */
+    public void cancel() {
+        canceled = true;
+        List<ReportJob> jobs;
+        synchronized (this) {
+            jobs = new ArrayList<>(running);
+        }
+        for (ReportJob job : jobs) {
+            job.cancel();
+        }
+        pump();
+    }
+
+    public boolean isCanceled() {
+        return canceled;
+    }
+
+    /**
+     * Starts rows until enough are running, or finishes the batch.  A row
+     * that finishes at once (e.g. rejected by a full queue) calls this again
+     * while it is running, so only one thread starts rows at a time, the
+     * others only make it loop again.
+     */
+    private void pump() {
+        if (pumping.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            while (startRow()) {
+                // started a row
+            }
+            missed = pumping.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * @return true if a row was started
+     */
+    private boolean startRow() {
+
+        int row;
+        boolean finish = false;
+        synchronized (this) {
+            if (canceled && next < rows.size()) {
+                // the rows not started yet count as failed
+                failed += rows.size() - next;
+                next = rows.size();
+            }
+            if (next >= rows.size() && running.isEmpty() && !finished) {
+                finished = true;
+                finish = true;
+            }
+            if (next >= rows.size() || running.size() >= getMaxRunning()) {
+                row = -1;
+            } else {
+                row = next++;
+            }
+        }
+        if (finish) {
+            finish();
+        }
+        if (row < 0) {
+            return false;
+        }
+
+        Map<String, Object> params = rows.get(row);
+        ReportJob job = definition.newJob();
+        job.setPromptForParameters(false);
+        job.setParams(params);
+        if (merge) {
+            // the pages are needed until all rows are filled
+            job.setVirtualization(JasperReportImpl.Virtualization.NONE);
+            job.setPrintExecutor(new Collector(job, row));
+        } else if (job.getExportFilePath() != null) {
+            String file = getExportFilePath(job.getExportFilePath(), row, job.getParams());
+            boolean unique;
+            synchronized (this) {
+                unique = exportFiles.add(new File(file).getAbsolutePath());
+                if (!unique) {
+                    failed++;
+                }
+            }
+            if (!unique) {
+                // it would overwrite (or prompt for) the file of an earlier row
+                logger.error("Row " + (row + 1) + " of the batch of " + definition.getReportPath()
+                        + " exports to the same file as an earlier row, it is not run: " + file);
+                return true;
+            }
+            job.setExportFilePath(file);
+        }
+        synchronized (this) {
+            running.add(job);
+        }
+        job.execute().whenComplete((status, ex) -> rowFinished(job, status));
+        return true;
+    }
+
+    private void rowFinished(ReportJob job, StatusCode status) {
+        synchronized (this) {
+            running.remove(job);
+            if (status == StatusCode.COMPLETE) {
+                completed++;
+            } else {
+                failed++;
+            }
+        }
+        pump();
+    }
+
+    /**
+     * Rows that run at the same time, a few more than the workers so a
+     * worker does not wait for the next row
+     */
+    private static int getMaxRunning() {
+        return Math.max(1, ReportManager.getWorkerPoolSize()) * 2;
+    }
+
+    /**
+     * Called once, when no rows are running and none are left.
+     */
+    private void finish() {
+
+        StatusCode status;
+        JasperPrint[] merged;
+        synchronized (this) {
+            merged = prints;
+            prints = null;
+        }
+        if (canceled) {
+            status = StatusCode.CANCELED;
+        } else if (failed > 0) {
+            status = StatusCode.ERROR;
+        } else {
+            status = StatusCode.COMPLETE;
+        }
+
+        if (merged != null && status == StatusCode.COMPLETE && merged.length > 0) {
+            // the definition's executor, with its printer / export file
+            ReportJob job = definition.newJob();
+            try {
+                if (!job.getPrintExecutor().execute(Arrays.asList(merged))) {
+                    status = StatusCode.ERROR;
+                }
+            } catch (RuntimeException ex) {
+                logger.error("Error executing the merged batch of " + definition.getReportPath(), ex);
+                status = StatusCode.ERROR;
+            }
+        }
+
+        logger.info("Batch of " + definition.getReportPath() + " finished " + status + ": "
+                + getCompletedCount() + " of " + getRowCount() + " rows completed, " + getFailedCount() + " failed");
+        completion.complete(status);
+    }
+
+    /**
+     * @param path the export file path of the definition
+     * @param row
+     * @param params
+     * @return the path with {row} and {&lt;parameter_name&gt;} replaced by the
+     * row number (from 1) and the row's values, see toFileName
+     */
+    static String getExportFilePath(String path, int row, Map<String, Object> params) {
+
+        Matcher m = PLACEHOLDER.matcher(path);
+        StringBuffer sb = new StringBuffer();
+        while (m.find()) {
+            String name = m.group(1);
+            String value;
+            if ("row".equals(name)) {
+                value = Integer.toString(row + 1);
+            } else if (params.containsKey(name)) {
+                value = toFileName(params.get(name));
+            } else {
+                value = m.group();
+            }
+            m.appendReplacement(sb, Matcher.quoteReplacement(value));
+        }
+        m.appendTail(sb);
+        return sb.toString();
+    }
+
+    /**
+     * @param value a parameter value of a row
+     * @return the value as part of a file name: dates as yyyy-MM-dd, times
+     * as HHmmss and timestamps as yyyyMMdd-HHmmss, and the characters that
+     * may not be in a file name (or add directories) replaced by _
+     */
+    static String toFileName(Object value) {
+
+        String text;
+        if (value instanceof java.sql.Date) {
+            text = new SimpleDateFormat("yyyy-MM-dd").format((Date) value);
+        } else if (value instanceof java.sql.Time) {
+            text = new SimpleDateFormat("HHmmss").format((Date) value);
+        } else if (value instanceof Date) {
+            text = new SimpleDateFormat("yyyyMMdd-HHmmss").format((Date) value);
+        } else {
+            text = String.valueOf(value);
+        }
+        return FILE_UNSAFE.matcher(text).replaceAll("_");
+    }
+
+    /**
+     * Keeps the filled report of a merged row, for the merged document.
+     */
+    private final class Collector extends PrintExecutor {
+
+        private final int row;
+
+        private Collector(ReportJob job, int row) {
+            super(job);
+            this.row = row;
+        }
+
+        @Override
+        public Action getAction() {
+            return definition.getPrintAction();
+        }
+
+        @Override
+        public boolean isValid() {
+            return true;
+        }
+
+        @Override
+        public boolean execute(JasperPrint print) {
+            synchronized (ReportBatch.this) {
+                if (prints == null) {
+                    return false;
+                }
+                prints[row] = print;
+            }
+            return true;
+        }
+
+        @Override
+        public void cancelExecute() {
+            // nothing to cancel, the print is only kept
+        }
+    }
+
+}
@@ -0,0 +1,399 @@
+/*
+ * Copyright (C) 2018 Joseph A Miller
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ticktockdata.jasper;
+
+import com.ticktockdata.jasper.prompts.PromptComponentFactory;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JasperCompileManager;
+import net.sf.jasperreports.engine.JasperReport;
+import net.sf.jasperreports.engine.util.JRLoader;
+import static com.ticktockdata.jasper.ReportManager.logger;
+
+/**
+ * Cache of compiled reports, keyed by the report path.
+ * <p>
+ * Only one compile runs per report path, any other thread asking for the
+ * same report while it is compiling waits for that compile's result.  The
+ * cache is bounded by a count of entries and optionally by the estimated
+ * (serialized) size of the compiled reports, the least recently used reports
+ * are evicted first.
+ * <p>
+ * The file's lastModified is stored with each entry, if the file is modified
+ * the entry is dropped and the report recompiled.
+ * <p>
+ * If a {@link CompiledReportStore} is set then a report that is not in memory
+ * is first loaded from it, and a newly compiled report is saved to it, so the
+ * reports do not need to be compiled again after a restart.
+ * <p>
+ * This class is used only by the ReportManager.
+ *
+ * @since Oct 18, 2026
+ */
+final class ReportCache {
+
+    /**
+     * A compiled (or compiling) report
+     */
+    private static final class Entry {
+
+        final CompletableFuture<JasperReport> future = new CompletableFuture<>();
+        final long modified;
+        long size = 0;
+
+        Entry(long modified) {
+            this.modified = modified;
+        }
+
+        boolean isReady() {
+            return future.isDone() && !future.isCompletedExceptionally();
+        }
+    }
+
+    private final Object lock = new Object();
+    /**
+     * access-ordered, so iteration starts at the least recently used
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private int maxEntries;
+    private long maxBytes;
+    private long totalBytes = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long waits = 0;
+    private long compiles = 0;
+    private long failures = 0;
+    private long evictions = 0;
+    private long compileTime = 0;
+    private long loaded = 0;
+    /**
+     * compiled reports saved on disk, null if not used
+     */
+    private volatile CompiledReportStore store = null;
+
+    /**
+     * @param maxEntries max number of compiled reports held
+     * @param maxBytes max total estimated size, zero or less for no limit
+     */
+    ReportCache(int maxEntries, long maxBytes) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the compiled report from cache, or compiles it (a .jasper file
+     * is loaded instead).  If another
+     * thread is already compiling this report then this waits for it.
+     *
+     * @param reportPath the key
+     * @param file the .jrxml file
+     * @return the compiled report, or null if it failed to compile
+     */
+    JasperReport get(String reportPath, File file) {
+
+        long modified = file.lastModified();
+        Entry entry;
+        Entry stale = null;
+        boolean owner = false;
+
+        synchronized (lock) {
+            entry = entries.get(reportPath);
+            if (entry != null && entry.modified != modified) {
+                logger.info("Report file has been modified, reloading!");
+                stale = entry;
+                remove(reportPath);
+                entry = null;
+            }
+            if (entry == null) {
+                entry = new Entry(modified);
+                entries.put(reportPath, entry);
+                owner = true;
+                misses++;
+            } else if (entry.future.isDone()) {
+                hits++;
+            } else {
+                waits++;
+            }
+        }
+
+        if (stale != null && stale.isReady()) {
+            // remove the parameters for this report
+            PromptComponentFactory.clearPromptComponentCache(stale.future.join().getParameters());
+        }
+
+        if (owner) {
+            return compile(reportPath, file, entry);
+        }
+
+        try {
+            logger.debug("Returning cached report: " + reportPath);
+            return entry.future.get();
+        } catch (ExecutionException ex) {
+            // the owner logged the failure
+            return null;
+        } catch (InterruptedException ex) {
+            logger.warn("Interrupted while waiting for report to compile: " + reportPath);
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private JasperReport compile(String reportPath, File file, Entry entry) {
+
+        long start = System.currentTimeMillis();
+        CompiledReportStore diskStore = store;
+        JasperReport report = null;
+        boolean compiled = false;
+        try {
+            if (file.getName().toLowerCase().endsWith(".jasper")) {
+                // an already compiled subreport
+                report = (JasperReport) JRLoader.loadObject(file);
+            } else if (diskStore != null) {
+                report = diskStore.load(file);
+            }
+            if (report == null) {
+                report = JasperCompileManager.compileReport(file.getAbsolutePath());
+                compiled = true;
+            }
+            long size = estimateSize(report);
+            synchronized (lock) {
+                if (compiled) {
+                    compiles++;
+                    compileTime += System.currentTimeMillis() - start;
+                } else {
+                    loaded++;
+                }
+                // may have been removed (CLEAR) while compiling
+                if (entries.get(reportPath) == entry) {
+                    entry.size = size;
+                    totalBytes += size;
+                    evict(reportPath);
+                }
+            }
+            logger.debug((compiled ? "Compiled" : "Loaded") + " report and added to cache!  " + report.getName());
+        } catch (JRException | RuntimeException ex) {
+            logger.error("Error while compiling report: " + reportPath, ex);
+            report = null;
+        } finally {
+            if (report != null) {
+                entry.future.complete(report);
+            } else {
+                // failed, so the waiting threads are not left hanging
+                synchronized (lock) {
+                    failures++;
+                    if (entries.get(reportPath) == entry) {
+                        remove(reportPath);
+                    }
+                }
+                entry.future.completeExceptionally(new JRException("Failed to compile report: " + reportPath));
+            }
+        }
+
+        // save after the waiting threads have their report
+        if (compiled && diskStore != null) {
+            diskStore.save(file, report);
+        }
+        return report;
+    }
+
+    /**
+     * Removes least recently used entries until within bounds.  The entry for
+     * keep is never removed.  Must be called while holding the lock.
+     *
+     * @param keep
+     */
+    private void evict(String keep) {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext() && (entries.size() > maxEntries || (maxBytes > 0 && totalBytes > maxBytes))) {
+            Map.Entry<String, Entry> e = it.next();
+            if (e.getKey().equals(keep) || !e.getValue().future.isDone()) {
+                continue;
+            }
+            it.remove();
+            totalBytes -= e.getValue().size;
+            evictions++;
+            logger.debug("Evicted from report cache: " + e.getKey());
+        }
+    }
+
+    /**
+     * Must be called while holding the lock
+     */
+    private Entry remove(String reportPath) {
+        Entry e = entries.remove(reportPath);
+        if (e != null) {
+            totalBytes -= e.size;
+        }
+        return e;
+    }
+
+    /**
+     * Returns the report only if it is cached and compiled, without checking
+     * the file.
+     *
+     * @param reportPath
+     * @return the cached report, or null
+     */
+    JasperReport getIfReady(String reportPath) {
+        synchronized (lock) {
+            Entry entry = entries.get(reportPath);
+            if (entry == null || !entry.isReady()) {
+                return null;
+            }
+            hits++;
+            return entry.future.join();
+        }
+    }
+
+    /**
+     * Removes the report, and its prompt components.
+     *
+     * @param reportPath
+     * @return true if the report was cached
+     */
+    boolean invalidate(String reportPath) {
+        Entry entry;
+        synchronized (lock) {
+            entry = remove(reportPath);
+        }
+        if (entry != null && entry.isReady()) {
+            PromptComponentFactory.clearPromptComponentCache(entry.future.join().getParameters());
+        }
+        return entry != null;
+    }
+
+    /**
+     * @return count of reports removed
+     */
+    int clear() {
+        synchronized (lock) {
+            int count = entries.size();
+            entries.clear();
+            totalBytes = 0;
+            return count;
+        }
+    }
+
+    /**
+     * @param store where compiled reports are saved, null to not save them
+     */
+    void setStore(CompiledReportStore store) {
+        this.store = store;
+    }
+
+    CompiledReportStore getStore() {
+        return store;
+    }
+
+    int size() {
+        synchronized (lock) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @param maxEntries max number of compiled reports held, at least 1
+     * @param maxBytes max total estimated size, zero or less for no limit
+     */
+    void setLimits(int maxEntries, long maxBytes) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Report cache size must be at least 1, was " + maxEntries);
+        }
+        synchronized (lock) {
+            this.maxEntries = maxEntries;
+            this.maxBytes = maxBytes;
+            evict(null);
+        }
+    }
+
+    int getMaxEntries() {
+        synchronized (lock) {
+            return maxEntries;
+        }
+    }
+
+    long getMaxBytes() {
+        synchronized (lock) {
+            return maxBytes;
+        }
+    }
+
+    /**
+     * @return user-readable summary of the cache, for the STATUS command
+     */
+    String getStatusMessage() {
+        synchronized (lock) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("Report cache: ").append(entries.size()).append(" of ").append(maxEntries)
+                    .append(" reports, ").append(totalBytes / 1024).append(" KB");
+            if (maxBytes > 0) {
+                sb.append(" of ").append(maxBytes / 1024).append(" KB");
+            }
+            sb.append(", ").append(hits).append(" hits, ").append(misses).append(" misses, ")
+                    .append(waits).append(" waited on compile, ").append(evictions).append(" evicted");
+            sb.append("\nReport compiles: ").append(compiles).append(" compiled, ")
+                    .append(failures).append(" failed");
+            if (compiles > 0) {
+                sb.append(", average ").append(compileTime / compiles).append(" ms");
+            }
+            CompiledReportStore diskStore = store;
+            if (diskStore != null) {
+                sb.append(", ").append(loaded).append(" loaded from ")
+                        .append(diskStore.getDirectory().getAbsolutePath());
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Estimates the memory used by a compiled report by its serialized size.
+     *
+     * @param report
+     * @return
+     */
+    private static long estimateSize(JasperReport report) {
+        final long[] count = {0};
+        OutputStream counter = new OutputStream() {
+            @Override
+            public void write(int b) {
+                count[0]++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                count[0] += len;
+            }
+        };
+        try (ObjectOutputStream out = new ObjectOutputStream(counter)) {
+            out.writeObject(report);
+        } catch (IOException ex) {
+            logger.debug("Could not estimate size of report " + report.getName(), ex);
+        }
+        return count[0];
+    }
+
+}
@@ -22,6 +22,7 @@ import java.io.File;
 import java.lang.reflect.Method;
 import java.security.InvalidParameterException;
 import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.*;
 import javax.swing.JOptionPane;
 import javax.swing.SwingUtilities;
@@ -64,14 +65,14 @@ public class ReportConnectionManager {
     }
     
     /**
-     * Gets a Connection from the ConnectionInfo specified by identifier (name).
-     * <p><b>Warning:</b>  You should NOT attempt to use this connection in 
-     * your application.  This connection is used by JasperPrint and will close
-     * itself after a certain time length since the last call to this method.  
-     * It opens a new Connection when called again after auto-closing, but in
-     * application usage it may leave you hanging with a null Connection.
+     * Gets a Connection from the pool of the ConnectionInfo specified by
+     * identifier (name).
+     * <p><b>Warning:</b>  The connection <b>must be closed</b> when you are done
+     * with it, that returns it to the pool.  A connection that is not closed
+     * is never used again, and when all of them are in use this waits for one
+     * to be returned.
      * @param id the Identifier (name) for the desired connection
-     * @return a java.sql.Connection
+     * @return a java.sql.Connection, or null if none could be made
      */
     public static Connection getReportConnection(String id) {
         
@@ -84,10 +85,49 @@ public class ReportConnectionManager {
     
     
     
+    /**
+     * Gets a connection from the pool without waiting for one to be returned,
+     * and without showing an error dialog.  The caller must close() it.
+     * @param id the Identifier (name) for the desired connection
+     * @return null if all of the connections are in use
+     * @throws SQLException if no connection could be opened
+     */
+    static Connection tryGetReportConnection(String id) throws SQLException {
+        ConnectionInfo info = allConnections.get(id);
+        if (info == null) {
+            throw new InvalidParameterException("No Connection named " + id + " was found!");
+        }
+        return info.tryGetConnection();
+    }
+    
+    
+    /**
+     * @param id the Identifier (name) of the connection
+     * @return the QueryProfile of the connection, the default profile if
+     * there is no such connection
+     */
+    public static QueryProfile getQueryProfile(String id) {
+        ConnectionInfo info = allConnections.get(id);
+        return (info == null ? new QueryProfile() : info.getQueryProfile());
+    }
+    
+    
     public static Map<String, ConnectionInfo> getAllConnections() {
         return allConnections;
     }
     
+    /**
+     * @return user-readable statistics of the connection pool of each
+     * registered connection, used by the STATUS command.
+     */
+    public static String getPoolStatus() {
+        StringBuilder sb = new StringBuilder();
+        for (ConnectionInfo info : allConnections.values()) {
+            sb.append(info.getPoolStatus()).append("\n");
+        }
+        return sb.toString().trim();
+    }
+    
     private static boolean regSuccess = false;
     
     /**
@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2018 Joseph A Miller
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ticktockdata.jasper;
+
+import com.ticktockdata.jasper.PrintExecutor.Action;
+import java.awt.Component;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.swing.AbstractButton;
+
+/**
+ * An immutable snapshot of everything that a {@link JasperReportImpl} is set
+ * up with: the report file, connection, print action and its settings, the
+ * parameters, and the listeners and prompt fillers.  Get one from
+ * {@link JasperReportImpl#getDefinition()}.
+ * <p>
+ * Each execution of a definition is a new {@link ReportJob}, which has its
+ * own copy of the parameters and its own status, so the same definition (and
+ * the same JasperReportImpl) can be executed any number of times at once.
+ *
+ * @since Oct 18, 2026
+ */
+public final class ReportDefinition {
+
+    private final String reportPath;
+    private final String reportName;
+    private final String connectionID;
+    private final Action printAction;
+    private final String printer;
+    private final int copies;
+    private final boolean collate;
+    private final PrintAction.Duplex duplex;
+    private final boolean showDialog;
+    private final String exportFilePath;
+    private final boolean overwriteExportFile;
+    private final OutputStream exportOutputStream;
+    private final JasperReportImpl.Virtualization virtualization;
+    private final int virtualizerMaxPages;
+    private final int resultCacheTTL;
+    private final int dataSnapshotTTL;
+    private final Boolean pooledSubreports;
+    private final boolean promptForParameters;
+    private final int progressDelay;
+    private final int priority;
+    private final Map<String, Object> params;
+    private final Component parent;
+    private final AbstractButton printButton;
+    private final List<PrintPromptFiller> promptFillers;
+    private final List<PrintStatusListener> statusListeners;
+
+    /**
+     * Takes a snapshot of the report's current settings.
+     *
+     * @param report
+     * @param reportName the name, if already known (null otherwise)
+     * @param promptFillers
+     * @param statusListeners
+     */
+    ReportDefinition(JasperReportImpl report, String reportName,
+            List<PrintPromptFiller> promptFillers, List<PrintStatusListener> statusListeners) {
+        this.reportPath = report.getReportPath();
+        this.reportName = reportName;
+        this.connectionID = report.getConnectionID();
+        this.printAction = report.getPrintAction();
+        this.printer = report.getPrinter();
+        this.copies = report.getCopies();
+        this.collate = report.isCollate();
+        this.duplex = report.getDuplex();
+        this.showDialog = report.isShowDialog();
+        this.exportFilePath = report.getExportFilePath();
+        this.overwriteExportFile = report.isOverwriteExportFile();
+        this.exportOutputStream = report.getExportOutputStream();
+        this.virtualization = report.getVirtualization();
+        this.virtualizerMaxPages = report.getVirtualizerMaxPages();
+        this.resultCacheTTL = report.getResultCacheTTL();
+        this.dataSnapshotTTL = report.getDataSnapshotTTL();
+        this.pooledSubreports = report.getPooledSubreports();
+        this.promptForParameters = report.isPromptForParameters();
+        this.progressDelay = report.getProgressDelay();
+        this.priority = report.getPriority();
+        this.params = Collections.unmodifiableMap(new HashMap<>(report.getParams()));
+        this.parent = report.getParent();
+        this.printButton = report.getPrintButton();
+        this.promptFillers = Collections.unmodifiableList(new ArrayList<>(promptFillers));
+        this.statusListeners = Collections.unmodifiableList(new ArrayList<>(statusListeners));
+    }
+
+    /**
+     * Creates a new job for this definition, call execute() on it to run it.
+     *
+     * @return
+     */
+    public ReportJob newJob() {
+        return new ReportJob(this);
+    }
+
+    public String getReportPath() {
+        return reportPath;
+    }
+
+    /**
+     * @return the report name if it was known when this was created, otherwise
+     * null
+     */
+    String getReportName() {
+        return reportName;
+    }
+
+    public String getConnectionID() {
+        return connectionID;
+    }
+
+    public Action getPrintAction() {
+        return printAction;
+    }
+
+    public String getPrinter() {
+        return printer;
+    }
+
+    public int getCopies() {
+        return copies;
+    }
+
+    public boolean isCollate() {
+        return collate;
+    }
+
+    public PrintAction.Duplex getDuplex() {
+        return duplex;
+    }
+
+    public boolean isShowDialog() {
+        return showDialog;
+    }
+
+    public String getExportFilePath() {
+        return exportFilePath;
+    }
+
+    public boolean isOverwriteExportFile() {
+        return overwriteExportFile;
+    }
+
+    public OutputStream getExportOutputStream() {
+        return exportOutputStream;
+    }
+
+    public JasperReportImpl.Virtualization getVirtualization() {
+        return virtualization;
+    }
+
+    public int getVirtualizerMaxPages() {
+        return virtualizerMaxPages;
+    }
+
+    public int getResultCacheTTL() {
+        return resultCacheTTL;
+    }
+
+    public int getDataSnapshotTTL() {
+        return dataSnapshotTTL;
+    }
+
+    public Boolean getPooledSubreports() {
+        return pooledSubreports;
+    }
+
+    public boolean isPromptForParameters() {
+        return promptForParameters;
+    }
+
+    public int getProgressDelay() {
+        return progressDelay;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * @return the parameters, unmodifiable
+     */
+    public Map<String, Object> getParams() {
+        return params;
+    }
+
+    public Component getParent() {
+        return parent;
+    }
+
+    public AbstractButton getPrintButton() {
+        return printButton;
+    }
+
+    List<PrintPromptFiller> getPromptFillers() {
+        return promptFillers;
+    }
+
+    List<PrintStatusListener> getStatusListeners() {
+        return statusListeners;
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2018 Joseph A Miller
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ticktockdata.jasper;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import static com.ticktockdata.jasper.ReportManager.logger;
+
+/**
+ * Watches the directories of the cached reports (which are also the
+ * SUBREPORT_DIR of those reports) and reports every file that is created,
+ * modified or deleted in them, so the ReportManager can drop its cached
+ * copy without checking the file on each call.
+ * <p>
+ * The watch thread is a daemon and is started when the first directory is
+ * watched.
+ * <p>
+ * This class is used only by the ReportManager.
+ *
+ * @since Oct 18, 2026
+ */
+final class ReportFileWatcher implements Runnable {
+
+    private final Map<Path, WatchKey> watched = new ConcurrentHashMap<>();
+    /**
+     * called with the absolute path of a changed file
+     */
+    private final Consumer<Path> onChange;
+    /**
+     * called when events were lost (overflow) or the watcher stopped, so
+     * everything must be checked again
+     */
+    private final Runnable onReset;
+    private WatchService service = null;
+    private Thread thread = null;
+
+    /**
+     * @param onChange called with the absolute path of each changed file
+     * @param onReset called if changes may have been missed
+     */
+    ReportFileWatcher(Consumer<Path> onChange, Runnable onReset) {
+        this.onChange = onChange;
+        this.onReset = onReset;
+    }
+
+    /**
+     * Starts watching the directory if it is not already watched.
+     *
+     * @param dir
+     * @return false if the directory can not be watched, in which case the
+     * caller must not rely on this watcher for files in it
+     */
+    boolean watch(Path dir) {
+
+        if (watched.containsKey(dir)) {
+            return true;
+        }
+        synchronized (this) {
+            if (watched.containsKey(dir)) {
+                return true;
+            }
+            try {
+                if (service == null) {
+                    service = FileSystems.getDefault().newWatchService();
+                    thread = new Thread(this, "ReportFileWatcher");
+                    thread.setDaemon(true);
+                    thread.start();
+                }
+                WatchKey key = dir.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                watched.put(dir, key);
+                logger.debug("Watching report directory " + dir);
+                return true;
+            } catch (IOException | RuntimeException ex) {
+                logger.warn("Can not watch report directory " + dir + ", will check file dates instead: " + ex);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @param dir
+     * @return true if changes to files in this directory are being watched
+     */
+    boolean isWatched(Path dir) {
+        return watched.containsKey(dir);
+    }
+
+    /**
+     * Stops the watch thread and forgets all the watched directories.
+     */
+    synchronized void close() {
+        if (service != null) {
+            try {
+                service.close();
+            } catch (IOException ex) {
+                logger.debug("Error closing the report WatchService", ex);
+            }
+            service = null;
+            thread = null;
+        }
+        watched.clear();
+    }
+
+    @Override
+    public void run() {
+
+        WatchService ws;
+        synchronized (this) {
+            ws = service;
+        }
+        try {
+            while (true) {
+                WatchKey key = ws.take();
+                Path dir = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        logger.info("Report file events were lost in " + dir + ", resetting");
+                        onReset.run();
+                    } else {
+                        Path file = dir.resolve((Path) event.context()).toAbsolutePath();
+                        logger.debug("Report directory change: " + event.kind().name() + " " + file);
+                        onChange.accept(file);
+                    }
+                }
+                if (!key.reset()) {
+                    // directory was deleted or is no longer accessible
+                    watched.remove(dir);
+                    onReset.run();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ex) {
+            logger.debug("ReportFileWatcher stopped");
+        } catch (RuntimeException ex) {
+            logger.error("ReportFileWatcher failed, will check file dates instead", ex);
+            close();
+        }
+        onReset.run();
+    }
+
+}
@@ -0,0 +1,488 @@
+/*
+ * Copyright (C) 2018 Joseph A Miller
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ticktockdata.jasper;
+
+import com.ticktockdata.jasper.PrintStatusEvent.StatusCode;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import net.sf.jasperreports.data.cache.ColumnDataCacheHandler;
+import net.sf.jasperreports.data.cache.DataCacheHandler;
+import net.sf.jasperreports.data.cache.PopulatedSnapshotCacheHandler;
+import net.sf.jasperreports.engine.JRParameter;
+import net.sf.jasperreports.engine.JRVirtualizer;
+import net.sf.jasperreports.engine.JasperPrint;
+import net.sf.jasperreports.engine.JasperReport;
+import net.sf.jasperreports.engine.JasperReportsContext;
+import net.sf.jasperreports.engine.SimpleReportContext;
+import net.sf.jasperreports.engine.fill.AsynchronousFillHandle;
+import net.sf.jasperreports.engine.fill.AsynchronousFilllListener;
+import net.sf.jasperreports.engine.fill.JRAbstractLRUVirtualizer;
+import net.sf.jasperreports.engine.fill.FillListener;
+import static com.ticktockdata.jasper.ReportManager.logger;
+
+/**
+ * Fills a {@link JasperReportImpl} with an {@link AsynchronousFillHandle}, then
+ * calls the report's {@link PrintExecutor} with the result.  This does not
+ * use Swing at all, so it is safe in a headless JVM and never waits on the
+ * EventDispatchThread.
+ * <p>
+ * Fires {@link PrintStatusEvent} for FILLED, COMPLETE, CANCELED and ERROR,
+ * exactly one of the last three for each fill.  The {@link FillMonitor}
+ * dialog shows the progress of a ReportFill when there is a display.
+ * <p>
+ * If the report has a virtualization set, the virtualizer is cleaned up when
+ * the PrintExecutor is done, or for a preview when the viewer is closed.
+ * The database connection is borrowed from the connection's pool for the
+ * fill, with the connection's {@link QueryProfile} applied, and returned when
+ * the fill is finished.
+ * <p>
+ * If an identical fill is already running (see {@link FillCoalescer}) this
+ * waits for its JasperPrint instead of filling, and then runs its own
+ * PrintExecutor with it.  If the report has a result cache TTL and was
+ * filled recently (see {@link FilledReportCache}) the cached JasperPrint is
+ * executed without filling.  If the report has a data snapshot TTL it is
+ * filled from (or records) a snapshot of its data, see
+ * {@link DataSnapshotCache}.  If the report's subreports are pooled they
+ * are filled by the {@link PooledSubreportRunnerFactory}.
+ *
+ * @since Oct 18, 2026
+ */
+final class ReportFill implements AsynchronousFilllListener, FillListener {
+
+    private final JasperReportImpl report;
+    private final CompletableFuture<Void> finished = new CompletableFuture<>();
+    private AsynchronousFillHandle handle = null;
+    /**
+     * keeps the filled pages off the heap, null if not virtualized
+     */
+    private JRVirtualizer virtualizer = null;
+    /**
+     * borrowed from the pool, closing it returns it
+     */
+    private Connection connection = null;
+    private volatile FillListener progressListener = null;
+    private volatile Runnable onFinish = null;
+    private volatile int pageCount = 0;
+    private volatile boolean canceled = false;
+    private volatile boolean error = false;
+    private volatile Throwable throwable = null;
+    /**
+     * identifies identical fills, null if this fill may not be shared
+     */
+    private final FillCoalescer.Key key;
+    /**
+     * completed with the JasperPrint of this fill, for the identical fills
+     * that wait for it
+     */
+    private volatile CompletableFuture<JasperPrint> shared = null;
+    /**
+     * the identical fill this waits for instead of filling
+     */
+    private CompletableFuture<JasperPrint> following = null;
+    /**
+     * this is done waiting for the identical fill
+     */
+    private boolean settled = false;
+    /**
+     * identifies the filled report in the result cache, null if not cached
+     */
+    private final FilledReportCache.Key resultKey;
+    /**
+     * the filled report from the result cache, executed by start()
+     */
+    private JasperPrint cached = null;
+    /**
+     * identifies the report's data in the snapshot cache, null if not cached
+     */
+    private final FilledReportCache.Key snapshotKey;
+    /**
+     * fills from or records the data snapshot, null if there is none
+     */
+    private DataCacheHandler dataCache = null;
+    /**
+     * filling from the snapshot failed, and it is being filled again without
+     */
+    private boolean snapshotFailed = false;
+
+    /**
+     * Creates the fill handle.  If that fails the ERROR status is fired and
+     * this is already finished, see {@link isError()}.
+     *
+     * @param report
+     */
+    ReportFill(JasperReportImpl report) {
+
+        this.report = report;
+        this.snapshotKey = ReportManager.getDataSnapshotCache().keyFor(report);
+
+        resultKey = ReportManager.getResultCache().keyFor(report);
+        if (resultKey != null) {
+            cached = ReportManager.getResultCache().get(resultKey);
+            if (cached != null) {
+                logger.debug("Using the cached fill of " + resultKey);
+                pageCount = cached.getPages().size();
+                key = null;
+                return;
+            }
+        }
+
+        JasperReport jasperReport = report.getJasperReport();
+        key = ReportManager.getFillCoalescer().keyFor(report, jasperReport);
+        if (key != null) {
+            CompletableFuture<JasperPrint> mine = new CompletableFuture<>();
+            CompletableFuture<JasperPrint> running = ReportManager.getFillCoalescer().join(key, mine);
+            if (running != mine) {
+                // an identical fill is running, wait for it in start()
+                following = running;
+                return;
+            }
+            shared = mine;
+        }
+        createHandle(jasperReport);
+    }
+
+    /**
+     * Creates the fill handle, or fires ERROR and finishes if it fails.
+     */
+    private void createHandle(JasperReport jasperReport) {
+        try {
+            Map<String, Object> params = report.getParams();
+            virtualizer = report.createVirtualizer();
+            if (virtualizer != null) {
+                params = new HashMap<>(params);
+                params.put(JRParameter.REPORT_VIRTUALIZER, virtualizer);
+            }
+            if (snapshotKey != null && !params.containsKey(JRParameter.REPORT_CONTEXT)) {
+                dataCache = (snapshotFailed ? new ColumnDataCacheHandler()
+                        : ReportManager.getDataSnapshotCache().handlerFor(snapshotKey));
+                SimpleReportContext context = new SimpleReportContext();
+                context.setParameterValue(DataCacheHandler.PARAMETER_DATA_CACHE_HANDLER, dataCache);
+                params = new HashMap<>(params);
+                params.put(JRParameter.REPORT_CONTEXT, context);
+            }
+            connection = ReportManager.getFillConnection(report.getConnectionID());
+            JasperReportsContext context = ReportManager.getJasperReportsContext(report.getConnectionID());
+            if (report.isPooledSubreports()) {
+                context = PooledSubreportRunnerFactory.install(context);
+                if (connection != null) {
+                    connection = SubreportConnection.wrap(connection, report.getConnectionID());
+                }
+            }
+            handle = AsynchronousFillHandle.createHandle(
+                    context,
+                    jasperReport,
+                    params,
+                    connection);
+        } catch (Exception ex) {
+            logger.error("Error creating AsynchronousFillHandle for report!", ex);
+            share(null, ex);
+            report.releaseVirtualizer();
+            throwable = ex;
+            error = true;
+            report.firePrintStatusChanged(StatusCode.ERROR);
+            finish();
+            return;
+        }
+
+        handle.addFillListener(this);
+        handle.addListener(this);
+    }
+
+    /**
+     * @param listener is told of each page generated / updated, for showing
+     * progress
+     */
+    void setProgressListener(FillListener listener) {
+        this.progressListener = listener;
+    }
+
+    /**
+     * @param onFinish run when the fill and execution are done, canceled or
+     * failed, before {@link waitForFinish()} returns
+     */
+    void setOnFinish(Runnable onFinish) {
+        this.onFinish = onFinish;
+    }
+
+    /**
+     * Starts filling on the fill handle's own thread, does nothing if the
+     * handle could not be created.  A cached filled report is executed on
+     * the calling thread.
+     */
+    void start() {
+        if (cached != null) {
+            JasperPrint jasperPrint = cached;
+            cached = null;
+            reportFinished(jasperPrint);
+        } else if (following != null) {
+            following.whenComplete(this::followed);
+        } else if (handle != null && !finished.isDone()) {
+            handle.startFill();
+        }
+    }
+
+    /**
+     * The identical fill this was waiting for is done.  If it was canceled
+     * this fills the report on its own.
+     */
+    private void followed(JasperPrint jasperPrint, Throwable t) {
+
+        synchronized (this) {
+            if (settled || finished.isDone()) {
+                return;     // canceled while waiting
+            }
+            if (t instanceof CancellationException) {
+                logger.debug("The shared fill was canceled, filling " + report.getReportName() + " again");
+                following = null;
+                createHandle(report.getJasperReport());
+                if (handle != null && !finished.isDone()) {
+                    handle.startFill();
+                }
+                return;
+            }
+            settled = true;
+        }
+        if (jasperPrint != null) {
+            logger.debug("Shared the fill of " + key);
+            pageCount = jasperPrint.getPages().size();
+            reportFinished(jasperPrint);
+        } else {
+            reportFillError(t instanceof CompletionException && t.getCause() != null ? t.getCause() : t);
+        }
+    }
+
+    /**
+     * Gives the result of this fill to the identical fills waiting for it.
+     *
+     * @param jasperPrint null if the fill failed or was canceled
+     * @param t why it failed, null if canceled
+     */
+    private void share(JasperPrint jasperPrint, Throwable t) {
+        CompletableFuture<JasperPrint> s = shared;
+        if (s == null) {
+            return;
+        }
+        shared = null;
+        ReportManager.getFillCoalescer().done(key, s);
+        if (jasperPrint != null) {
+            s.complete(jasperPrint);
+        } else if (t != null) {
+            s.completeExceptionally(t);
+        } else {
+            s.cancel(false);
+        }
+    }
+
+    /**
+     * Cancels the fill and the executor.  The CANCELED status is fired when
+     * the fill actually stops.
+     */
+    void cancel() {
+        try {
+            boolean waiting = false;
+            synchronized (this) {
+                if (handle == null && following != null && !settled) {
+                    // only waiting for an identical fill, which goes on
+                    settled = true;
+                    waiting = !finished.isDone();
+                }
+            }
+            if (waiting) {
+                reportCancelled();
+                return;
+            }
+            if (handle != null) {
+                handle.cancellFill();
+            }
+            report.getPrintExecutor().cancelExecute();
+            logger.info("Canceled report execution of " + report.getReportName());
+        } catch (Exception ex) {
+            logger.error("Error canceling the report execution!", ex);
+            throwable = ex;
+        }
+    }
+
+    /**
+     * Blocks until the report is filled and executed, canceled, or fails.
+     *
+     * @throws InterruptedException
+     */
+    void waitForFinish() throws InterruptedException {
+        try {
+            finished.get();
+        } catch (ExecutionException ex) {
+            // never completed exceptionally
+            throwable = ex.getCause();
+        }
+    }
+
+    boolean isFinished() {
+        return finished.isDone();
+    }
+
+    boolean isError() {
+        return error;
+    }
+
+    boolean isCanceled() {
+        return canceled;
+    }
+
+    Throwable getThrowable() {
+        return throwable;
+    }
+
+    int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * Returns the connection to the pool, once the fill no longer needs it.
+     */
+    private synchronized void returnConnection() {
+        try {
+            if (connection != null) {
+                connection.close();
+            }
+        } catch (SQLException ex) {
+            logger.warn("Error returning the connection of " + report.getReportName(), ex);
+        }
+        connection = null;
+    }
+
+    private void finish() {
+        returnConnection();
+        try {
+            Runnable r = onFinish;
+            if (r != null) {
+                r.run();
+            }
+        } catch (RuntimeException ex) {
+            logger.warn("Error finishing the fill of " + report.getReportName(), ex);
+        } finally {
+            finished.complete(null);
+        }
+    }
+
+    @Override
+    public void reportFinished(JasperPrint jasperPrint) {
+
+        boolean previewing = false;
+        try {
+            // the executor does not query, let other fills use the connection
+            returnConnection();
+            share(jasperPrint, null);
+            if (handle != null && resultKey != null) {
+                // filled by this, not shared or cached
+                ReportManager.getResultCache().put(resultKey, jasperPrint, report.getResultCacheTTL());
+            }
+            report.firePrintStatusChanged(StatusCode.FILLED);
+
+            // no more pages are added, so pages that are swapped out do not
+            // need to be written again when they are swapped back in
+            if (virtualizer instanceof JRAbstractLRUVirtualizer) {
+                ((JRAbstractLRUVirtualizer) virtualizer).setReadOnly(true);
+            }
+
+            if (report.getPrintExecutor().execute(jasperPrint)) {
+                // a previewed report's pages are needed until the viewer closes
+                previewing = (report.getPrintExecutor() instanceof PreviewAction);
+                report.firePrintStatusChanged(StatusCode.COMPLETE);
+            } else {
+                logger.error("Failed to execute the report!");
+                error = true;
+                report.firePrintStatusChanged(StatusCode.ERROR);
+            }
+            if (handle != null && snapshotKey != null) {
+                // only kept if this recorded a snapshot
+                ReportManager.getDataSnapshotCache().put(snapshotKey, dataCache, report.getDataSnapshotTTL());
+            }
+        } catch (RuntimeException ex) {
+            logger.error("Error executing the filled report!", ex);
+            error = true;
+            throwable = ex;
+            report.firePrintStatusChanged(StatusCode.ERROR);
+        } finally {
+            if (!previewing) {
+                report.releaseVirtualizer();
+            }
+            finish();
+        }
+    }
+
+    @Override
+    public void reportCancelled() {
+        share(null, null);
+        canceled = true;
+        report.releaseVirtualizer();
+        report.firePrintStatusChanged(StatusCode.CANCELED);
+        finish();
+    }
+
+    @Override
+    public void reportFillError(Throwable t) {
+        synchronized (this) {
+            if (dataCache instanceof PopulatedSnapshotCacheHandler && !snapshotFailed && !canceled) {
+                // the snapshot does not match the report, a subreport changed
+                logger.warn("Could not fill " + report.getReportName() + " from its data snapshot, filling it from the database: "
+                        + t.getLocalizedMessage());
+                ReportManager.getDataSnapshotCache().remove(snapshotKey);
+                snapshotFailed = true;
+                returnConnection();
+                report.releaseVirtualizer();
+                pageCount = 0;
+                createHandle(report.getJasperReport());
+                if (!finished.isDone()) {
+                    handle.startFill();
+                }
+                return;
+            }
+        }
+        error = true;
+        logger.error("Error occurred during fillReport: " + t.getLocalizedMessage(), t);
+        throwable = t;
+        share(null, t);
+        report.releaseVirtualizer();
+        report.firePrintStatusChanged(StatusCode.ERROR);
+        finish();
+    }
+
+    @Override
+    public void pageGenerated(JasperPrint jasperPrint, int pageIndex) {
+        logger.debug("Filled page " + pageIndex + " of report " + report.getReportName());
+        pageCount = pageIndex;
+        FillListener l = progressListener;
+        if (l != null) {
+            l.pageGenerated(jasperPrint, pageIndex);
+        }
+    }
+
+    @Override
+    public void pageUpdated(JasperPrint jasperPrint, int pageIndex) {
+        FillListener l = progressListener;
+        if (l != null) {
+            l.pageUpdated(jasperPrint, pageIndex);
+        }
+    }
+
+}
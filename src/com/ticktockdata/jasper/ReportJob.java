@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2018 Joseph A Miller
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ticktockdata.jasper;
+
+import com.ticktockdata.jasper.PrintStatusEvent.StatusCode;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One execution of a {@link ReportDefinition}.  A job has its own copy of the
+ * parameters (which the prompts and PrintPromptFillers fill in), its own
+ * {@link PrintExecutor} and its own status, so any number of jobs of the same
+ * definition can run at the same time.
+ * <p>
+ * A job is the source of the {@link PrintStatusEvent}s of its execution, and
+ * the report given to the PrintExecutor and the prompts, which is why it is
+ * a JasperReportImpl.  It can be executed only once.
+ *
+ * @since Oct 18, 2026
+ */
+public final class ReportJob extends JasperReportImpl {
+
+    private final ReportDefinition definition;
+    private final AtomicBoolean submitted = new AtomicBoolean(false);
+
+    /**
+     * @param definition
+     */
+    public ReportJob(ReportDefinition definition) {
+        super(definition);
+        this.definition = definition;
+    }
+
+    /**
+     * @return the definition this job executes
+     */
+    @Override
+    public ReportDefinition getDefinition() {
+        return definition;
+    }
+
+    /**
+     * Queues this job to the ReportManager's workers.
+     *
+     * @return completes with the final status of this job
+     * @throws IllegalStateException if this job was already executed
+     */
+    @Override
+    public CompletableFuture<StatusCode> execute() {
+        if (!submitted.compareAndSet(false, true)) {
+            throw new IllegalStateException("A ReportJob can only be executed once, create a new one from its definition");
+        }
+        return submit();
+    }
+
+}
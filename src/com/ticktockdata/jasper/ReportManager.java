@@ -19,16 +19,21 @@ package com.ticktockdata.jasper;
 import com.ticktockdata.jasper.prompts.PromptComponentFactory;
 import java.awt.Component;
 import java.awt.Container;
+import java.awt.GraphicsEnvironment;
 import java.awt.Window;
 import java.io.File;
 import java.security.InvalidParameterException;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.print.PrintService;
 import javax.print.PrintServiceLookup;
 import javax.swing.JButton;
@@ -36,9 +41,11 @@ import javax.swing.JComponent;
 import javax.swing.JDialog;
 import javax.swing.JFrame;
 import javax.swing.SwingUtilities;
-import net.sf.jasperreports.engine.JRException;
-import net.sf.jasperreports.engine.JasperCompileManager;
+import net.sf.jasperreports.engine.DefaultJasperReportsContext;
 import net.sf.jasperreports.engine.JasperReport;
+import net.sf.jasperreports.engine.JasperReportsContext;
+import net.sf.jasperreports.engine.SimpleJasperReportsContext;
+import net.sf.jasperreports.repo.RepositoryService;
 import org.apache.log4j.Logger;
 
 /**
@@ -47,12 +54,18 @@ import org.apache.log4j.Logger;
  * A cache of compiled reports are kept, which can be dumped or individual
  * reports removed using the clearReportCache() and removeFromCache(String
  * reportPath) methods.  It should, however, not be necessary to clear cache
- * manually as the file's lastModified is stored and checked on each call, so
- * the Manager will automatically detect modified files and reload them.
+ * manually as the directories of the reports are watched for changes (or if
+ * that is not possible the file's lastModified is checked on each call), so
+ * the Manager will automatically detect modified files and reload them.  The
+ * cache is bounded (see setReportCacheLimits(int, long)) and a report is only
+ * compiled once even if several threads ask for it at the same time.
  * <p>
  * To do actual execution (view / print / preview) of reports use the
  * executeReport(JasperReportImpl report) method, which passes the job to a
- * SingleThreadExecutor and returns immediately.
+ * bounded pool of worker threads and returns immediately.  The size of the
+ * pool, the capacity of the pending queue and a per-connection limit of
+ * concurrent jobs can be set with setWorkerPoolSize(int),
+ * setQueueCapacity(int) and setMaxConcurrentJobs(String, int).
  * <p>
  * The Jasper Report object that the programmer will work with is a
  * {@link JasperReportImpl}, which is a Runnable implementation of a
@@ -73,25 +86,111 @@ public class ReportManager {
     public static final Logger logger = Logger.getLogger(ReportManager.class);
 
     /**
-     * SingleThreadExecutorService that runs the reports
+     * What the worker pool does with a new report when its pending queue is
+     * full.
      */
-    private static final ExecutorService EXECUTOR_SERVICE = Executors.newSingleThreadExecutor();
+    public static enum RejectionPolicy {
+        /**
+         * The new report is not queued, it fires an ERROR status.
+         */
+        REJECT,
+        /**
+         * The oldest queued report is canceled to make room for the new one.
+         */
+        DISCARD_OLDEST
+    }
+
+    /**
+     * Default number of reports that may execute at the same time
+     */
+    public static final int DEFAULT_WORKER_POOL_SIZE = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Default number of reports that may wait in the queue for a free worker
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+    /**
+     * Bounded pool of worker threads that runs the reports
+     */
+    private static final ReportScheduler EXECUTOR_SERVICE = new ReportScheduler(DEFAULT_WORKER_POOL_SIZE, DEFAULT_QUEUE_CAPACITY);
+    
+    /**
+     * Default max number of compiled reports held in the cache
+     */
+    public static final int DEFAULT_CACHE_MAX_ENTRIES = 250;
+
+    /**
+     * Cache of the compiled reports, prevents need to re-compile each run.
+     * Also holds the mod date of reports - used to auto-reload reports on
+     * modification
+     */
+    private static final ReportCache REPORT_CACHE = new ReportCache(DEFAULT_CACHE_MAX_ENTRIES, 0);
+    
+    /**
+     * The absolute path (cache key) of each reportPath that has been resolved
+     * to a file in a watched directory.  Cleared on any change to a watched
+     * directory, as the change may resolve a path to a different file.
+     */
+    private static final Map<String, String> RESOLVED_PATHS = new ConcurrentHashMap<String, String>();
+    
+    /**
+     * Watches the directories of the cached reports, see
+     * {@link #setWatchReportFiles(boolean)}
+     */
+    private static final ReportFileWatcher FILE_WATCHER = new ReportFileWatcher(
+            (java.nio.file.Path file) -> {
+                RESOLVED_PATHS.clear();
+                String key = file.toString();
+                invalidateReportGraph(key);
+                // a new .jrxml may replace a .jasper subreport, or the reverse
+                if (key.toLowerCase().endsWith(".jrxml")) {
+                    invalidateReportGraph(key.substring(0, key.length() - 6) + ".jasper");
+                } else if (key.toLowerCase().endsWith(".jasper")) {
+                    invalidateReportGraph(key.substring(0, key.length() - 7) + ".jrxml");
+                }
+            },
+            RESOLVED_PATHS::clear);
+    
+    private static volatile boolean watchReportFiles = true;
+    
+    private static volatile boolean headlessFill = GraphicsEnvironment.isHeadless();
+    
+    private static volatile boolean pooledSubreports = false;
+    
+    /**
+     * The subreports of the cached reports, and which reports use them
+     */
+    private static final SubreportRepository SUBREPORTS = new SubreportRepository();
+    
+    /**
+     * Lets identical reports that run at the same time share one fill
+     */
+    private static final FillCoalescer FILL_COALESCER = new FillCoalescer();
+    
+    /**
+     * The default max total estimated size of the filled reports kept in
+     * memory by the result cache
+     */
+    public static final long DEFAULT_RESULT_CACHE_BYTES = 64L * 1024 * 1024;
     
     /**
-     * Cache of the compiled reports, prevents need to re-compile each run
+     * Cache of the filled reports of reports with a result cache TTL, see
+     * {@link JasperReportImpl#setResultCacheTTL(int)}
      */
-    private static final Map<String, JasperReport> REPORT_CACHE = new HashMap<String, JasperReport>();
+    private static final FilledReportCache RESULT_CACHE = new FilledReportCache(DEFAULT_RESULT_CACHE_BYTES);
     
     /**
-     * Cache of the mod date of reports - used to auto-reload reports on modification
+     * Cache of the data of reports with a data snapshot TTL, see
+     * {@link JasperReportImpl#setDataSnapshotTTL(int)}
      */
-    private static final Map<String, Long> REPORT_MODIFIED = new HashMap<String, Long>();
+    private static final DataSnapshotCache DATA_SNAPSHOTS = new DataSnapshotCache();
     
     /**
      * Cache of default parameters that are to be loaded to every report before
      * running
      */
-    private static final Map<String, Map<String, Object>> DEFAULT_PARAMS = new HashMap<String, Map<String, Object>>();
+    private static final Map<String, Map<String, Object>> DEFAULT_PARAMS = new ConcurrentHashMap<String, Map<String, Object>>();
 
     /**
      * Returns a compiled JasperReport. Returns cached value if available,
@@ -115,39 +214,204 @@ public class ReportManager {
             throw new InvalidParameterException("The specified reportFile is null or empty!");
         }
         
+        // if this path was resolved before, and its directory is watched for
+        // changes, then a cached report is current without checking the file
+        if (watchReportFiles) {
+            String key = RESOLVED_PATHS.get(reportPath);
+            if (key != null) {
+                JasperReport cached = REPORT_CACHE.getIfReady(key);
+                if (cached != null) {
+                    return cached;
+                }
+            }
+        }
+        
         // this throws InvalidParameterException if not valid
         File file = getReportFile(reportPath);
 
-        // if report is cached then return it
-        if (REPORT_CACHE.containsKey(reportPath)) {
+        if (file == null) {
+            return null;
+        }
 
-            // check that it hasn't been modified!
-            if (file.lastModified() != REPORT_MODIFIED.get(reportPath)) {
-                // remove from cache and continue to reload
-                logger.info("Report file has been modified, reloading!");
-                // remove the parameters for this report
-                PromptComponentFactory.clearPromptComponentCache(REPORT_CACHE.get(reportPath).getParameters());
-                removeFromCache(reportPath);
-            } else {
-                logger.debug("Returning cached report: " + reportPath);
-                return REPORT_CACHE.get(reportPath);
+        // keyed by the absolute path, so a report is cached once however the
+        // path was given
+        String key = file.getAbsolutePath();
+        
+        // start watching before the file is checked, so no change is missed
+        boolean watched = watchReportFiles 
+                && FILE_WATCHER.watch(file.getAbsoluteFile().getParentFile().toPath());
+
+        // returns the cached report, or compiles it (only once if several
+        // threads ask for the same report at the same time)
+        JasperReport report = REPORT_CACHE.get(key, file);
+        if (report != null) {
+            loadSubreports(key, report, file.getAbsoluteFile().getParentFile());
+            if (watched) {
+                RESOLVED_PATHS.put(reportPath, key);
             }
         }
+        return report;
 
-        // file exists but is not compiled, so compile it!
+    }
+
+    /**
+     * Compiles (or loads) and caches the subreports of a report, and their
+     * subreports, so they are ready when the report is filled.  Does nothing
+     * if this was already done for this compiled report.
+     * 
+     * @param key cache key of the report
+     * @param report
+     * @param dir directory of the report, which is its SUBREPORT_DIR
+     */
+    private static void loadSubreports(String key, JasperReport report, File dir) {
+        
+        for (File source : SUBREPORTS.scan(key, report, dir)) {
+            String subKey = source.getAbsolutePath();
+            if (watchReportFiles) {
+                FILE_WATCHER.watch(source.getAbsoluteFile().getParentFile().toPath());
+            }
+            JasperReport subreport = REPORT_CACHE.get(subKey, source);
+            if (subreport != null) {
+                logger.debug("Cached subreport " + subKey + " of " + key);
+                loadSubreports(subKey, subreport, source.getAbsoluteFile().getParentFile());
+            }
+        }
+    }
+    
+    
+    /**
+     * Called by the {@link SubreportRepository} while a report is filled.
+     * 
+     * @param location the location of the subreport, as evaluated from the
+     * subreport expression
+     * @return the cached subreport, or null if it is not one found by
+     * {@link #loadSubreports(String, JasperReport, File)}
+     */
+    static JasperReport getSubreport(String location) {
+        
+        File source = SUBREPORTS.getSource(location);
+        if (source == null) {
+            return null;
+        }
+        String key = source.getAbsolutePath();
+        File dir = source.getAbsoluteFile().getParentFile();
+        if (watchReportFiles && FILE_WATCHER.isWatched(dir.toPath())) {
+            JasperReport cached = REPORT_CACHE.getIfReady(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        JasperReport report = REPORT_CACHE.get(key, source);
+        if (report != null) {
+            loadSubreports(key, report, dir);
+        }
+        return report;
+    }
+    
+    
+    /**
+     * Removes a report, or subreport, from the cache along with every report
+     * that uses it.
+     * 
+     * @param key cache key (absolute path) of the changed file
+     */
+    private static void invalidateReportGraph(String key) {
+        
+        Set<String> keys = SUBREPORTS.getDependents(key);
+        keys.add(key);
+        for (String k : keys) {
+            if (REPORT_CACHE.invalidate(k)) {
+                logger.info("Report file has been modified, removed from cache: " + k);
+            }
+            SUBREPORTS.forget(k);
+        }
+    }
+    
+    
+    /**
+     * Returns the JasperReportsContext used to fill the reports.  It serves
+     * the subreports from the ReportManager's cache.
+     * 
+     * @return 
+     */
+    public static JasperReportsContext getJasperReportsContext() {
+        return ContextHolder.CONTEXT;
+    }
+    
+    /**
+     * Returns the JasperReportsContext used to fill the reports on a
+     * connection: {@link #getJasperReportsContext()} with the fetch size and
+     * cursor properties of the connection's {@link QueryProfile}.
+     * 
+     * @param connectionID identifier of the connection
+     * @return 
+     */
+    public static JasperReportsContext getJasperReportsContext(String connectionID) {
+        QueryProfile profile = ReportConnectionManager.getQueryProfile(connectionID);
+        SimpleJasperReportsContext context = new SimpleJasperReportsContext(getJasperReportsContext());
+        profile.applyTo(context);
+        return context;
+    }
+    
+    /**
+     * Borrows a connection for a fill from the connection's pool, and applies
+     * the connection's {@link QueryProfile} to it.  Closing it returns it to
+     * the pool.
+     * 
+     * @param connectionID identifier of the connection
+     * @return null if no connection can be made
+     * @throws SQLException if the profile can not be applied
+     */
+    static Connection getFillConnection(String connectionID) throws SQLException {
+        Connection conn = ReportConnectionManager.getReportConnection(connectionID);
+        if (conn == null) {
+            return null;
+        }
         try {
-            JasperReport report = JasperCompileManager.compileReport(file.getAbsolutePath());
-            REPORT_CACHE.put(reportPath, report);
-            REPORT_MODIFIED.put(reportPath, file.lastModified());
-            logger.debug("Compiled report and added to cache!  " + report.getName());
-            return report;
-        } catch (JRException ex) {
-            logger.error("Error while compiling report: " + reportPath, ex);
+            return ReportConnectionManager.getQueryProfile(connectionID).applyTo(conn);
+        } catch (SQLException | RuntimeException ex) {
+            conn.close();
+            throw ex;
+        }
+    }
+    
+    /**
+     * Borrows a connection for a subreport like
+     * {@link #getFillConnection(String)}, without waiting if all of the
+     * connections are in use.
+     * 
+     * @param connectionID identifier of the connection
+     * @return null if all of the connections are in use
+     * @throws SQLException if no connection can be made, or the profile can
+     * not be applied
+     */
+    static Connection tryGetFillConnection(String connectionID) throws SQLException {
+        Connection conn = ReportConnectionManager.tryGetReportConnection(connectionID);
+        if (conn == null) {
             return null;
         }
-
+        try {
+            return ReportConnectionManager.getQueryProfile(connectionID).applyTo(conn);
+        } catch (SQLException | RuntimeException ex) {
+            conn.close();
+            throw ex;
+        }
     }
-
+    
+    /**
+     * Creates the context on first use
+     */
+    private static final class ContextHolder {
+        
+        static final SimpleJasperReportsContext CONTEXT = new SimpleJasperReportsContext(DefaultJasperReportsContext.getInstance());
+        
+        static {
+            // placed before the default repository services
+            CONTEXT.setExtensions(RepositoryService.class, Collections.singletonList(SUBREPORTS));
+        }
+    }
+    
+    
     /**
      * This is a convenience 'getter' that returns a new JasperReportImpl.
      * <p>
@@ -234,6 +498,74 @@ public class ReportManager {
     }
 
     
+    /**
+     * Compiles every .jrxml report in the directory on a separate pool of
+     * low-priority daemon threads, so the first run of each report does not
+     * have to wait for it to compile.  Unless running headless, the prompt
+     * components of each report are created too (on the EventDispatchThread).
+     * <p>
+     * Returns immediately, reports can be executed while this runs.
+     * 
+     * @param reportDir
+     * @return count of reports that will be compiled
+     */
+    public static int warmUpReports(String reportDir) {
+        
+        final List<File> files = listReportsInDir(reportDir);
+        if (files.isEmpty()) {
+            logger.warn("Warm-up: there are no reports in " + reportDir);
+            return 0;
+        }
+        
+        final boolean primePrompts = !GraphicsEnvironment.isHeadless();
+        final long start = System.currentTimeMillis();
+        final AtomicInteger remaining = new AtomicInteger(files.size());
+        final AtomicInteger failed = new AtomicInteger(0);
+        final AtomicInteger threadCount = new AtomicInteger(0);
+        
+        int threads = Math.max(1, Math.min(files.size(), Runtime.getRuntime().availableProcessors() / 2));
+        ExecutorService pool = Executors.newFixedThreadPool(threads, (Runnable r) -> {
+            Thread t = new Thread(r, "ReportWarmUp-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+        
+        logger.info("Warm-up: compiling " + files.size() + " reports in " + reportDir + " on " + threads + " threads");
+        for (final File f : files) {
+            pool.execute(() -> {
+                try {
+                    final String path = f.getAbsolutePath();
+                    JasperReport report = getJasperReport(path);
+                    if (report == null) {
+                        failed.incrementAndGet();
+                    } else if (primePrompts) {
+                        SwingUtilities.invokeLater(() -> {
+                            try {
+                                PromptComponentFactory.getPromptsForReport(new JasperReportImpl(path));
+                            } catch (Exception ex) {
+                                logger.warn("Warm-up: failed to create the prompts for " + path, ex);
+                            }
+                        });
+                    }
+                } catch (Exception ex) {
+                    failed.incrementAndGet();
+                    logger.warn("Warm-up: failed to compile " + f, ex);
+                } finally {
+                    if (remaining.decrementAndGet() == 0) {
+                        logger.info("Warm-up: finished " + files.size() + " reports (" + failed.get() 
+                                + " failed) in " + (System.currentTimeMillis() - start) + " ms");
+                    }
+                }
+            });
+        }
+        // the threads end when the queued reports are done
+        pool.shutdown();
+        
+        return files.size();
+    }
+
+    
     /**
      * Method that returns list of available printer names, sorted.
      *
@@ -300,9 +632,11 @@ public class ReportManager {
     
     
     /**
-     * This should always be used to run (print / preview / export) a report. A
-     * SingleThreadExecutorService is used to run the reports, so they will
-     * always be executed in sequence, one at a time.
+     * This should always be used to run (print / preview / export) a report.
+     * The report is queued to a bounded pool of worker threads, so several
+     * reports may be executing at the same time (see
+     * {@link #setWorkerPoolSize(int)}).  If the queue is full, or the
+     * ReportManager has been shut down, the report fires an ERROR status.
      * <p>
      * This method loads the default parameters if they are set.
      *
@@ -330,13 +664,16 @@ public class ReportManager {
             }
             
             logger.debug("The Report's print action is: " + report.getPrintAction());
-            EXECUTOR_SERVICE.execute(report);
-            report.firePrintStatusChanged(PrintStatusEvent.StatusCode.QUEUED);
-//            EXECUTOR_SERVICE.awaitTermination(10, TimeUnit.SECONDS);
-            logger.debug("Added report " + report.getReportName() + " to SingleThreadExecutorService");
+            // the scheduler fires QUEUED
+            if (!EXECUTOR_SERVICE.submit(report)) {
+                report.firePrintStatusChanged(PrintStatusEvent.StatusCode.ERROR);
+                return;
+            }
+            logger.debug("Added report " + report.getReportName() + " to the report worker queue");
         } catch (Exception ex) {
             logger.error("Failed to execute the report: " + report.getReportName(), ex);
             removeFromCache(report.getReportPath());
+            report.firePrintStatusChanged(PrintStatusEvent.StatusCode.ERROR);
         }
 
     }
@@ -352,11 +689,20 @@ public class ReportManager {
      * @return count of reports cleared from cache
      */
     public static int clearReportCache() {
-        int count = REPORT_CACHE.size();
+        RESOLVED_PATHS.clear();
+        SUBREPORTS.clear();
+        int count = REPORT_CACHE.clear();
+        int filled = RESULT_CACHE.clear();
+        if (filled > 0) {
+            logger.info("Cleared " + filled + " cached filled reports");
+        }
+        int snapshots = DATA_SNAPSHOTS.clear();
+        if (snapshots > 0) {
+            logger.info("Cleared " + snapshots + " data snapshots");
+        }
         if (count <= 0) {
             logger.info("clearReportCache called, there were no cached reports to clear");
         } else {
-            REPORT_CACHE.clear();
             logger.info("Cleared cache, there were " + count + " reports cached.");
         }
         // have the PromptComponentFactory clear it's cached prompts
@@ -372,9 +718,16 @@ public class ReportManager {
      */
     public static void removeFromCache(String reportPath) {
 
-        REPORT_CACHE.remove(reportPath);
-        REPORT_MODIFIED.remove(reportPath);
-        logger.info("Removed from report cache: " + reportPath);
+        if (reportPath == null) {
+            return;
+        }
+        RESOLVED_PATHS.remove(reportPath);
+        boolean removed = REPORT_CACHE.invalidate(reportPath);
+        removed |= REPORT_CACHE.invalidate(new File(reportPath).getAbsolutePath());
+        removed |= REPORT_CACHE.invalidate(new File("reports" + File.separator + reportPath).getAbsolutePath());
+        if (removed) {
+            logger.info("Removed from report cache: " + reportPath);
+        }
 
     }
 
@@ -414,7 +767,8 @@ public class ReportManager {
             logger.debug("Adding default parameters for connection \"" + identifier + "\"");
         }
 
-        DEFAULT_PARAMS.put(identifier, params);
+        // store a copy, reports running on other threads read from this map
+        DEFAULT_PARAMS.put(identifier, new HashMap<String, Object>(params));
         
         for (String s : params.keySet()) {
             logger.trace("Set a Default Parameter for \"" + identifier + "\": " + s + "=" + params.get(s));
@@ -437,13 +791,316 @@ public class ReportManager {
     
     public static void addDefaultReportParameter(String identifier, String key, Object value) {
         
-        Map<String, Object> map = DEFAULT_PARAMS.getOrDefault(identifier, new HashMap<>());
-        map.put(key, value);
-        DEFAULT_PARAMS.put(identifier, map);
+        DEFAULT_PARAMS.compute(identifier, (id, old) -> {
+            // copy on write, a running report may be reading the old map
+            Map<String, Object> map = (old == null ? new HashMap<>() : new HashMap<>(old));
+            map.put(key, value);
+            return map;
+        });
         
     }
     
     
+    /**
+     * Sets the number of reports that may execute at the same time.  Default
+     * is the number of available processors.
+     * 
+     * @param size must be at least 1
+     */
+    public static void setWorkerPoolSize(int size) {
+        EXECUTOR_SERVICE.setPoolSize(size);
+        logger.info("Report worker pool size set to " + size);
+    }
+    
+    
+    public static int getWorkerPoolSize() {
+        return EXECUTOR_SERVICE.getPoolSize();
+    }
+    
+    
+    /**
+     * Sets the max number of reports that may wait in the queue for a free
+     * worker. Default is {@link #DEFAULT_QUEUE_CAPACITY}.
+     * 
+     * @param capacity must be at least 1
+     */
+    public static void setQueueCapacity(int capacity) {
+        EXECUTOR_SERVICE.setQueueCapacity(capacity);
+        logger.info("Report queue capacity set to " + capacity);
+    }
+    
+    
+    /**
+     * Sets what happens to a report that is executed while the queue is full.
+     * Default is {@link RejectionPolicy#REJECT}.
+     * 
+     * @param policy 
+     */
+    public static void setRejectionPolicy(RejectionPolicy policy) {
+        EXECUTOR_SERVICE.setRejectionPolicy(policy);
+    }
+    
+    
+    /**
+     * Limits the number of reports that may run at the same time using the
+     * connection with this identifier.  Reports over the limit stay queued
+     * without tying up a worker, so other connections can still use the free
+     * workers.
+     * 
+     * @param identifier identifier of the connection
+     * @param max zero or less removes the limit
+     */
+    public static void setMaxConcurrentJobs(String identifier, int max) {
+        EXECUTOR_SERVICE.setConnectionLimit(identifier, max);
+        logger.info("Max concurrent reports for connection \"" + identifier + "\" set to " + max);
+    }
+    
+    
+    /**
+     * @return user-readable summary of the worker pool, used by the STATUS
+     * command.
+     */
+    public static String getExecutorStatus() {
+        return EXECUTOR_SERVICE.getStatusMessage() + "\n" + FILL_COALESCER.getStatusMessage()
+                + "\n" + PooledSubreportRunnerFactory.getStatusMessage();
+    }
+
+    /**
+     * Sets the bounds of the compiled report cache, when either is exceeded
+     * the least recently used reports are removed.
+     * 
+     * @param maxEntries max number of compiled reports, default is
+     * {@link #DEFAULT_CACHE_MAX_ENTRIES}
+     * @param maxBytes max total estimated size of compiled reports, zero or
+     * less for no limit (the default)
+     */
+    public static void setReportCacheLimits(int maxEntries, long maxBytes) {
+        REPORT_CACHE.setLimits(maxEntries, maxBytes);
+        logger.info("Report cache limits set to " + maxEntries + " reports, " + maxBytes + " bytes");
+    }
+    
+    
+    /**
+     * If true (the default) the directories of the cached reports, which are
+     * also their SUBREPORT_DIR, are watched for changes.  A changed report is
+     * then removed from the cache when the change happens, and a cached
+     * report is returned without touching the file system.
+     * <p>
+     * If false, or the file system does not support watching, the file's
+     * lastModified is checked on each call instead.  Set this to false if
+     * the reports are on a network share where changes made by other
+     * computers may not be detected.
+     * 
+     * @param watch 
+     */
+    public static void setWatchReportFiles(boolean watch) {
+        watchReportFiles = watch;
+        if (!watch) {
+            FILE_WATCHER.close();
+            RESOLVED_PATHS.clear();
+        }
+        logger.info("Watching report directories for changes: " + watch);
+    }
+    
+    
+    public static boolean isWatchReportFiles() {
+        return watchReportFiles;
+    }
+    
+    
+    /**
+     * If true the reports are filled without the {@link FillMonitor} progress
+     * dialog, and without any error dialog, so a fill never waits on the
+     * EventDispatchThread.  The cancel and {@link PrintStatusEvent} behavior is
+     * the same.  Defaults to true if the JVM is headless.
+     * <p>
+     * A report with a negative progressDelay (the dialog is never shown) is
+     * always filled this way.
+     * 
+     * @param headless 
+     */
+    public static void setHeadlessFill(boolean headless) {
+        headlessFill = headless || GraphicsEnvironment.isHeadless();
+        logger.info("Filling reports without the progress dialog: " + headlessFill);
+    }
+    
+    
+    public static boolean isHeadlessFill() {
+        return headlessFill;
+    }
+    
+    
+    /**
+     * If true (the default) a report that is executed while an identical one
+     * is being filled - the same report file, connection and parameter values -
+     * is not filled again.  It waits for the other fill, then prints, previews
+     * or exports the same JasperPrint with its own PrintAction.
+     * <p>
+     * Reports with a virtualization, or with a Connection or JRDataSource
+     * parameter, are always filled on their own.
+     * 
+     * @param share 
+     */
+    public static void setShareIdenticalFills(boolean share) {
+        FILL_COALESCER.setEnabled(share);
+        logger.info("Sharing identical fills: " + share);
+    }
+    
+    
+    public static boolean isShareIdenticalFills() {
+        return FILL_COALESCER.isEnabled();
+    }
+    
+    
+    static FillCoalescer getFillCoalescer() {
+        return FILL_COALESCER;
+    }
+    
+    
+    /**
+     * Sets how much memory the filled reports of the result cache may use,
+     * estimated from their page, element and text counts.  Beyond that the
+     * least recently used are written to a temporary directory, up to
+     * {@link FilledReportCache#SPILL_FACTOR} times this size.
+     * 
+     * @param maxBytes default is {@link #DEFAULT_RESULT_CACHE_BYTES}
+     */
+    public static void setResultCacheLimit(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new InvalidParameterException("Result cache limit may not be less than 0!");
+        }
+        RESULT_CACHE.setMaxBytes(maxBytes);
+        logger.info("Result cache limit set to " + maxBytes + " bytes");
+    }
+    
+    
+    static FilledReportCache getResultCache() {
+        return RESULT_CACHE;
+    }
+    
+    
+    /**
+     * Sets a directory where the data snapshots of reports with a data
+     * snapshot TTL are saved, so they are also used when they are no longer
+     * in memory, or after a restart (until their TTL expires).
+     * 
+     * @param dir the directory, created if it does not exist.  null to keep
+     * the snapshots in memory only (the default).
+     * @return false if the directory could not be created
+     */
+    public static boolean setDataSnapshotDir(String dir) {
+        try {
+            DATA_SNAPSHOTS.setDirectory(dir == null || dir.trim().isEmpty() ? null : new File(dir));
+            logger.info("Data snapshots will be saved to " + (dir == null ? "memory only" : dir));
+            return true;
+        } catch (java.io.IOException ex) {
+            logger.error("Failed to set the data snapshot directory", ex);
+            return false;
+        }
+    }
+    
+    
+    /**
+     * @param maxEntries max number of data snapshots kept in memory, default
+     * is 32
+     */
+    public static void setDataSnapshotLimit(int maxEntries) {
+        if (maxEntries < 0) {
+            throw new InvalidParameterException("Data snapshot limit may not be less than 0!");
+        }
+        DATA_SNAPSHOTS.setMaxEntries(maxEntries);
+        logger.info("Data snapshot limit set to " + maxEntries);
+    }
+    
+    
+    static DataSnapshotCache getDataSnapshotCache() {
+        return DATA_SNAPSHOTS;
+    }
+    
+    
+    /**
+     * If true the subreports are filled on a pool of threads shared by all
+     * fills, each with its own pooled connection, instead of on a new thread
+     * (and the report's connection) for each subreport fill.  This helps
+     * reports with a subreport in the detail band, or several subreports
+     * that each run a query.  Default is false, a report can override it with
+     * {@link JasperReportImpl#setPooledSubreports(Boolean)}.
+     * 
+     * @param pooled 
+     */
+    public static void setPooledSubreports(boolean pooled) {
+        pooledSubreports = pooled;
+        logger.info("Filling subreports on pooled threads: " + pooled);
+    }
+    
+    
+    public static boolean isPooledSubreports() {
+        return pooledSubreports;
+    }
+    
+    
+    /**
+     * Sets how many subreport threads are kept for reuse when subreports are
+     * pooled.  A subreport that starts while all of them are busy gets a new
+     * thread of its own.
+     * 
+     * @param threads at least 1, default is the number of processors
+     */
+    public static void setSubreportThreads(int threads) {
+        PooledSubreportRunnerFactory.setMaxThreads(threads);
+        logger.info("Subreport threads set to " + threads);
+    }
+    
+    
+    public static int getSubreportThreads() {
+        return PooledSubreportRunnerFactory.getMaxThreads();
+    }
+    
+    
+    /**
+     * Sets a directory where compiled reports are saved (as .jasper files), so
+     * after a restart a report is loaded from there instead of being compiled
+     * again.  A saved report is only used if the .jrxml file and the
+     * JasperReports version have not changed since it was compiled.
+     * 
+     * @param dir the directory, created if it does not exist.  null to stop
+     * saving compiled reports (the default).
+     * @return false if the directory could not be created
+     */
+    public static boolean setCompiledReportDir(String dir) {
+        if (dir == null || dir.trim().isEmpty()) {
+            REPORT_CACHE.setStore(null);
+            logger.info("Compiled reports will not be saved to disk");
+            return true;
+        }
+        try {
+            REPORT_CACHE.setStore(new CompiledReportStore(new File(dir)));
+            logger.info("Compiled reports will be saved to " + dir);
+            return true;
+        } catch (java.io.IOException ex) {
+            logger.error("Failed to set the compiled report directory", ex);
+            return false;
+        }
+    }
+    
+    
+    /**
+     * @return user-readable summary of the compiled report cache (size, hits,
+     * misses and compile times), used by the STATUS command.
+     */
+    public static String getReportCacheStatus() {
+        return REPORT_CACHE.getStatusMessage() + "\n" + RESULT_CACHE.getStatusMessage()
+                + "\n" + DATA_SNAPSHOTS.getStatusMessage();
+    }
+
+    /**
+     * @return the number of reports waiting for a free worker
+     */
+    public static int getQueueDepth() {
+        return EXECUTOR_SERVICE.getQueueDepth();
+    }
+    
+    
     /**
      * Another fancy threading method to set focus to desired component
      * (dialog).
@@ -536,9 +1193,10 @@ public class ReportManager {
     
     /**
      * Programmer should always call this before exiting, preferably with force
-     * = false, which causes this to wait until all reports have been executed.
-     * Shuts down the SingleThreadExecutorService that actually executes the
-     * reports.
+     * = false, which causes this to wait until all queued reports have been
+     * executed.  Shuts down the worker pool that actually executes the
+     * reports; with force = true the queued reports are canceled and the
+     * running ones interrupted.
      * <p>
      * This also calls {@link ConnectionManager.unregisterAllConnections()} to
      * shut down the database connections.
@@ -549,12 +1207,8 @@ public class ReportManager {
 
         logger.info("ReportManager.shutdown(force=" + force + ") was called");
         try {
-            if (force) {
-                EXECUTOR_SERVICE.shutdownNow();
-            } else {
-                EXECUTOR_SERVICE.shutdown();
-                EXECUTOR_SERVICE.awaitTermination(10, TimeUnit.MINUTES);
-            }
+            EXECUTOR_SERVICE.shutdown(force);
+            FILE_WATCHER.close();
 
             ReportConnectionManager.unregisterAllConnections();
 
@@ -0,0 +1,527 @@
+/*
+ * Copyright (C) 2018 Joseph A Miller
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ticktockdata.jasper;
+
+import com.ticktockdata.jasper.PrintExecutor.Action;
+import com.ticktockdata.jasper.PrintStatusEvent.StatusCode;
+import com.ticktockdata.jasper.ReportManager.RejectionPolicy;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static com.ticktockdata.jasper.ReportManager.logger;
+
+/**
+ * Runs the reports handed to {@link ReportManager#executeReport(JasperReportImpl)}
+ * on a bounded pool of worker threads.
+ * <p>
+ * Jobs are held in bounded pending queues and only handed to a worker thread
+ * when one is free, so the decision of which job runs next is made here and
+ * not by the {@link ThreadPoolExecutor}:
+ * <ol>
+ * <li>Each connection ID has its own queue, and the next job is taken from
+ * the connection that has the fewest jobs running (fair share), so one
+ * connection cannot starve the others.  A connection that has reached its
+ * limit of concurrent jobs is skipped.
+ * <li>Within a connection the job with the highest
+ * {@link JasperReportImpl#getPriority()} runs first, then interactive actions
+ * (PREVIEW, then PRINT) before exports, then first come first served.
+ * </ol>
+ * When the pending queue is full the {@link ReportManager.RejectionPolicy}
+ * decides what happens.
+ * <p>
+ * This class is used only by the ReportManager.
+ *
+ * @since Oct 18, 2026
+ */
+final class ReportScheduler {
+
+    /**
+     * A report waiting in the queue
+     */
+    private static final class QueuedJob {
+
+        final JasperReportImpl report;
+        final int priority;
+        final int actionRank;
+        final long sequence;
+        final long queuedAt = System.currentTimeMillis();
+        /**
+         * false until the QUEUED event has been fired, so a job can not be
+         * STARTED before it is QUEUED
+         */
+        boolean ready = false;
+
+        QueuedJob(JasperReportImpl report, long sequence) {
+            this.report = report;
+            this.priority = report.getPriority();
+            this.actionRank = getActionRank(report.getPrintAction());
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Higher priority first, then higher action rank, then oldest first
+     */
+    private static final Comparator<QueuedJob> JOB_ORDER = (QueuedJob a, QueuedJob b) -> {
+        if (a.priority != b.priority) {
+            return Integer.compare(b.priority, a.priority);
+        }
+        if (a.actionRank != b.actionRank) {
+            return Integer.compare(b.actionRank, a.actionRank);
+        }
+        return Long.compare(a.sequence, b.sequence);
+    };
+
+    /**
+     * Interactive actions rank above exports, as a user is waiting on them.
+     *
+     * @param action
+     * @return
+     */
+    private static int getActionRank(Action action) {
+        if (action == null) {
+            return 0;
+        }
+        switch (action) {
+            case PREVIEW:
+                return 2;
+            case PRINT:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+    private final Object lock = new Object();
+    private final ThreadPoolExecutor workers;
+    /**
+     * pending jobs per connection ID
+     */
+    private final Map<String, PriorityQueue<QueuedJob>> pending = new LinkedHashMap<>();
+    private final Map<String, Integer> running = new HashMap<>();
+    private final Map<String, Integer> limits = new HashMap<>();
+    /**
+     * value of startCount when each connection ID last started a job, used
+     * to break ties between connections in round-robin order
+     */
+    private final Map<String, Long> lastStarted = new HashMap<>();
+
+    private int poolSize;
+    private int queueCapacity;
+    private int pendingTotal = 0;
+    private int runningTotal = 0;
+    private long sequence = 0;
+    private long startCount = 0;
+    private long completedTotal = 0;
+    private long rejectedTotal = 0;
+    private long waitTimeTotal = 0;
+    private RejectionPolicy rejectionPolicy = RejectionPolicy.REJECT;
+    private boolean shutdown = false;
+
+    /**
+     * @param poolSize number of reports that may execute at the same time
+     * @param queueCapacity max number of jobs waiting for a free worker
+     */
+    ReportScheduler(int poolSize, int queueCapacity) {
+
+        this.poolSize = Math.max(1, poolSize);
+        this.queueCapacity = Math.max(1, queueCapacity);
+
+        final AtomicInteger threadCount = new AtomicInteger(0);
+        ThreadFactory factory = (Runnable r) -> {
+            Thread t = new Thread(r, "ReportWorker-" + threadCount.incrementAndGet());
+            t.setDaemon(false);
+            return t;
+        };
+
+        // the executor's own queue stays empty, jobs are only handed over
+        // when there is an idle worker for them.
+        workers = new ThreadPoolExecutor(this.poolSize, this.poolSize,
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), factory);
+        workers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Adds a report to the pending queue, fires the QUEUED event and starts
+     * the report right away if a worker is available.
+     *
+     * @param report
+     * @return false if the report was rejected (queue full or shut down)
+     */
+    boolean submit(JasperReportImpl report) {
+
+        QueuedJob discarded = null;
+        QueuedJob job;
+
+        synchronized (lock) {
+            if (shutdown) {
+                logger.warn("ReportScheduler is shut down, rejected report " + report.getReportPath());
+                rejectedTotal++;
+                return false;
+            }
+            if (pendingTotal >= queueCapacity) {
+                if (rejectionPolicy == RejectionPolicy.DISCARD_OLDEST) {
+                    discarded = removeOldest();
+                } else {
+                    logger.warn("Report queue is full (" + queueCapacity + "), rejected report " + report.getReportPath());
+                    rejectedTotal++;
+                    return false;
+                }
+            }
+            job = new QueuedJob(report, ++sequence);
+            pending.computeIfAbsent(report.getConnectionID(), k -> new PriorityQueue<>(JOB_ORDER)).add(job);
+            pendingTotal++;
+        }
+
+        if (discarded != null) {
+            logger.warn("Report queue is full (" + queueCapacity + "), discarded oldest report " + discarded.report.getReportPath());
+            discarded.report.firePrintStatusChanged(StatusCode.CANCELED);
+        }
+
+        report.firePrintStatusChanged(StatusCode.QUEUED);
+
+        synchronized (lock) {
+            job.ready = true;
+            dispatch();
+        }
+        return true;
+    }
+
+    /**
+     * Removes the job that has been waiting longest.  Must be called while
+     * holding the lock.
+     *
+     * @return the removed job, or null if nothing is queued
+     */
+    private QueuedJob removeOldest() {
+        QueuedJob oldest = null;
+        for (PriorityQueue<QueuedJob> q : pending.values()) {
+            for (QueuedJob j : q) {
+                if (oldest == null || j.sequence < oldest.sequence) {
+                    oldest = j;
+                }
+            }
+        }
+        if (oldest != null) {
+            removePending(oldest);
+        }
+        return oldest;
+    }
+
+    /**
+     * Removes a job from its connection's pending queue, and the queue itself
+     * once it is empty so the map does not keep a queue for every connection
+     * ever used.  Must be called while holding the lock.
+     *
+     * @param job
+     */
+    private void removePending(QueuedJob job) {
+        String id = job.report.getConnectionID();
+        PriorityQueue<QueuedJob> q = pending.get(id);
+        if (q != null && q.remove(job)) {
+            pendingTotal--;
+            if (q.isEmpty()) {
+                pending.remove(id);
+            }
+        }
+    }
+
+    /**
+     * Hands pending jobs to the worker pool while there are free workers.
+     * Must be called while holding the lock.
+     */
+    private void dispatch() {
+
+        while (runningTotal < poolSize && pendingTotal > 0) {
+            QueuedJob next = selectNext();
+            if (next == null) {
+                // everything pending is waiting on its connection limit
+                return;
+            }
+            removePending(next);
+            startJob(next);
+        }
+    }
+
+    /**
+     * Picks the job to run next: from the connection with the fewest running
+     * jobs, ties going to the connection whose next job ranks highest, then
+     * to the connection that least recently started a job.
+     *
+     * @return null if no job can be started
+     */
+    private QueuedJob selectNext() {
+
+        QueuedJob best = null;
+        int bestRunning = 0;
+
+        for (Map.Entry<String, PriorityQueue<QueuedJob>> e : pending.entrySet()) {
+            String id = e.getKey();
+            QueuedJob head = e.getValue().peek();
+            if (head == null || !head.ready || !isBelowLimit(id)) {
+                continue;
+            }
+            int r = running.getOrDefault(id, 0);
+            if (best == null || r < bestRunning) {
+                best = head;
+                bestRunning = r;
+            } else if (r == bestRunning) {
+                int cmp = JOB_ORDER.compare(head, best);
+                if (cmp == 0 || (head.priority == best.priority && head.actionRank == best.actionRank)) {
+                    // same rank, take turns between the connections
+                    cmp = Long.compare(lastStarted.getOrDefault(id, 0L),
+                            lastStarted.getOrDefault(best.report.getConnectionID(), 0L));
+                }
+                if (cmp < 0) {
+                    best = head;
+                }
+            }
+        }
+        return best;
+    }
+
+    private boolean isBelowLimit(String connectionID) {
+        Integer limit = limits.get(connectionID);
+        return limit == null || running.getOrDefault(connectionID, 0) < limit;
+    }
+
+    private void startJob(final QueuedJob job) {
+
+        final JasperReportImpl report = job.report;
+        final String id = report.getConnectionID();
+        final long waited = System.currentTimeMillis() - job.queuedAt;
+        running.merge(id, 1, Integer::sum);
+        runningTotal++;
+        waitTimeTotal += waited;
+        lastStarted.put(id, ++startCount);
+        report.setQueueWaitTime(waited);
+
+        workers.execute(() -> {
+            try {
+                report.run();
+            } catch (Throwable ex) {
+                logger.error("Uncaught error while running report " + report.getReportPath(), ex);
+            } finally {
+                synchronized (lock) {
+                    // drop the count at 0, like the pending queues
+                    running.merge(id, -1, (a, b) -> (a + b == 0 ? null : a + b));
+                    runningTotal--;
+                    completedTotal++;
+                    if (!workers.isShutdown()) {
+                        dispatch();
+                    }
+                    lock.notifyAll();
+                }
+            }
+        });
+    }
+
+    /**
+     * Sets the number of reports that may execute at the same time.
+     *
+     * @param size must be at least 1
+     */
+    void setPoolSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Worker pool size must be at least 1, was " + size);
+        }
+        synchronized (lock) {
+            if (size > workers.getMaximumPoolSize()) {
+                workers.setMaximumPoolSize(size);
+                workers.setCorePoolSize(size);
+            } else {
+                workers.setCorePoolSize(size);
+                workers.setMaximumPoolSize(size);
+            }
+            poolSize = size;
+            dispatch();
+        }
+    }
+
+    int getPoolSize() {
+        synchronized (lock) {
+            return poolSize;
+        }
+    }
+
+    void setQueueCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be at least 1, was " + capacity);
+        }
+        synchronized (lock) {
+            queueCapacity = capacity;
+        }
+    }
+
+    int getQueueCapacity() {
+        synchronized (lock) {
+            return queueCapacity;
+        }
+    }
+
+    void setRejectionPolicy(RejectionPolicy policy) {
+        synchronized (lock) {
+            rejectionPolicy = (policy == null ? RejectionPolicy.REJECT : policy);
+        }
+    }
+
+    /**
+     * Limits the number of reports that may run at the same time on a
+     * connection.
+     *
+     * @param connectionID
+     * @param max zero or less removes the limit
+     */
+    void setConnectionLimit(String connectionID, int max) {
+        synchronized (lock) {
+            if (max <= 0) {
+                limits.remove(connectionID);
+            } else {
+                limits.put(connectionID, max);
+            }
+            dispatch();
+        }
+    }
+
+    /**
+     * @return number of jobs waiting for a worker
+     */
+    int getQueueDepth() {
+        synchronized (lock) {
+            return pendingTotal;
+        }
+    }
+
+    /**
+     * @return number of jobs currently running
+     */
+    int getRunningCount() {
+        synchronized (lock) {
+            return runningTotal;
+        }
+    }
+
+    /**
+     * Blocks until there are no pending or running jobs, or until the timeout
+     * expires.
+     *
+     * @param timeout
+     * @param unit
+     * @return true if all jobs completed
+     * @throws InterruptedException
+     */
+    boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+        synchronized (lock) {
+            while (runningTotal > 0 || pendingTotal > 0) {
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    return false;
+                }
+                lock.wait(wait);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Stops accepting new jobs.  If force is false then the jobs already
+     * queued are allowed to finish (for up to 10 minutes), otherwise the
+     * pending jobs are canceled and the workers are interrupted.
+     *
+     * @param force
+     */
+    void shutdown(boolean force) {
+
+        List<JasperReportImpl> canceled = new ArrayList<>();
+
+        synchronized (lock) {
+            shutdown = true;
+            if (force) {
+                for (PriorityQueue<QueuedJob> q : pending.values()) {
+                    for (QueuedJob j : q) {
+                        canceled.add(j.report);
+                    }
+                }
+                pending.clear();
+                pendingTotal = 0;
+            }
+        }
+
+        for (JasperReportImpl r : canceled) {
+            r.firePrintStatusChanged(StatusCode.CANCELED);
+        }
+
+        try {
+            if (force) {
+                workers.shutdownNow();
+            } else {
+                if (!awaitIdle(10, TimeUnit.MINUTES)) {
+                    logger.warn("Timed out waiting for queued reports to finish, " + getQueueDepth() + " still pending");
+                }
+                workers.shutdown();
+                workers.awaitTermination(1, TimeUnit.MINUTES);
+            }
+        } catch (InterruptedException ex) {
+            logger.warn("Interrupted while waiting for the report workers to finish");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return user-readable summary of the scheduler, for the STATUS command
+     */
+    String getStatusMessage() {
+        synchronized (lock) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("Report workers: ").append(runningTotal).append(" running of ")
+                    .append(poolSize).append(", ").append(pendingTotal)
+                    .append(" queued (capacity ").append(queueCapacity).append("), ")
+                    .append(completedTotal).append(" completed, ")
+                    .append(rejectedTotal).append(" rejected");
+            long started = completedTotal + runningTotal;
+            if (started > 0) {
+                sb.append(", average wait ").append(waitTimeTotal / started).append(" ms");
+            }
+            List<String> ids = new ArrayList<>(pending.keySet());
+            for (String id : limits.keySet()) {
+                if (!ids.contains(id)) {
+                    ids.add(id);
+                }
+            }
+            for (String id : ids) {
+                sb.append("\nConnection ").append(id).append(": ")
+                        .append(running.getOrDefault(id, 0)).append(" running, ")
+                        .append(pending.containsKey(id) ? pending.get(id).size() : 0).append(" queued");
+                if (limits.containsKey(id)) {
+                    sb.append(", limit ").append(limits.get(id));
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2018 Joseph A Miller
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ticktockdata.jasper;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import static com.ticktockdata.jasper.ReportManager.logger;
+
+/**
+ * The connection of a fill whose subreports are filled by the
+ * {@link PooledSubreportRunnerFactory}.  It is passed to the fill (and so is
+ * the REPORT_CONNECTION of the report and its subreports) in place of the
+ * fill's own connection.
+ * <p>
+ * Used on the fill's thread it is the fill's connection.  Used on a subreport
+ * thread it is a connection borrowed from the pool for that thread, with the
+ * connection's {@link QueryProfile} applied, which is returned when the
+ * subreport is filled.  If the pool has no free connection the fill's
+ * connection is used, so a subreport never waits for a connection.
+ * <p>
+ * Closing it returns the fill's connection (and any that were not returned
+ * yet).
+ *
+ * @since Oct 18, 2026
+ */
+final class SubreportConnection implements InvocationHandler {
+
+    /**
+     * true on a thread that is filling a subreport
+     */
+    private static final ThreadLocal<Boolean> IN_SUBREPORT = new ThreadLocal<>();
+    /**
+     * the SubreportConnections that lent a connection to this thread
+     */
+    private static final ThreadLocal<List<SubreportConnection>> LENDERS = new ThreadLocal<>();
+
+    private final Connection fillConnection;
+    private final String connectionID;
+    private final Map<Thread, Connection> lent = new ConcurrentHashMap<>();
+    private volatile boolean closed = false;
+
+    private SubreportConnection(Connection fillConnection, String connectionID) {
+        this.fillConnection = fillConnection;
+        this.connectionID = connectionID;
+    }
+
+    /**
+     * @param fillConnection the fill's connection, closed when the returned
+     * connection is closed
+     * @param connectionID identifier of the connection the subreport
+     * connections are borrowed from
+     * @return
+     */
+    static Connection wrap(Connection fillConnection, String connectionID) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new SubreportConnection(fillConnection, connectionID));
+    }
+
+    /**
+     * Called by a subreport thread before it fills the subreport
+     */
+    static void enterSubreport() {
+        IN_SUBREPORT.set(Boolean.TRUE);
+    }
+
+    /**
+     * Called by a subreport thread when the subreport is filled, returns the
+     * connections it borrowed.
+     */
+    static void exitSubreport() {
+        IN_SUBREPORT.remove();
+        List<SubreportConnection> lenders = LENDERS.get();
+        LENDERS.remove();
+        if (lenders != null) {
+            for (SubreportConnection sc : lenders) {
+                sc.giveBack(Thread.currentThread());
+            }
+        }
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+
+        switch (method.getName()) {
+            case "close":
+                close();
+                return null;
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "SubreportConnection " + connectionID + " " + fillConnection;
+            default:
+                break;
+        }
+        try {
+            return method.invoke(getConnection(), args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    /**
+     * @return the connection of the current thread
+     */
+    private Connection getConnection() {
+
+        if (closed || IN_SUBREPORT.get() == null) {
+            return fillConnection;
+        }
+        Thread thread = Thread.currentThread();
+        Connection conn = lent.get(thread);
+        if (conn != null) {
+            return conn;
+        }
+        try {
+            conn = ReportManager.tryGetFillConnection(connectionID);
+        } catch (SQLException | RuntimeException ex) {
+            logger.debug("Could not borrow a connection for a subreport, using the report's connection", ex);
+        }
+        if (conn == null) {
+            // the pool is busy, do not wait for it
+            conn = fillConnection;
+        }
+        lent.put(thread, conn);
+        List<SubreportConnection> lenders = LENDERS.get();
+        if (lenders == null) {
+            lenders = new ArrayList<>(2);
+            LENDERS.set(lenders);
+        }
+        lenders.add(this);
+        return conn;
+    }
+
+    /**
+     * Returns the connection lent to the thread
+     */
+    private void giveBack(Thread thread) {
+        Connection conn = lent.remove(thread);
+        if (conn != null && conn != fillConnection) {
+            closeQuietly(conn);
+        }
+    }
+
+    private void close() {
+        closed = true;
+        for (Thread thread : lent.keySet()) {
+            giveBack(thread);
+        }
+        closeQuietly(fillConnection);
+    }
+
+    private static void closeQuietly(Connection conn) {
+        try {
+            conn.close();
+        } catch (SQLException ex) {
+            logger.warn("Error returning a subreport connection", ex);
+        }
+    }
+
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2018 Joseph A Miller
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ticktockdata.jasper;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import net.sf.jasperreports.engine.JRExpression;
+import net.sf.jasperreports.engine.JRSubreport;
+import net.sf.jasperreports.engine.JasperReport;
+import net.sf.jasperreports.engine.util.JRElementsVisitor;
+import net.sf.jasperreports.engine.util.JRVisitorSupport;
+import net.sf.jasperreports.repo.ReportResource;
+import net.sf.jasperreports.repo.RepositoryService;
+import net.sf.jasperreports.repo.Resource;
+import static com.ticktockdata.jasper.ReportManager.logger;
+
+/**
+ * Keeps track of the subreports used by the cached reports, and supplies
+ * them to JasperReports from the ReportManager's cache of compiled reports
+ * instead of letting it load the .jasper file again on every fill.
+ * <p>
+ * A subreport is found from the subreport expression of the master, which
+ * must be of the form <code>$P{SUBREPORT_DIR} + "name.jasper"</code> (or a
+ * literal absolute path).  If there is a name.jrxml next to the name.jasper,
+ * and it is newer, the .jrxml is compiled and used.  Subreports using any
+ * other expression are left to JasperReports.
+ * <p>
+ * This is registered as the first {@link RepositoryService} of the
+ * ReportManager's JasperReportsContext, it only answers for the subreport
+ * locations it knows about.
+ * <p>
+ * This class is used only by the ReportManager.
+ *
+ * @since Oct 18, 2026
+ */
+final class SubreportRepository implements RepositoryService {
+
+    private static final Pattern SUBREPORT_EXPRESSION
+            = Pattern.compile("^\\s*(\\$P\\{SUBREPORT_DIR\\}\\s*\\+\\s*)?\"([^\"\\\\]+)\"\\s*$");
+
+    /**
+     * the source file (.jrxml or .jasper) for each subreport location
+     */
+    private final Map<String, File> locations = new ConcurrentHashMap<>();
+    /**
+     * cache key of a subreport source, and the keys of the reports that use it
+     */
+    private final Map<String, Set<String>> dependents = new ConcurrentHashMap<>();
+    /**
+     * the compiled report that the subreports were last found from
+     */
+    private final Map<String, WeakReference<JasperReport>> scanned = new ConcurrentHashMap<>();
+
+    /**
+     * Finds the subreports of a report, unless they were already found for
+     * this (compiled) report.
+     *
+     * @param key the cache key of the report
+     * @param report the compiled report
+     * @param dir the directory of the report, which is its SUBREPORT_DIR
+     * @return the source files of the subreports, empty if already scanned
+     */
+    List<File> scan(String key, JasperReport report, File dir) {
+
+        List<File> sources = new ArrayList<>();
+        WeakReference<JasperReport> last = scanned.get(key);
+        if (last != null && last.get() == report) {
+            return sources;
+        }
+        scanned.put(key, new WeakReference<>(report));
+
+        final List<JRExpression> expressions = new ArrayList<>();
+        JRElementsVisitor.visitReport(report, new JRVisitorSupport() {
+            @Override
+            public void visitSubreport(JRSubreport subreport) {
+                if (subreport.getExpression() != null) {
+                    expressions.add(subreport.getExpression());
+                }
+            }
+        });
+
+        for (JRExpression expression : expressions) {
+            Matcher m = SUBREPORT_EXPRESSION.matcher(expression.getText());
+            if (!m.matches()) {
+                logger.debug("Subreport of " + key + " left to JasperReports: " + expression.getText());
+                continue;
+            }
+            File location = (m.group(1) != null ? new File(dir, m.group(2)) : new File(m.group(2)));
+            if (!location.isAbsolute()) {
+                continue;
+            }
+            File source = findSource(location);
+            if (source == null) {
+                logger.warn("Subreport of " + key + " not found: " + location);
+                continue;
+            }
+            locations.put(location.getAbsolutePath(), source);
+            dependents.computeIfAbsent(source.getAbsolutePath(), k -> ConcurrentHashMap.newKeySet()).add(key);
+            if (!sources.contains(source)) {
+                sources.add(source);
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * The .jrxml if it exists and is not older than the .jasper, otherwise
+     * the .jasper.
+     */
+    private static File findSource(File location) {
+        String base = location.getAbsolutePath().replaceFirst("(?i)\\.(jasper|jrxml)$", "");
+        File jrxml = new File(base + ".jrxml");
+        File jasper = new File(base + ".jasper");
+        long jrxmlModified = jrxml.lastModified();  // 0 if not exist
+        long jasperModified = jasper.lastModified();
+        if (jrxmlModified > 0 && jrxmlModified >= jasperModified) {
+            return jrxml;
+        }
+        return (jasperModified > 0 ? jasper : null);
+    }
+
+    /**
+     * @param location subreport location as evaluated by the fill
+     * @return the source file of the subreport, or null if not known
+     */
+    File getSource(String location) {
+        return locations.get(new File(location).getAbsolutePath());
+    }
+
+    /**
+     * @param key cache key of a report or subreport
+     * @return the keys of all the reports that use it, directly or through
+     * other subreports
+     */
+    Set<String> getDependents(String key) {
+        Set<String> result = new HashSet<>();
+        Deque<String> todo = new ArrayDeque<>();
+        todo.add(key);
+        while (!todo.isEmpty()) {
+            Set<String> users = dependents.get(todo.poll());
+            if (users != null) {
+                for (String user : users) {
+                    if (result.add(user)) {
+                        todo.add(user);
+                    }
+                }
+            }
+        }
+        result.remove(key);
+        return result;
+    }
+
+    /**
+     * Forgets the subreports found for the report, so they are found again
+     * the next time it is loaded.
+     *
+     * @param key
+     */
+    void forget(String key) {
+        scanned.remove(key);
+        for (Set<String> users : dependents.values()) {
+            users.remove(key);
+        }
+    }
+
+    void clear() {
+        scanned.clear();
+        dependents.clear();
+        locations.clear();
+    }
+
+    @Override
+    public Resource getResource(String uri) {
+        return getResource(uri, ReportResource.class);
+    }
+
+    @Override
+    public void saveResource(String uri, Resource resource) {
+        throw new UnsupportedOperationException("Subreports can not be saved to the ReportManager");
+    }
+
+    @Override
+    public <K extends Resource> K getResource(String uri, Class<K> resourceType) {
+
+        if (uri == null || !resourceType.isAssignableFrom(ReportResource.class)) {
+            return null;
+        }
+        JasperReport report = ReportManager.getSubreport(uri);
+        if (report == null) {
+            return null;
+        }
+        ReportResource resource = new ReportResource();
+        resource.setReport(report);
+        return resourceType.cast(resource);
+    }
+
+}
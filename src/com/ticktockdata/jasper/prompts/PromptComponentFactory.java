@@ -5,6 +5,7 @@ import com.ticktockdata.jasper.JasperReportImpl;
 import com.ticktockdata.jasper.ReportManager;
 import com.ticktockdata.jasper.TestPrint;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
@@ -20,7 +21,7 @@ import org.apache.log4j.Logger;
  */
 public final class PromptComponentFactory {
     
-    private static final Map<String, PromptComponent> promptMap = new WeakHashMap<String, PromptComponent>();
+    private static final Map<String, PromptComponent> promptMap = Collections.synchronizedMap(new WeakHashMap<String, PromptComponent>());
     
     /**
      * Private constructor prevents creating an instance of this class
@@ -143,6 +143,11 @@ public class QueryComboBoxModel<T> extends DefaultComboBoxModel<String> {
                     stmt.close();
                 }
                 stmt = null;
+                // returns it to the pool
+                if (conn != null) {
+                    conn.close();
+                }
+                conn = null;
             } catch (Exception ex) {
                 logger.error("Error closing connection: " + ex.toString(), ex);
             }
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2018 Joseph A Miller
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ticktockdata.jasperserver;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Writes the output of a PRINT with --return true to the client as chunks,
+ * each a 4 byte (big-endian) length followed by that many bytes.  A chunk of
+ * length 0 ends the output, the status lines follow it as usual.
+ * <p>
+ * {@link #copy(InputStream, OutputStream)} reads the chunks on the client.
+ *
+ * @since Oct 18, 2026
+ */
+final class ChunkedOutputStream extends OutputStream {
+
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    private final OutputStream out;
+    private final byte[] buf = new byte[CHUNK_SIZE];
+    private int count = 0;
+    private long total = 0;
+    private boolean finished = false;
+
+    /**
+     * @param out where the chunks are written, it is not closed
+     */
+    ChunkedOutputStream(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+        checkOpen();
+        if (count == buf.length) {
+            writeChunk();
+        }
+        buf[count++] = (byte) b;
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        checkOpen();
+        while (len > 0) {
+            if (count == buf.length) {
+                writeChunk();
+            }
+            int n = Math.min(len, buf.length - count);
+            System.arraycopy(b, off, buf, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Sends the chunk written so far
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        if (!finished && count > 0) {
+            writeChunk();
+        }
+        out.flush();
+    }
+
+    /**
+     * Sends the rest of the output and the end chunk, does nothing if already
+     * finished.
+     *
+     * @throws IOException
+     */
+    synchronized void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        if (count > 0) {
+            writeChunk();
+        }
+        finished = true;
+        writeInt(0);
+        out.flush();
+    }
+
+    /**
+     * Same as finish(), the underlying stream is not closed
+     */
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+
+    synchronized boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * @return bytes written, without the chunk lengths
+     */
+    synchronized long getTotal() {
+        return total;
+    }
+
+    private void checkOpen() throws IOException {
+        if (finished) {
+            throw new IOException("The returned output is already finished");
+        }
+    }
+
+    private void writeChunk() throws IOException {
+        writeInt(count);
+        out.write(buf, 0, count);
+        total += count;
+        count = 0;
+    }
+
+    private void writeInt(int v) throws IOException {
+        out.write(new byte[]{(byte) (v >>> 24), (byte) (v >>> 16), (byte) (v >>> 8), (byte) v});
+    }
+
+    /**
+     * Reads chunks until the end chunk.
+     *
+     * @param in the stream from the server, positioned at the first chunk
+     * @param out where the output is written, it is not closed
+     * @return number of bytes copied
+     * @throws IOException if the stream ends before the end chunk
+     */
+    static long copy(InputStream in, OutputStream out) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        byte[] b = new byte[8192];
+        long total = 0;
+        int len;
+        while ((len = data.readInt()) > 0) {
+            if (len > CHUNK_SIZE) {
+                throw new IOException("Invalid chunk length " + len + ", is this the output of --return?");
+            }
+            while (len > 0) {
+                int n = data.read(b, 0, Math.min(len, b.length));
+                if (n < 0) {
+                    throw new IOException("The returned output ended in a chunk");
+                }
+                out.write(b, 0, n);
+                len -= n;
+                total += n;
+            }
+        }
+        if (len < 0) {
+            throw new IOException("Invalid chunk length " + len + ", is this the output of --return?");
+        }
+        out.flush();
+        return total;
+    }
+
+}
@@ -25,6 +25,7 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.Socket;
 
@@ -35,6 +36,7 @@ import java.net.Socket;
  */
 public class Client extends Socket {
 
+    private BufferedInputStream inputStream = null;
     private BufferedReader input = null;
     private PrintWriter output = null;
     
@@ -47,7 +49,7 @@ public class Client extends Socket {
     public BufferedReader getReader() {
         if (input == null && !isClosed()) {
             try {
-                input = new  BufferedReader(new InputStreamReader(new BufferedInputStream(this.getInputStream())));
+                input = new  BufferedReader(new InputStreamReader(getBufferedInput()));
             } catch (Exception ex) {
                 LOGGER.warn("InputStream is not available: " + ex.toString());
                 input = null;
@@ -57,6 +59,30 @@ public class Client extends Socket {
     }
     
     
+    private BufferedInputStream getBufferedInput() throws IOException {
+        if (inputStream == null) {
+            inputStream = new BufferedInputStream(this.getInputStream());
+        }
+        return inputStream;
+    }
+    
+    
+    /**
+     * Reads the output returned by a PRINT command with --return true and
+     * writes it to out, as it arrives.  Must be called before any line is
+     * read, the status lines follow the output.
+     * @param out the stream to write to, it is not closed
+     * @return number of bytes written
+     * @throws IOException if the connection ends before all of the output
+     */
+    public long readReturned(OutputStream out) throws IOException {
+        if (input != null) {
+            throw new IOException("Lines were read already, the returned output is lost");
+        }
+        return ChunkedOutputStream.copy(getBufferedInput(), out);
+    }
+    
+    
     /**
      * gets a PrintWriter from the OutputStream, which is buffered by a
      * BufferedOutputStream
@@ -154,6 +180,7 @@ public class Client extends Socket {
     @Override
     public synchronized void close() throws IOException {
         // set variables null
+        inputStream = null;
         input = null;
         output = null;
         super.close();
@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2018 Joseph A Miller
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ticktockdata.jasperserver;
+
+import com.ticktockdata.jasperserver.PrintServer.Command;
+import com.ticktockdata.jasperserver.ServerManager.MessageType;
+import static com.ticktockdata.jasperserver.ServerManager.LOGGER;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of SESSION connections to a PrintServer, for programs that send
+ * many commands.  Each connection stays open and carries many requests at
+ * the same time, tagged with request IDs, so submitting many print jobs
+ * does not open a socket for each.
+ * <p>
+ * A request is sent on the open connection with the fewest requests
+ * waiting for a reply, a new connection is opened (up to the max) only when
+ * all are busy.  The replies come back in the order the requests complete.
+ * <p>
+ * Example:
+ * <pre>
+ * try (ClientPool pool = new ClientPool("localhost", 35246, 2)) {
+ *     List&lt;CompletableFuture&lt;String&gt;&gt; replies = new ArrayList&lt;&gt;();
+ *     for (String id : ids) {
+ *         replies.add(pool.submit("PRINT", "-f", "/reports/statement.jrxml",
+ *                 "-pa", "LONG", "customer_id", id));
+ *     }
+ *     for (CompletableFuture&lt;String&gt; reply : replies) {
+ *         System.out.println(reply.get());
+ *     }
+ * }
+ * </pre>
+ *
+ * @since Oct 18, 2026
+ */
+public class ClientPool implements Closeable {
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private final String host;
+    private final int port;
+    private final int maxConnections;
+    private final List<Session> sessions = new ArrayList<>();
+    private final AtomicLong nextID = new AtomicLong();
+    private boolean closed = false;
+
+    /**
+     * One SESSION connection, replies are read on its own thread
+     */
+    private final class Session extends Thread {
+
+        private final Client client;
+        private final PrintWriter writer;
+        private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+        private volatile boolean open = true;
+
+        private Session() throws IOException {
+            super("JasperPrint-client-" + THREAD_COUNT.incrementAndGet());
+            setDaemon(true);
+            client = new Client(host, port);
+            writer = client.getWriter();
+            if (writer == null || client.getReader() == null) {
+                client.close();
+                throw new IOException("Could not open the streams of " + host + ":" + port);
+            }
+            client.println(Command.SESSION.toString());
+            String reply = client.getReader().readLine();
+            if (reply == null || !reply.startsWith(MessageType.INFO.toString())) {
+                client.close();
+                throw new IOException("The PrintServer at " + host + ":" + port
+                        + " does not support sessions: " + reply);
+            }
+        }
+
+        private void send(String id, Pending p, String command, String... args) throws IOException {
+            pending.put(id, p);
+            synchronized (writer) {
+                writer.println(id + " " + command);
+                for (String a : args) {
+                    writer.println(a);
+                }
+                writer.println(";");
+                writer.flush();
+                if (writer.checkError()) {
+                    pending.remove(id);
+                    throw new IOException("Could not send the request to " + host + ":" + port);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                String line;
+                while ((line = client.getReader().readLine()) != null) {
+                    int space = line.indexOf(' ');
+                    if (space < 0) {
+                        LOGGER.warn("Unexpected reply from " + host + ":" + port + ": " + line);
+                        continue;
+                    }
+                    String id = line.substring(0, space);
+                    String text = line.substring(space + 1);
+                    Pending p = pending.get(id);
+                    if (p == null) {
+                        LOGGER.warn("Reply for an unknown request " + id + ": " + text);
+                    } else if (";".equals(text)) {
+                        pending.remove(id);
+                        p.future.complete(p.reply.toString());
+                    } else {
+                        if (p.reply.length() > 0) {
+                            p.reply.append('\n');
+                        }
+                        p.reply.append(text);
+                    }
+                }
+            } catch (IOException ex) {
+                if (open) {
+                    LOGGER.warn("Lost the connection to " + host + ":" + port + ": " + ex.toString());
+                }
+            } finally {
+                shutdown(new IOException("The connection to " + host + ":" + port + " was closed"));
+            }
+        }
+
+        /**
+         * Closes the connection, requests without a reply fail with the
+         * exception
+         */
+        private void shutdown(IOException ex) {
+            open = false;
+            synchronized (ClientPool.this) {
+                sessions.remove(this);
+            }
+            try {
+                client.close();
+            } catch (IOException e) {
+                LOGGER.debug("Error closing a client session: " + e.toString());
+            }
+            for (String id : pending.keySet()) {
+                Pending p = pending.remove(id);
+                if (p != null) {
+                    p.future.completeExceptionally(ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * A request that was not replied to yet
+     */
+    private static final class Pending {
+
+        private final CompletableFuture<String> future = new CompletableFuture<>();
+        private final StringBuilder reply = new StringBuilder();
+    }
+
+    /**
+     * @param host
+     * @param port
+     * @param maxConnections max number of connections opened to the server
+     */
+    public ClientPool(String host, int port, int maxConnections) {
+        if (maxConnections < 1) {
+            throw new InvalidParameterException("maxConnections must be at least 1: " + maxConnections);
+        }
+        this.host = host;
+        this.port = port;
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * Sends a request, does not wait for the reply.
+     *
+     * @param command a command of {@link PrintServer.Command}, such as PRINT
+     * @param args the arguments, one per line as for the command line, without
+     * the ending ;
+     * @return the reply, the status lines of the server (such as
+     * INFO | message)
+     * @throws IOException if no connection to the server could be opened
+     */
+    public CompletableFuture<String> submit(String command, String... args) throws IOException {
+
+        String id = Long.toString(nextID.incrementAndGet());
+        Pending p = new Pending();
+        Session s = getSession();
+        try {
+            s.send(id, p, command, args);
+        } catch (IOException ex) {
+            s.shutdown(ex);
+            throw ex;
+        }
+        return p.future;
+    }
+
+    /**
+     * Sends a request and waits for the reply.
+     *
+     * @param command
+     * @param args
+     * @return the reply
+     * @throws IOException if the request could not be sent, or the
+     * connection was lost before the reply
+     * @throws InterruptedException
+     */
+    public String send(String command, String... args) throws IOException, InterruptedException {
+        try {
+            return submit(command, args).get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException(ex.getCause());
+        }
+    }
+
+    private synchronized Session getSession() throws IOException {
+
+        if (closed) {
+            throw new IOException("The ClientPool is closed");
+        }
+        Session best = null;
+        for (Session s : sessions) {
+            if (best == null || s.pending.size() < best.pending.size()) {
+                best = s;
+            }
+        }
+        if (best == null || (!best.pending.isEmpty() && sessions.size() < maxConnections)) {
+            try {
+                Session s = new Session();
+                s.start();
+                sessions.add(s);
+                best = s;
+            } catch (IOException ex) {
+                if (best == null) {
+                    throw ex;
+                }
+                LOGGER.debug("Could not open another connection, using an open one: " + ex.toString());
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return number of open connections
+     */
+    public synchronized int getConnectionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Closes all connections, requests without a reply fail with an
+     * IOException.
+     */
+    @Override
+    public void close() {
+        List<Session> open;
+        synchronized (this) {
+            closed = true;
+            open = new ArrayList<>(sessions);
+        }
+        for (Session s : open) {
+            s.shutdown(new IOException("The ClientPool was closed"));
+        }
+    }
+
+}
@@ -19,12 +19,24 @@ package com.ticktockdata.jasperserver;
 import com.ticktockdata.db.PgUtils;
 import com.ticktockdata.jasper.ConnectionInfo;
 import com.ticktockdata.jasper.ReportConnectionManager;
+import com.ticktockdata.jasper.QueryProfile;
 import com.ticktockdata.jasper.JasperPrintMain;
+import com.ticktockdata.jasper.PrintStatusEvent.StatusCode;
+import com.ticktockdata.jasper.ReportManager;
 import static com.ticktockdata.jasper.JasperPrintMain.LOGGER;
 import static com.ticktockdata.jasper.JasperPrintMain.addToClassPath;
 import com.ticktockdata.jasperserver.PrintServer.Command;
+import com.ticktockdata.jasperserver.ServerManager.MessageType;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
 import java.util.List;
@@ -92,7 +104,19 @@ public class CommandLineProcessor {
                 break;
             case PRINT:
                 System.out.println("got a print job, sending to processPrint");
-                processPrint(args);
+                processPrint(args, false);
+                break;
+            case SUBMIT:
+                processPrint(args, true);
+                break;
+            case BATCH:
+                processBatch(args);
+                break;
+            case POLL:
+            case WAIT:
+            case CANCEL:
+            case RESULT:
+                processJob(args, cmd);
                 break;
             case BACKUP:
                 processBackup(args);
@@ -142,14 +166,29 @@ public class CommandLineProcessor {
 //            return;
 //        }
         
+        // without a tray icon there is nobody to see a progress dialog
+        if (no_tray) {
+            ReportManager.setHeadlessFill(true);
+        }
+        
+        // server settings, also sent to the server if it is already running
+        applyWorkerPoolArgs(args);
+        applyReportCacheArgs(args);
+        applyJobTableArgs(args);
+        
         ConnectionInfo connInfo = getConnectionInfoFromArgs(args, silent);
         
+        if (connInfo != null) {
+            applyConnectionLimitArgs(args, connInfo.getIdentifier());
+        }
+        
 //        if (connInfo == null || !connInfo.isValidInfo(false)) {
 //            LOGGER.info("Not able to create a connection, starting server w/o connection!");
 ////            return;  // do NOT return, start an empty server (w/o connection)
 //        }   // if not creatable then exit
         
-        String status = ServerManager.startPrintServer(port, connInfo, silent, no_tray);
+        String status = ServerManager.startPrintServer(port, connInfo, silent, no_tray,
+                getServerSettingArgs(args));
         
         // added 2021-07-07, JAM
         String fontDir = getArgumentValue(args, "-font");
@@ -157,11 +196,284 @@ public class CommandLineProcessor {
             loadFontExtensions(fontDir);
         }
         
+        // compile the reports in the background, only if this process is
+        // now running the server (not if it ADDed to a running server)
+        String warmDir = getArgumentValue(args, "--warm");
+        if (warmDir != null && !warmDir.isEmpty() && isStartedStatus(status)) {
+            ReportManager.warmUpReports(warmDir);
+        }
+        
         showStatus(status, silent);
         
     }
     
     
+    /**
+     * @param status the status returned by ServerManager.startPrintServer
+     * @return true if a new server was started in this process
+     */
+    private static boolean isStartedStatus(String status) {
+        return status != null && MessageType.statusValue(status) == MessageType.INFO
+                && status.toLowerCase().contains("started");
+    }
+    
+    
+    /**
+     * The arguments of START that change the settings of the server (not
+     * only of its connection), see getServerSettingArgs.
+     */
+    private static final String[] SERVER_SETTING_KEYS = {"--workers", "--queue",
+        "--subreport_threads", "--cache_dir", "--cache_max", "--cache_mb",
+        "--result_cache_mb", "--snapshot_dir", "--snapshot_max", "--job_table",
+        "--job_results_mb", "--max_jobs", "--request_threads"};
+    
+    
+    /**
+     * When START finds a server already running these are sent along with
+     * the ADD, so they are applied by the running server instead of only in
+     * this process.
+     * @param args
+     * @return key / value pairs of the server settings found in args
+     */
+    static String[] getServerSettingArgs(String[] args) {
+        
+        List<String> settings = new ArrayList<>();
+        for (String key : SERVER_SETTING_KEYS) {
+            String val = getArgumentValue(args, key);
+            if (val != null && !val.isEmpty()) {
+                settings.add(key);
+                settings.add(val);
+            }
+        }
+        return settings.toArray(new String[settings.size()]);
+    }
+    
+    
+    /**
+     * Reads the --workers and --queue arguments and applies them to the
+     * ReportManager's worker pool, and --subreport_threads to its subreport
+     * thread pool.
+     * @param args 
+     */
+    public static void applyWorkerPoolArgs(String[] args) {
+        
+        String val = getArgumentValue(args, "--workers");
+        if (val != null && !val.isEmpty()) {
+            try {
+                ReportManager.setWorkerPoolSize(Integer.valueOf(val));
+            } catch (Exception ex) {
+                LOGGER.error("Invalid value for --workers: " + val, ex);
+            }
+        }
+        val = getArgumentValue(args, "--queue");
+        if (val != null && !val.isEmpty()) {
+            try {
+                ReportManager.setQueueCapacity(Integer.valueOf(val));
+            } catch (Exception ex) {
+                LOGGER.error("Invalid value for --queue: " + val, ex);
+            }
+        }
+        val = getArgumentValue(args, "--subreport_threads");
+        if (val != null && !val.isEmpty()) {
+            try {
+                int threads = Integer.valueOf(val);
+                if (threads > 0) {
+                    ReportManager.setSubreportThreads(threads);
+                }
+                ReportManager.setPooledSubreports(threads > 0);
+            } catch (Exception ex) {
+                LOGGER.error("Invalid value for --subreport_threads: " + val, ex);
+            }
+        }
+    }
+    
+    
+    /**
+     * Reads the --request_threads argument, the number of requests the
+     * server runs at the same time.
+     * @param args
+     * @param server
+     */
+    public static void applyRequestThreadArgs(String[] args, PrintServer server) {
+        
+        String val = getArgumentValue(args, "--request_threads");
+        if (val != null && !val.isEmpty()) {
+            try {
+                server.setRequestThreads(Integer.valueOf(val));
+            } catch (Exception ex) {
+                LOGGER.error("Invalid value for --request_threads: " + val, ex);
+            }
+        }
+    }
+    
+    
+    /**
+     * Reads the --job_table and --job_results_mb arguments, the limits of the
+     * table of jobs started by SUBMIT.
+     * @param args 
+     */
+    public static void applyJobTableArgs(String[] args) {
+        
+        String val = getArgumentValue(args, "--job_table");
+        if (val != null && !val.isEmpty()) {
+            try {
+                JobTable.setMaxJobs(Integer.valueOf(val));
+            } catch (Exception ex) {
+                LOGGER.error("Invalid value for --job_table: " + val, ex);
+            }
+        }
+        val = getArgumentValue(args, "--job_results_mb");
+        if (val != null && !val.isEmpty()) {
+            try {
+                JobTable.setMaxResultBytes(Long.valueOf(val) * 1024 * 1024);
+            } catch (Exception ex) {
+                LOGGER.error("Invalid value for --job_results_mb: " + val, ex);
+            }
+        }
+    }
+    
+    
+    /**
+     * Reads the --max_jobs argument and limits the number of reports that may
+     * run at the same time on the connection.
+     * @param args
+     * @param identifier identifier of the connection
+     */
+    public static void applyConnectionLimitArgs(String[] args, String identifier) {
+        
+        String val = getArgumentValue(args, "--max_jobs");
+        if (val != null && !val.isEmpty()) {
+            try {
+                ReportManager.setMaxConcurrentJobs(identifier, Integer.valueOf(val));
+            } catch (Exception ex) {
+                LOGGER.error("Invalid value for --max_jobs: " + val, ex);
+            }
+        }
+    }
+    
+    
+    /**
+     * Reads the --min_conns, --max_conns and --evict_secs arguments and
+     * applies them to the connection's pool.
+     * @param args
+     * @param info
+     */
+    public static void applyConnectionPoolArgs(String[] args, ConnectionInfo info) {
+        
+        String val = getArgumentValue(args, "--min_conns");
+        if (val != null && !val.isEmpty()) {
+            try {
+                info.setMinConnections(Integer.valueOf(val));
+            } catch (Exception ex) {
+                LOGGER.error("Invalid value for --min_conns: " + val, ex);
+            }
+        }
+        val = getArgumentValue(args, "--max_conns");
+        if (val != null && !val.isEmpty()) {
+            try {
+                info.setMaxConnections(Integer.valueOf(val));
+            } catch (Exception ex) {
+                LOGGER.error("Invalid value for --max_conns: " + val, ex);
+            }
+        }
+        val = getArgumentValue(args, "--evict_secs");
+        if (val != null && !val.isEmpty()) {
+            try {
+                info.setIdleTimeout(Integer.valueOf(val));
+            } catch (Exception ex) {
+                LOGGER.error("Invalid value for --evict_secs: " + val, ex);
+            }
+        }
+    }
+    
+    
+    /**
+     * Reads the --rows_per_fetch, --sql_timeout and --prefetch_rows arguments
+     * and sets the connection's QueryProfile.  A --rows_per_fetch greater
+     * than 0 streams the rows (see QueryProfile.streaming).
+     * @param args
+     * @param info
+     */
+    public static void applyQueryProfileArgs(String[] args, ConnectionInfo info) {
+        
+        String fetch = getArgumentValue(args, "--rows_per_fetch");
+        String timeout = getArgumentValue(args, "--sql_timeout");
+        String prefetch = getArgumentValue(args, "--prefetch_rows");
+        if ((fetch == null || fetch.isEmpty()) && (timeout == null || timeout.isEmpty())
+                && (prefetch == null || prefetch.isEmpty())) {
+            return;
+        }
+        try {
+            int rows = (fetch == null || fetch.isEmpty()) ? 0 : Integer.valueOf(fetch);
+            QueryProfile profile = (rows > 0 ? QueryProfile.streaming(rows) : new QueryProfile());
+            if (timeout != null && !timeout.isEmpty()) {
+                profile.setStatementTimeout(Integer.valueOf(timeout));
+            }
+            if (prefetch != null && !prefetch.isEmpty()) {
+                profile.setPrefetchRows(Integer.valueOf(prefetch));
+            }
+            info.setQueryProfile(profile);
+            LOGGER.info("Connection " + info.getIdentifier() + " uses " + profile);
+        } catch (Exception ex) {
+            LOGGER.error("Invalid value for --rows_per_fetch / --sql_timeout / --prefetch_rows: "
+                    + fetch + " / " + timeout + " / " + prefetch, ex);
+        }
+    }
+    
+    
+    /**
+     * Reads the --cache_max, --cache_mb and --cache_dir arguments and applies
+     * them to the ReportManager's compiled report cache, and the
+     * --result_cache_mb, --snapshot_dir and --snapshot_max arguments to its
+     * filled report and data snapshot caches.
+     * @param args 
+     */
+    public static void applyReportCacheArgs(String[] args) {
+        
+        String dir = getArgumentValue(args, "--cache_dir");
+        if (dir != null && !dir.isEmpty()) {
+            ReportManager.setCompiledReportDir(dir);
+        }
+        
+        String resultMB = getArgumentValue(args, "--result_cache_mb");
+        if (resultMB != null && !resultMB.isEmpty()) {
+            try {
+                ReportManager.setResultCacheLimit(Long.valueOf(resultMB) * 1024 * 1024);
+            } catch (Exception ex) {
+                LOGGER.error("Invalid value for --result_cache_mb: " + resultMB, ex);
+            }
+        }
+        
+        String snapshotDir = getArgumentValue(args, "--snapshot_dir");
+        if (snapshotDir != null && !snapshotDir.isEmpty()) {
+            ReportManager.setDataSnapshotDir(snapshotDir);
+        }
+        String snapshotMax = getArgumentValue(args, "--snapshot_max");
+        if (snapshotMax != null && !snapshotMax.isEmpty()) {
+            try {
+                ReportManager.setDataSnapshotLimit(Integer.valueOf(snapshotMax));
+            } catch (Exception ex) {
+                LOGGER.error("Invalid value for --snapshot_max: " + snapshotMax, ex);
+            }
+        }
+        
+        String maxEntries = getArgumentValue(args, "--cache_max");
+        String maxMB = getArgumentValue(args, "--cache_mb");
+        if ((maxEntries == null || maxEntries.isEmpty()) && (maxMB == null || maxMB.isEmpty())) {
+            return;
+        }
+        try {
+            int entries = (maxEntries == null || maxEntries.isEmpty())
+                    ? ReportManager.DEFAULT_CACHE_MAX_ENTRIES : Integer.valueOf(maxEntries);
+            long bytes = (maxMB == null || maxMB.isEmpty())
+                    ? 0 : Long.valueOf(maxMB) * 1024 * 1024;
+            ReportManager.setReportCacheLimits(entries, bytes);
+        } catch (Exception ex) {
+            LOGGER.error("Invalid value for --cache_max / --cache_mb: " + maxEntries + " / " + maxMB, ex);
+        }
+    }
+    
+    
     private void loadFontExtensions(String fontDir) {
             // try to load font extension for JasperReports (added v2021.1, JAM)
         try {
@@ -215,6 +527,8 @@ public class CommandLineProcessor {
         // optional
         info.setUser(getArgumentValue(args, "-us"));
         info.setPassword(getArgumentValue(args, "-pa"));
+        applyConnectionPoolArgs(args, info);
+        applyQueryProfileArgs(args, info);
         
         try {
             if (info.isValidInfo(!silent)) {
@@ -358,21 +672,39 @@ public class CommandLineProcessor {
      * Create and execute a print job.  This just opens a client connection and
      * forwards all the commands to the specified server.
      * @param args 
+     * @param submit true for SUBMIT, which replies with a job ID
      */
-    private void processPrint(String[] args) {
+    private void processPrint(String[] args, boolean submit) {
         
         int port = getPortFromArgs(args);
         String host = getHostFromArgs(args);
         boolean silent = getSilentFromArgs(args);
         
+        // the exported output is sent back and written to -xf on this computer
+        // (for SUBMIT it is kept for the RESULT command)
+        boolean returnOutput = !submit && Boolean.valueOf(getArgumentValue(args, "--return"));
+        File returnFile = null;
+        if (returnOutput) {
+            returnFile = getReturnFile(args, silent);
+            if (returnFile == null) {
+                return;
+            }
+        }
+        
         // we will just forward the entire argument list to the specified server
         try {
             Client c = new Client(host, port);
             for (String s : args) {
                 c.println(s);
             }
-            
-            readStatusMessage(c, silent);
+            if (returnOutput) {
+                c.println(";");
+                // the server closes the connection after the status
+                String status = readReturnFile(c, returnFile, false);
+                showStatus(status, silent);
+            } else {
+                readStatusMessage(c, silent);
+            }
             
         } catch (Exception ex) {
             showError("Error while printing!", ex, silent);
@@ -381,6 +713,171 @@ public class CommandLineProcessor {
     
     
     
+    /**
+     * Sends a POLL, WAIT, CANCEL or RESULT command for a job started by
+     * SUBMIT and shows the reply.  With RESULT --return true the job's output
+     * is written to --xfile on this computer.
+     * @param args
+     * @param cmd 
+     */
+    private void processJob(String[] args, Command cmd) {
+        
+        int port = getPortFromArgs(args);
+        String host = getHostFromArgs(args);
+        boolean silent = getSilentFromArgs(args);
+        
+        File returnFile = null;
+        if (cmd == Command.RESULT && Boolean.valueOf(getArgumentValue(args, "--return"))) {
+            returnFile = getReturnFile(args, silent);
+            if (returnFile == null) {
+                return;
+            }
+        }
+        
+        try (Client c = new Client(host, port)) {
+            for (String s : args) {
+                c.println(s);
+            }
+            c.println(";");
+            if (returnFile != null) {
+                showStatus(readReturnFile(c, returnFile, true), silent);
+            } else {
+                // WAIT may take long, read until the server closes
+                showStatus(readReply(c), silent);
+            }
+            
+        } catch (Exception ex) {
+            showError("Error while sending " + cmd + " to " + host + ":" + port, ex, silent);
+        }
+    }
+    
+    
+    /**
+     * Sends a BATCH: the arguments without --rows_file, then a --rows line
+     * and the lines of the --rows_file (a header line of parameter names and
+     * a CSV line for each row).
+     * @param args 
+     */
+    private void processBatch(String[] args) {
+        
+        int port = getPortFromArgs(args);
+        String host = getHostFromArgs(args);
+        boolean silent = getSilentFromArgs(args);
+        
+        String path = getArgumentValue(args, "--rows_file");
+        if (path == null || path.isEmpty()) {
+            showError(Command.BATCH + " requires a --rows_file with the parameters of each row", null, silent);
+            return;
+        }
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8);
+        } catch (Exception ex) {
+            showError("Could not read the --rows_file " + path, ex, silent);
+            return;
+        }
+        
+        try (Client c = new Client(host, port)) {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].toLowerCase().contains("--rows_file")) {
+                    i++;    // and its value
+                    continue;
+                }
+                c.println(args[i]);
+            }
+            c.println("--rows");
+            for (String line : lines) {
+                // a ; line would end the command
+                if (!";".equals(line.trim())) {
+                    c.println(line);
+                }
+            }
+            c.println(";");
+            showStatus(readReply(c), silent);
+            
+        } catch (Exception ex) {
+            showError("Error while sending " + Command.BATCH + " to " + host + ":" + port, ex, silent);
+        }
+    }
+    
+    
+    /**
+     * @param c
+     * @return all lines the server sends, until it closes the connection
+     */
+    private static String readReply(Client c) {
+        StringBuilder status = new StringBuilder();
+        String line;
+        while ((line = c.readLine()) != null) {
+            if (status.length() > 0) status.append("\n");
+            status.append(line);
+        }
+        return status.toString();
+    }
+    
+    
+    /**
+     * Reads the returned output into a temp file next to the --xfile, then
+     * the status reply, and only replaces the --xfile with it when the
+     * status says the output is complete.  Otherwise the temp file is
+     * deleted and an existing --xfile is left as it was.
+     * @param c
+     * @param returnFile the --xfile
+     * @param job true for RESULT, whose reply also names the job's status
+     * @return the status reply
+     * @throws IOException 
+     */
+    private static String readReturnFile(Client c, File returnFile, boolean job) throws IOException {
+        
+        File dir = returnFile.getAbsoluteFile().getParentFile();
+        File part = File.createTempFile("." + returnFile.getName() + ".", ".part", dir);
+        try {
+            long bytes;
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(part))) {
+                bytes = c.readReturned(out);
+            }
+            String status = readReply(c);
+            boolean complete;
+            try {
+                complete = MessageType.statusValue(status) == MessageType.INFO
+                        && (!job || status.contains(" " + StatusCode.COMPLETE));
+            } catch (Exception ex) {
+                complete = false;   // no (valid) status, the output may be cut off
+            }
+            if (complete) {
+                Files.move(part.toPath(), returnFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                LOGGER.info("Wrote " + bytes + " returned bytes to " + returnFile);
+            } else {
+                LOGGER.warn("Discarded " + bytes + " returned bytes, " + returnFile + " was not written");
+            }
+            return status;
+        } finally {
+            Files.deleteIfExists(part.toPath());
+        }
+    }
+    
+    
+    /**
+     * @param args
+     * @param silent
+     * @return the --xfile to write returned output to, or null (after showing
+     * an error) if missing or it exists and may not be overwritten
+     */
+    private File getReturnFile(String[] args, boolean silent) {
+        String path = getArgumentValue(args, "-xf");
+        if (path == null || path.isEmpty()) {
+            showError("--return true requires an --xfile to write to", null, silent);
+            return null;
+        }
+        File file = new File(path);
+        if (file.exists() && !Boolean.valueOf(getArgumentValue(args, "-ov"))) {
+            showError("File already exists, use --overwrite true to replace it: " + path, null, silent);
+            return null;
+        }
+        return file;
+    }
+    
+    
     /**
      * This is called directly, does not go through PrintServer
      * @param args 
@@ -830,6 +1327,16 @@ public class CommandLineProcessor {
             case PRINT:
                 System.out.print(JasperPrintMain.getHelpPrint());
                 break;
+            case SUBMIT:
+            case POLL:
+            case WAIT:
+            case CANCEL:
+            case RESULT:
+                System.out.print(JasperPrintMain.getHelpJobs());
+                break;
+            case BATCH:
+                System.out.print(JasperPrintMain.getHelpBatch());
+                break;
             case CLEAR:
                 System.out.print(JasperPrintMain.getHelpClear());
                 break;
@@ -0,0 +1,404 @@
+/*
+ * Copyright (C) 2018 Joseph A Miller
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ticktockdata.jasperserver;
+
+import com.ticktockdata.jasper.JasperReportImpl;
+import com.ticktockdata.jasper.PrintStatusEvent.StatusCode;
+import com.ticktockdata.jasper.ReportJob;
+import static com.ticktockdata.jasperserver.ServerManager.LOGGER;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.InvalidParameterException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The jobs started with the SUBMIT command, by job ID, so the caller can
+ * POLL their status, WAIT for them, CANCEL them and get their RESULT later.
+ * <p>
+ * The table is bounded: when it holds {@link #getMaxJobs()} jobs the oldest
+ * finished ones are removed (a SUBMIT is refused if none are finished), and
+ * the output kept for jobs submitted with --return true may not take more
+ * than {@link #getMaxResultBytes()}, the oldest finished jobs are removed to
+ * stay within it.  The output is counted as it is written, so the export of
+ * a running job fails if there is no room for it.  A job is also removed
+ * once its RESULT was fetched.
+ * <p>
+ * This class is used only by the ServerProcess.
+ *
+ * @since Oct 18, 2026
+ */
+final class JobTable {
+
+    static final int DEFAULT_MAX_JOBS = 1000;
+    static final long DEFAULT_MAX_RESULT_BYTES = 256L * 1024 * 1024;
+
+    private static final Object LOCK = new Object();
+    /**
+     * in order of submission, so iteration starts at the oldest
+     */
+    private static final LinkedHashMap<Long, Job> JOBS = new LinkedHashMap<>();
+    private static long nextID = 0;
+    private static int maxJobs = DEFAULT_MAX_JOBS;
+    private static long maxResultBytes = DEFAULT_MAX_RESULT_BYTES;
+    private static long resultBytes = 0;
+    /**
+     * slots taken by jobs being submitted, not in JOBS yet
+     */
+    private static int reserved = 0;
+    private static long submitted = 0;
+    private static long removed = 0;
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "JasperPrint-job-timer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * A submitted job
+     */
+    static final class Job {
+
+        private final long id;
+        private final ReportJob report;
+        private final CompletableFuture<StatusCode> done;
+        private final Output output;
+
+        private Job(long id, ReportJob report, CompletableFuture<StatusCode> done, Output output) {
+            this.id = id;
+            this.report = report;
+            this.done = done;
+            this.output = output;
+        }
+
+        long getID() {
+            return id;
+        }
+
+        /**
+         * @return the final status, or the last status if not finished
+         */
+        StatusCode getStatus() {
+            return done.isDone() ? done.join() : report.getStatus();
+        }
+
+        boolean isFinished() {
+            return done.isDone();
+        }
+
+        /**
+         * @return true if the job's exported output is kept for RESULT
+         */
+        boolean hasOutput() {
+            return output != null;
+        }
+
+        /**
+         * Writes the kept output (after the job finished).
+         *
+         * @param out
+         * @throws IOException
+         */
+        void writeOutput(OutputStream out) throws IOException {
+            if (output != null) {
+                output.writeTo(out);
+            }
+        }
+
+        long getOutputSize() {
+            return (output == null ? 0 : output.size());
+        }
+
+        String getReportName() {
+            return report.getReportName();
+        }
+    }
+
+    /**
+     * The exported output of a job, written by the export action.  The bytes
+     * count against {@link #getMaxResultBytes()} as they are written, the
+     * export fails when there is no room left, so a running job can not use
+     * up the heap.
+     */
+    private static final class Output extends ByteArrayOutputStream {
+
+        /**
+         * bytes counted in resultBytes, guarded by LOCK
+         */
+        private long counted = 0;
+
+        private Output() {
+            super(64 * 1024);
+        }
+
+        @Override
+        public void write(int b) {
+            reserve(1);
+            super.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            reserve(len);
+            super.write(b, off, len);
+        }
+
+        /**
+         * Counts the bytes about to be written, removing the oldest finished
+         * jobs if there is no room for them.
+         *
+         * @throws IllegalStateException if there is still no room, which
+         * fails the export
+         */
+        private void reserve(int len) {
+            synchronized (LOCK) {
+                if (resultBytes + len > maxResultBytes) {
+                    trim(0, len);
+                }
+                if (resultBytes + len > maxResultBytes) {
+                    throw new IllegalStateException("The output of the submitted jobs exceeds --job_results_mb ("
+                            + (maxResultBytes / 1024 / 1024) + " MB), collect some results or raise the limit");
+                }
+                resultBytes += len;
+                counted += len;
+            }
+        }
+
+        /**
+         * Removes the bytes of this output from the total, once the job is
+         * removed
+         */
+        private void release() {
+            synchronized (LOCK) {
+                resultBytes -= counted;
+                counted = 0;
+            }
+        }
+    }
+
+    private JobTable() {
+        // static only
+    }
+
+    /**
+     * Executes the report as a new job.
+     *
+     * @param report
+     * @param keepOutput true to keep the exported output for RESULT (the
+     * report must have an EXPORT_TO_XXX action)
+     * @return the job
+     * @throws IllegalStateException if the table is full of unfinished jobs
+     */
+    static Job submit(JasperReportImpl report, boolean keepOutput) {
+
+        long id;
+        synchronized (LOCK) {
+            trim(1, 0);
+            if (JOBS.size() + reserved >= maxJobs) {
+                throw new IllegalStateException("There are already " + (JOBS.size() + reserved)
+                        + " unfinished jobs, collect some before submitting more");
+            }
+            // the slot is taken until the job is put in the table
+            reserved++;
+            id = ++nextID;
+            submitted++;
+        }
+        Output output = null;
+        Job job;
+        try {
+            if (keepOutput) {
+                output = new Output();
+                report.setExportOutputStream(output);
+            }
+            CompletableFuture<StatusCode> done = report.execute();
+            job = new Job(id, report.getLastJob(), done, output);
+        } catch (RuntimeException ex) {
+            synchronized (LOCK) {
+                reserved--;
+            }
+            if (output != null) {
+                output.release();
+            }
+            throw ex;
+        }
+        synchronized (LOCK) {
+            reserved--;
+            JOBS.put(id, job);
+        }
+        job.done.whenComplete((status, ex) -> finished(job, status));
+        LOGGER.debug("Submitted job " + id + " for " + report.getReportPath());
+        return job;
+    }
+
+    private static void finished(Job job, StatusCode status) {
+        if (job.output != null && status != StatusCode.COMPLETE) {
+            // there is no RESULT to return, free the partial output
+            job.output.release();
+            job.output.reset();
+        }
+        synchronized (LOCK) {
+            trim(0, 0);
+        }
+    }
+
+    /**
+     * Removes the oldest finished jobs until there is room for more, must be
+     * called while holding the lock
+     *
+     * @param room number of jobs that must fit
+     * @param bytes bytes of output that must fit
+     */
+    private static void trim(int room, long bytes) {
+        Iterator<Job> it = JOBS.values().iterator();
+        while (it.hasNext() && (JOBS.size() + reserved + room > maxJobs || resultBytes + bytes > maxResultBytes)) {
+            Job job = it.next();
+            if (job.isFinished()) {
+                it.remove();
+                if (job.output != null) {
+                    job.output.release();
+                }
+                removed++;
+                LOGGER.debug("Removed job " + job.id + " from the full job table, its result was not collected");
+            }
+        }
+    }
+
+    /**
+     * @param id
+     * @return the job, or null if there is no such job (or it was removed)
+     */
+    static Job get(long id) {
+        synchronized (LOCK) {
+            return JOBS.get(id);
+        }
+    }
+
+    /**
+     * Removes a job, after its result was fetched.
+     *
+     * @param job
+     */
+    static void remove(Job job) {
+        synchronized (LOCK) {
+            if (JOBS.remove(job.id) != null && job.output != null) {
+                job.output.release();
+            }
+        }
+    }
+
+    /**
+     * Cancels the job if it is not finished.
+     *
+     * @param job
+     */
+    static void cancel(Job job) {
+        if (!job.isFinished()) {
+            job.report.cancel();
+        }
+    }
+
+    /**
+     * @param job
+     * @param timeout max seconds to wait, 0 or less to wait until it is
+     * finished
+     * @return completes with the job's status, when it is finished or the
+     * timeout expired, no thread waits for it
+     */
+    static CompletableFuture<StatusCode> await(Job job, int timeout) {
+
+        CompletableFuture<StatusCode> result = new CompletableFuture<>();
+        ScheduledFuture<?> timer = null;
+        if (timeout > 0 && !job.isFinished()) {
+            timer = TIMER.schedule(() -> {
+                result.complete(job.getStatus());
+            }, timeout, TimeUnit.SECONDS);
+        }
+        ScheduledFuture<?> t = timer;
+        job.done.whenComplete((status, ex) -> {
+            if (t != null) {
+                t.cancel(false);
+            }
+            result.complete(job.getStatus());
+        });
+        return result;
+    }
+
+    /**
+     * @param max max number of jobs kept, default is
+     * {@link #DEFAULT_MAX_JOBS}
+     */
+    static void setMaxJobs(int max) {
+        if (max < 1) {
+            throw new InvalidParameterException("The job table must hold at least 1 job: " + max);
+        }
+        synchronized (LOCK) {
+            maxJobs = max;
+            trim(0, 0);
+        }
+    }
+
+    static int getMaxJobs() {
+        synchronized (LOCK) {
+            return maxJobs;
+        }
+    }
+
+    /**
+     * @param bytes max bytes of kept output of finished jobs, default is
+     * {@link #DEFAULT_MAX_RESULT_BYTES}
+     */
+    static void setMaxResultBytes(long bytes) {
+        if (bytes < 0) {
+            throw new InvalidParameterException("The job result limit may not be negative: " + bytes);
+        }
+        synchronized (LOCK) {
+            maxResultBytes = bytes;
+            trim(0, 0);
+        }
+    }
+
+    static long getMaxResultBytes() {
+        synchronized (LOCK) {
+            return maxResultBytes;
+        }
+    }
+
+    /**
+     * @return user-readable summary of the table, for the STATUS command
+     */
+    static String getStatusMessage() {
+        synchronized (LOCK) {
+            int running = 0;
+            for (Job job : JOBS.values()) {
+                if (!job.isFinished()) {
+                    running++;
+                }
+            }
+            return "Submitted jobs: " + JOBS.size() + " of " + maxJobs + " in table, " + running + " unfinished, "
+                    + (resultBytes / 1024) + " of " + (maxResultBytes / 1024) + " KB of results, "
+                    + submitted + " submitted, " + removed + " removed uncollected";
+        }
+    }
+
+}
@@ -33,8 +33,6 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.IOException;
 import java.net.InetAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
 import java.security.InvalidParameterException;
 import java.util.Enumeration;
 import javax.swing.ImageIcon;
@@ -42,8 +40,8 @@ import javax.swing.JOptionPane;
 
 
 /**
- * This class is a wrapper for the actual print server.  Creates a 
- * {@link java.net.ServerSocket} on a provided port.
+ * This class is a wrapper for the actual print server.  Listens with a
+ * {@link java.nio.channels.ServerSocketChannel} on a provided port.
  * port (default = 35246).
  * <p>Commands are received via text line inputs, following is a list of the
  * available commands and the output that is generated.
@@ -52,9 +50,16 @@ import javax.swing.JOptionPane;
  * <li>CONNECTIONS<ul><li>Outputs the names of all registered connections, 1 per line.</ul>
  * <li>STOP<ul><li>Stops the server - closes all database connections first.
  *      <li>Optional --force {true | false} parameter to force shut-down</ul>
+ * <li>SUBMIT, POLL, WAIT, CANCEL, RESULT<ul><li>Runs a report as a job and
+ *      follows it by its job ID, see {@link JobTable}</ul>
+ * <li>BATCH<ul><li>Runs a report for each row of parameters after a --rows
+ *      line, see {@link com.ticktockdata.jasper.ReportBatch}</ul>
+ * <li>SESSION<ul><li>Keeps the connection open for many requests, tagged with
+ *      request IDs, see {@link SelectorServer}</ul>
  * </ul>
  * This process just sits and waits for incoming connections on the server port,
- * then spawns a new ServerProcess when a connection is made.
+ * the requests are read by the few I/O threads of a {@link SelectorServer},
+ * which runs a ServerProcess for each request once it is complete.
  * @author JAM {javajoe@programmer.net}
  * @since Oct 04, 2018
  */
@@ -75,14 +80,33 @@ public class PrintServer extends Thread {
         BACKUP,
         RESTORE,
         HELP,
+        SESSION,
+        SUBMIT,
+        POLL,
+        WAIT,
+        CANCEL,
+        RESULT,
+        BATCH,
         PROMPTS // used for help page
     }
     
+    /**
+     * threads reading and writing the client connections
+     */
+    static final int IO_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    /**
+     * default number of threads running the requests, a PRINT request only
+     * waits for its report to be queued, but an ADD waits for the database
+     * and a RESULT for its client to read the report
+     */
+    public static final int DEFAULT_REQUEST_THREADS = 4;
+    
     private String hostName = null; // used by toString()
     private int port;
     
-    private ServerSocket server;
+    private volatile SelectorServer server;
     private boolean silent = false;
+    private volatile int requestThreads = DEFAULT_REQUEST_THREADS;
     
     private TrayIcon trayIcon = null;
     
@@ -186,35 +210,14 @@ public class PrintServer extends Thread {
         
         try {
             
-            server = new ServerSocket(port);
-            
-            // display the tray icon
-            if (!no_tray) {
-                addTrayIcon();
-            }
-            
+            server = new SelectorServer(this, IO_THREADS, requestThreads);
             
-            while (true) {
-                
-                try {
-                    
-                    // blocks / waits for a connection
-                    Socket socket = server.accept();
-                    
-                    // process this connection on a new thread and wait another connection
-                    new ServerProcess(this, socket).start();
-                    
-                } catch (Exception ex) {
-                    if (server.isClosed()) return;
-                    LOGGER.error("Error while waiting for or accepting socket connection.", ex);
-                    if (!silent) {
-                        JOptionPane.showMessageDialog(null, 
-                                "Error while waiting for or accepting socket connection:\n" 
-                                        + ex.toString(), "Error:", JOptionPane.ERROR_MESSAGE);
-                    }
+            // display the tray icon once the port is open
+            server.serve(port, () -> {
+                if (!no_tray) {
+                    addTrayIcon();
                 }
-                
-            }
+            });
             
         } catch (Exception ex) {
             LOGGER.error("Error creating a new server socket on port " 
@@ -241,10 +244,12 @@ public class PrintServer extends Thread {
         sb.append(this.toString());
         sb.append("\n");
         
-        if (server == null || server.isClosed()) {
+        if (server == null || !server.isOpen()) {
             sb.append("Status = ERROR: The Server is not running!\n");
         } else {
             sb.append("Status = OK: Server is alive and well.\n");
+            sb.append(server.getStatusMessage());
+            sb.append("\n");
         }
         if (ReportConnectionManager.getAllConnections().size() > 0) {
             sb.append("The following Database Connections are registered:\n");
@@ -256,8 +261,18 @@ public class PrintServer extends Thread {
                 sb.append("\n");
             }
         } else {
-            sb.append("There are no Database Connections registered.");
+            sb.append("There are no Database Connections registered.\n");
+        }
+        if (ReportConnectionManager.getAllConnections().size() > 0) {
+            sb.append(ReportConnectionManager.getPoolStatus());
+            sb.append("\n");
         }
+        sb.append(ReportManager.getExecutorStatus());
+        sb.append("\n");
+        sb.append(ReportManager.getReportCacheStatus());
+        sb.append("\n");
+        sb.append(JobTable.getStatusMessage());
+        sb.append("\n");
         
         return sb.toString().trim();
         
@@ -323,7 +338,7 @@ public class PrintServer extends Thread {
         
         try {
             // shutdown the server right away to prevent additional connections.
-            if (server != null && !server.isClosed()) {
+            if (server != null && server.isOpen()) {
                 LOGGER.info("Closing the Server Socket");
                 server.close();
             }
@@ -402,6 +417,27 @@ public class PrintServer extends Thread {
         this.no_tray = no_tray;
     }
     
+    /**
+     * Sets how many requests may run at the same time, also on a server that
+     * is already running.  Default is {@link #DEFAULT_REQUEST_THREADS}.
+     * @param threads 
+     */
+    public void setRequestThreads(int threads) {
+        if (threads < 1) {
+            throw new InvalidParameterException("Request threads may not be less than 1!");
+        }
+        requestThreads = threads;
+        SelectorServer s = server;
+        if (s != null) {
+            s.setRequestThreads(threads);
+        }
+        LOGGER.info("Request threads set to " + threads);
+    }
+    
+    public int getRequestThreads() {
+        return requestThreads;
+    }
+    
     public String getHostName() {
         if (hostName == null) {
             try {
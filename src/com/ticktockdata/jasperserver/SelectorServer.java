@@ -0,0 +1,827 @@
+/*
+ * Copyright (C) 2018 Joseph A Miller
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ticktockdata.jasperserver;
+
+import com.ticktockdata.jasperserver.PrintServer.Command;
+import static com.ticktockdata.jasperserver.ServerManager.LOGGER;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.swing.JOptionPane;
+
+/**
+ * The network front end of the {@link PrintServer}.  A few I/O threads read
+ * the requests of all connections with selectors, without blocking, and a
+ * request is only handed to a {@link ServerProcess} (on a small fixed pool
+ * of request threads) once all of it has been read.  The replies are written
+ * by the I/O threads.  So no thread is created, and no thread waits for
+ * input, per connection.
+ * <p>
+ * The protocol is unchanged: the command on the first line, for the commands
+ * that take arguments one argument per line ending with a line that is a
+ * single ; (or the end of the input), then the reply lines, after which the
+ * server closes the connection.
+ * <p>
+ * A connection that starts with the SESSION command stays open for many
+ * requests, see {@link ClientPool}.  The server replies with an INFO line,
+ * then each request is sent as a line of a request ID (without spaces) and
+ * the command, the arguments and a ; line.  Requests run at the same time,
+ * each line of a reply starts with the request ID and a space, and a line of
+ * the ID and ; ends the reply, so replies come back in the order the
+ * requests complete.  The server closes the connection when the client
+ * closes its output and all replies are sent.
+ *
+ * @since Oct 18, 2026
+ */
+final class SelectorServer implements Closeable {
+
+    /**
+     * a request larger than this is refused
+     */
+    static final int MAX_REQUEST_BYTES = 1024 * 1024;
+
+    /**
+     * empty lines skipped before the command, as ServerProcess does
+     */
+    private static final int MAX_EMPTY_LINES = 20;
+
+    /**
+     * requests of one session that may run at the same time, more are not
+     * read until replies were sent
+     */
+    static final int MAX_IN_FLIGHT = 64;
+
+    /**
+     * bytes of replies waiting to be written to a connection before the
+     * thread sending more waits (output returned by a PRINT)
+     */
+    static final int MAX_QUEUED_BYTES = 1024 * 1024;
+
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    private final PrintServer server;
+    private final IoThread[] ioThreads;
+    private final ThreadPoolExecutor requests;
+    private final AtomicInteger nextIo = new AtomicInteger();
+    private final AtomicInteger openCount = new AtomicInteger();
+    private final AtomicInteger sessionCount = new AtomicInteger();
+    private final AtomicLong requestCount = new AtomicLong();
+    private volatile ServerSocketChannel channel = null;
+    private volatile boolean closed = false;
+
+    /**
+     * @param server
+     * @param ioThreadCount threads reading and writing the connections
+     * @param requestThreadCount threads running the requests
+     */
+    SelectorServer(PrintServer server, int ioThreadCount, int requestThreadCount) {
+        this.server = server;
+        this.ioThreads = new IoThread[ioThreadCount];
+        AtomicInteger count = new AtomicInteger();
+        this.requests = new ThreadPoolExecutor(requestThreadCount, requestThreadCount,
+                0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), r -> {
+            Thread t = new Thread(r, "JasperPrint-request-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Resizes the pool running the requests, the requests already running
+     * are not interrupted.
+     *
+     * @param threads
+     */
+    void setRequestThreads(int threads) {
+        synchronized (requests) {
+            if (threads > requests.getMaximumPoolSize()) {
+                requests.setMaximumPoolSize(threads);
+                requests.setCorePoolSize(threads);
+            } else {
+                requests.setCorePoolSize(threads);
+                requests.setMaximumPoolSize(threads);
+            }
+        }
+    }
+
+    /**
+     * Accepts connections until closed, on the calling thread.
+     *
+     * @param port
+     * @param listening run when the port is open
+     * @throws IOException if the port can not be opened
+     */
+    void serve(int port, Runnable listening) throws IOException {
+
+        channel = ServerSocketChannel.open();
+        channel.bind(new InetSocketAddress(port));
+        for (int i = 0; i < ioThreads.length; i++) {
+            ioThreads[i] = new IoThread(i + 1);
+            ioThreads[i].start();
+        }
+        LOGGER.info("Listening on port " + port + " with " + ioThreads.length + " I/O threads");
+        listening.run();
+
+        while (!closed) {
+            try {
+                // blocks / waits for a connection
+                SocketChannel sc = channel.accept();
+                openCount.incrementAndGet();
+                ioThreads[Math.floorMod(nextIo.getAndIncrement(), ioThreads.length)].add(sc);
+            } catch (IOException ex) {
+                if (closed || !channel.isOpen()) {
+                    return;
+                }
+                LOGGER.error("Error while waiting for or accepting socket connection.", ex);
+                if (!server.isSilent()) {
+                    JOptionPane.showMessageDialog(null,
+                            "Error while waiting for or accepting socket connection:\n"
+                            + ex.toString(), "Error:", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        }
+    }
+
+    boolean isOpen() {
+        ServerSocketChannel c = channel;
+        return !closed && c != null && c.isOpen();
+    }
+
+    /**
+     * Stops accepting connections.  The replies to the requests already
+     * received are still sent, the I/O threads end when their connections
+     * are closed.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        ServerSocketChannel c = channel;
+        if (c != null) {
+            try {
+                c.close();
+            } catch (IOException ex) {
+                LOGGER.warn("Error closing the server socket", ex);
+            }
+        }
+        requests.shutdown();
+        for (IoThread io : ioThreads) {
+            if (io != null) {
+                io.selector.wakeup();
+            }
+        }
+    }
+
+    /**
+     * @return user-readable summary, for the STATUS command
+     */
+    String getStatusMessage() {
+        return "Server connections: " + openCount.get() + " open, " + sessionCount.get() + " sessions, "
+                + requestCount.get() + " requests, " + ioThreads.length + " I/O threads, "
+                + requests.getMaximumPoolSize() + " request threads";
+    }
+
+    /**
+     * @param text all that was read so far
+     * @param eof the client will not send any more
+     * @param local the client is on this computer
+     * @return true if the request is complete, so it can be processed
+     */
+    static boolean isComplete(String text, boolean eof, boolean local) {
+
+        if (eof) {
+            return true;
+        }
+        String[] lines = text.split("\r\n|\r|\n", -1);
+        // the last element is not terminated yet
+        int last = lines.length - 1;
+        int i = 0;
+        while (i < last && lines[i].trim().isEmpty()) {
+            i++;
+        }
+        if (i >= last) {
+            return i > MAX_EMPTY_LINES;
+        }
+        String command = lines[i];
+        Command cmd;
+        if ("test".equalsIgnoreCase(command)) {
+            return true;
+        }
+        try {
+            cmd = Command.valueOf(command.toUpperCase());
+        } catch (IllegalArgumentException ex) {
+            return true;    // answered with an error
+        }
+        switch (cmd) {
+            case ADD:
+            case PRINT:
+            case HELP:
+            case SUBMIT:
+            case POLL:
+            case WAIT:
+            case CANCEL:
+            case RESULT:
+            case BATCH:
+                break;
+            case STOP:
+            case CLOSE:
+                if (!local) {
+                    return true;    // refused without reading the arguments
+                }
+                break;
+            default:
+                return true;    // no arguments
+        }
+        for (int j = i + 1; j <= last; j++) {
+            if (";".equals(lines[j])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param request the bytes read so far, not in a session yet
+     * @return the offset after the SESSION command line, or -1 if the
+     * request is not a SESSION command
+     */
+    private static int sessionStart(byte[] request) {
+        int lineStart = 0;
+        for (int i = 0; i < request.length; i++) {
+            if (request[i] == '\n') {
+                String line = new String(request, lineStart, i - lineStart, CHARSET).trim();
+                if (!line.isEmpty()) {
+                    return Command.SESSION.name().equalsIgnoreCase(line) ? i + 1 : -1;
+                }
+                lineStart = i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * One connection, read and written by one IoThread
+     */
+    private final class Connection implements Closeable {
+
+        private final SocketChannel sc;
+        private final IoThread io;
+        private final InetAddress remote;
+        private final ByteArrayOutputStream in = new ByteArrayOutputStream(256);
+        private final Queue<ByteBuffer> out = new ConcurrentLinkedQueue<>();
+        private SelectionKey key = null;
+        private boolean dispatched = false;
+        private volatile boolean closeRequested = false;
+        private volatile boolean closed = false;
+        private final AtomicLong queued = new AtomicLong();
+        private final Object drained = new Object();
+
+        // session (SESSION command) state
+        private boolean session = false;
+        private boolean inputEnded = false;
+        private boolean readPaused = false;
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        private Connection(SocketChannel sc, IoThread io) {
+            this.sc = sc;
+            this.io = io;
+            this.remote = sc.socket().getInetAddress();
+        }
+
+        /**
+         * Called by the IoThread when there is input
+         */
+        private void read(ByteBuffer buf) {
+
+            boolean eof = false;
+            try {
+                while (true) {
+                    buf.clear();
+                    int n = sc.read(buf);
+                    if (n < 0) {
+                        eof = true;
+                        break;
+                    }
+                    if (n == 0) {
+                        break;
+                    }
+                    if (session || !dispatched) {
+                        in.write(buf.array(), 0, n);
+                    }
+                    if (session && in.size() > MAX_REQUEST_BYTES) {
+                        // the rest is read once these requests are run
+                        break;
+                    }
+                }
+            } catch (IOException ex) {
+                LOGGER.debug("Error reading a request: " + ex.toString());
+                closeNow();
+                return;
+            }
+
+            if (eof) {
+                // keep the key for writing the reply
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            }
+            if (session) {
+                readSession(eof);
+                return;
+            }
+            if (dispatched) {
+                return;
+            }
+            if (in.size() > MAX_REQUEST_BYTES) {
+                dispatched = true;
+                send((ServerManager.MessageType.ERROR + "The request is too large\n").getBytes(CHARSET));
+                requestClose();
+                return;
+            }
+            byte[] request = in.toByteArray();
+            int sessionStart = sessionStart(request);
+            if (sessionStart >= 0) {
+                session = true;
+                sessionCount.incrementAndGet();
+                in.reset();
+                in.write(request, sessionStart, request.length - sessionStart);
+                send((ServerManager.MessageType.INFO + "Session open\n").getBytes(CHARSET));
+                readSession(eof);
+                return;
+            }
+            String text = new String(request, CHARSET);
+            if (eof && text.trim().isEmpty()) {
+                closeNow();
+            } else if (isComplete(text, eof, remote != null && remote.isLoopbackAddress())) {
+                dispatched = true;
+                in.reset();
+                requestCount.incrementAndGet();
+                ServerProcess process = new ServerProcess(server, new BufferedReader(new StringReader(text)),
+                        new PrintWriter(new ReplyWriter(this, null)), new DataOutput(this), remote, this);
+                try {
+                    requests.execute(process::run);
+                } catch (RuntimeException ex) {
+                    // shutting down
+                    closeNow();
+                }
+            }
+        }
+
+        /**
+         * Runs the complete requests of a session, each ends with a ; line,
+         * until MAX_IN_FLIGHT are running.  Then reading is paused, and the
+         * rest of the requests are run by {@link #replied()}.  Called only by
+         * the IoThread.
+         *
+         * @param eof true if the client closed its output
+         */
+        private void readSession(boolean eof) {
+
+            if (eof) {
+                inputEnded = true;
+            }
+            byte[] b = in.toByteArray();
+            int start = 0;
+            int lineStart = 0;
+            // a reply may lower inFlight at any time, but then it calls this again
+            boolean full = false;
+            for (int i = 0; i < b.length; i++) {
+                if (b[i] != '\n') {
+                    continue;
+                }
+                int lineEnd = (i > lineStart && b[i - 1] == '\r') ? i - 1 : i;
+                if (lineEnd - lineStart == 1 && b[lineStart] == ';') {
+                    if (inFlight.get() >= MAX_IN_FLIGHT) {
+                        full = true;
+                        break;
+                    }
+                    submit(new String(b, start, i + 1 - start, CHARSET));
+                    start = i + 1;
+                }
+                lineStart = i + 1;
+            }
+            in.reset();
+            in.write(b, start, b.length - start);
+
+            if (full) {
+                if (!readPaused && !inputEnded) {
+                    // the client must wait for replies before sending more
+                    readPaused = true;
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                }
+            } else if (inputEnded) {
+                String rest = in.toString();
+                if (!rest.trim().isEmpty()) {
+                    if (inFlight.get() >= MAX_IN_FLIGHT) {
+                        return;     // run by replied()
+                    }
+                    submit(rest);
+                }
+                in.reset();
+                if (inFlight.get() == 0) {
+                    requestClose();
+                }
+            } else if (in.size() > MAX_REQUEST_BYTES) {
+                send((ServerManager.MessageType.ERROR + "The request is too large\n").getBytes(CHARSET));
+                requestClose();
+            } else if (readPaused) {
+                readPaused = false;
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            }
+        }
+
+        /**
+         * Runs one request of a session, its first line is the request ID
+         * followed by the command
+         */
+        private void submit(String text) {
+
+            BufferedReader reader = new BufferedReader(new StringReader(text));
+            String header;
+            try {
+                do {
+                    header = reader.readLine();
+                } while (header != null && header.trim().isEmpty());
+            } catch (IOException ex) {
+                header = null;  // not from a StringReader
+            }
+            if (header == null) {
+                return;
+            }
+            String[] idCommand = header.trim().split("\\s+", 2);
+            String id = idCommand[0];
+            requestCount.incrementAndGet();
+            inFlight.incrementAndGet();
+            Reply reply = new Reply(this, id);
+            PrintWriter writer = new PrintWriter(reply.writer);
+            if (idCommand.length < 2) {
+                writer.println(ServerManager.MessageType.ERROR + "Expected a request ID and a command: " + header);
+                writer.flush();
+                reply.close();
+                return;
+            }
+            // the rest of the request, with the command in place of the header
+            String request = idCommand[1] + "\n" + text.substring(text.indexOf(header) + header.length());
+            ServerProcess process = new ServerProcess(server, new BufferedReader(new StringReader(request)),
+                    writer, null, remote, reply);
+            try {
+                requests.execute(process::run);
+            } catch (RuntimeException ex) {
+                // shutting down
+                closeNow();
+            }
+        }
+
+        /**
+         * Called when the reply to a session request was sent, may be called
+         * from any thread
+         */
+        private void replied() {
+            inFlight.decrementAndGet();
+            io.run(() -> {
+                if (!closed) {
+                    // runs the buffered requests before reading more
+                    readSession(false);
+                }
+            });
+        }
+
+        /**
+         * Queues a reply, may be called from any thread.  Waits while too
+         * much is queued, unless called by the IoThread.
+         */
+        private void send(byte[] bytes) {
+            if (bytes.length == 0) {
+                return;
+            }
+            queued.addAndGet(bytes.length);
+            out.add(ByteBuffer.wrap(bytes));
+            io.wantWrite(this);
+            if (Thread.currentThread() == io) {
+                return;
+            }
+            synchronized (drained) {
+                while (queued.get() > MAX_QUEUED_BYTES && !closed) {
+                    try {
+                        drained.wait(1000);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Closes the connection once the queued reply is written, may be
+         * called from any thread
+         */
+        private void requestClose() {
+            closeRequested = true;
+            io.wantWrite(this);
+        }
+
+        @Override
+        public void close() {
+            requestClose();
+        }
+
+        /**
+         * Called by the IoThread, writes what it can without blocking
+         */
+        private void write() {
+            if (closed) {
+                return;
+            }
+            try {
+                ByteBuffer b;
+                while ((b = out.peek()) != null) {
+                    sc.write(b);
+                    if (b.hasRemaining()) {
+                        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                        notifyDrained();
+                        return;
+                    }
+                    out.poll();
+                    queued.addAndGet(-b.capacity());
+                }
+                notifyDrained();
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                if (closeRequested && out.isEmpty()) {
+                    closeNow();
+                }
+            } catch (IOException ex) {
+                // the client did not wait for the reply
+                LOGGER.debug("Error writing a reply: " + ex.toString());
+                closeNow();
+            }
+        }
+
+        private void notifyDrained() {
+            if (queued.get() <= MAX_QUEUED_BYTES) {
+                synchronized (drained) {
+                    drained.notifyAll();
+                }
+            }
+        }
+
+        private void closeNow() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            out.clear();
+            queued.set(0);
+            notifyDrained();
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                sc.close();
+            } catch (IOException ex) {
+                LOGGER.debug("Error closing a connection: " + ex.toString());
+            }
+            openCount.decrementAndGet();
+            if (session) {
+                sessionCount.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * The bytes of a reply, for the output returned by a PRINT
+     */
+    private static final class DataOutput extends OutputStream {
+
+        private final Connection conn;
+
+        private DataOutput(Connection conn) {
+            this.conn = conn;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (conn.closed) {
+                throw new IOException("The client closed the connection");
+            }
+            conn.send(Arrays.copyOfRange(b, off, off + len));
+        }
+    }
+
+    /**
+     * The reply to one request of a session, ServerProcess closes it when
+     * the reply is complete
+     */
+    private static final class Reply implements Closeable {
+
+        private final Connection conn;
+        private final ReplyWriter writer;
+        private boolean closed = false;
+
+        private Reply(Connection conn, String id) {
+            this.conn = conn;
+            this.writer = new ReplyWriter(conn, id);
+        }
+
+        @Override
+        public synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            writer.end();
+            conn.replied();
+        }
+    }
+
+    /**
+     * The reply of a ServerProcess, sent when flushed.  In a session each
+     * line starts with the request ID, and a line of the ID and ; ends the
+     * reply.
+     */
+    private static final class ReplyWriter extends Writer {
+
+        private final Connection conn;
+        private final String id;
+        private final StringBuilder sb = new StringBuilder();
+
+        private ReplyWriter(Connection conn, String id) {
+            this.conn = conn;
+            this.id = id;
+        }
+
+        @Override
+        public synchronized void write(char[] cbuf, int off, int len) {
+            sb.append(cbuf, off, len);
+        }
+
+        @Override
+        public synchronized void flush() {
+            if (id == null) {
+                if (sb.length() > 0) {
+                    conn.send(sb.toString().getBytes(CHARSET));
+                    sb.setLength(0);
+                }
+                return;
+            }
+            // only complete lines, so replies sent at the same time do not mix
+            int end = sb.lastIndexOf("\n");
+            if (end >= 0) {
+                conn.send(prefix(sb.substring(0, end + 1)).getBytes(CHARSET));
+                sb.delete(0, end + 1);
+            }
+        }
+
+        /**
+         * Sends the rest of the reply and the end of reply line
+         */
+        private synchronized void end() {
+            flush();
+            if (sb.length() > 0) {
+                sb.append('\n');
+            }
+            sb.append(";\n");
+            conn.send(prefix(sb.toString()).getBytes(CHARSET));
+            sb.setLength(0);
+        }
+
+        private String prefix(String lines) {
+            StringBuilder b = new StringBuilder(lines.length() + 16);
+            for (String line : lines.split("\r?\n")) {
+                b.append(id).append(' ').append(line).append('\n');
+            }
+            return b.toString();
+        }
+
+        @Override
+        public void close() {
+            flush();
+        }
+    }
+
+    /**
+     * Reads and writes the connections it is given with a selector
+     */
+    private final class IoThread extends Thread {
+
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final ByteBuffer buf = ByteBuffer.allocate(8192);
+
+        private IoThread(int number) throws IOException {
+            super("JasperPrint-io-" + number);
+            setDaemon(true);
+            selector = Selector.open();
+        }
+
+        private void add(SocketChannel sc) {
+            tasks.add(() -> {
+                Connection conn = new Connection(sc, this);
+                try {
+                    sc.configureBlocking(false);
+                    conn.key = sc.register(selector, SelectionKey.OP_READ, conn);
+                } catch (IOException ex) {
+                    LOGGER.error("Error accepting a connection", ex);
+                    conn.closeNow();
+                }
+            });
+            selector.wakeup();
+        }
+
+        private void wantWrite(Connection conn) {
+            run(conn::write);
+        }
+
+        /**
+         * Runs the task on this thread
+         */
+        private void run(Runnable task) {
+            if (Thread.currentThread() == this) {
+                task.run();
+            } else {
+                tasks.add(task);
+                selector.wakeup();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (selector.isOpen()) {
+                    selector.select();
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey k = it.next();
+                        it.remove();
+                        Connection conn = (Connection) k.attachment();
+                        if (!k.isValid()) {
+                            conn.closeNow();
+                            continue;
+                        }
+                        if (k.isReadable()) {
+                            conn.read(buf);
+                        }
+                        if (k.isValid() && k.isWritable()) {
+                            conn.write();
+                        }
+                    }
+                    if (closed) {
+                        // drop the keys of the closed connections
+                        selector.selectNow();
+                        if (selector.keys().isEmpty()) {
+                            selector.close();
+                        }
+                    }
+                }
+            } catch (ClosedSelectorException ex) {
+                // shut down
+            } catch (IOException | RuntimeException ex) {
+                LOGGER.error("Error in " + getName() + ", it stopped", ex);
+            }
+        }
+    }
+
+}
@@ -18,6 +18,7 @@
 package com.ticktockdata.jasperserver;
 
 import com.ticktockdata.jasper.ConnectionInfo;
+import com.ticktockdata.jasper.QueryProfile;
 import java.net.Socket;
 import java.security.InvalidParameterException;
 import javax.swing.JOptionPane;
@@ -96,17 +97,41 @@ public class ServerManager {
      * @return status message text, syntax: MessageType | message text
      */
     public static String startPrintServer(int port, ConnectionInfo connInfo, boolean silent, boolean no_tray) {
+        return startPrintServer(port, connInfo, silent, no_tray, new String[0]);
+    }
+    
+    
+    /**
+     * Same as startPrintServer(port, connInfo, silent, no_tray), except that
+     * if a PrintServer is already running the settings are sent to it
+     * with the ADD of the connection.
+     * @param port
+     * @param connInfo
+     * @param silent
+     * @param no_tray
+     * @param settings the server settings as key / value pairs, such as
+     * --workers 4 (see CommandLineProcessor.getServerSettingArgs)
+     * @return status message text, syntax: MessageType | message text
+     */
+    public static String startPrintServer(int port, ConnectionInfo connInfo, boolean silent, boolean no_tray,
+            String[] settings) {
                 
         if (connInfo == null || !connInfo.isValidInfo(false)) {
             // if not valid connection info then we just START a server, don't 
             // add a connection
             if (isPrintServerRunning(LOCALHOST, port)) {
+                if (settings.length > 0) {
+                    // there is no connection to ADD, so nothing to send them with
+                    return MessageType.WARN + "There is already a PrintServer running on port " + port
+                            + ", its settings were not changed, restart it to apply them";
+                }
                 return MessageType.WARN + "There is already a PrintServer running on port " + port;
             }
             try {
                 PrintServer server = new PrintServer(port, connInfo, silent);
                 server.setSilent(silent);
                 server.setNoTray(no_tray);
+                CommandLineProcessor.applyRequestThreadArgs(settings, server);
                 server.start();
                 return MessageType.INFO + "Started Successfully with NO Connection registered: " + server.toString();
             } catch (Exception ex) {
@@ -162,6 +187,25 @@ public class ServerManager {
                 client.println(connInfo.getUser());
                 client.println("--password");
                 client.println(connInfo.getPassword());
+                // the pool settings, applied by the server's ADD
+                client.println("--min_conns");
+                client.println(String.valueOf(connInfo.getMinConnections()));
+                client.println("--max_conns");
+                client.println(String.valueOf(connInfo.getMaxConnections()));
+                client.println("--evict_secs");
+                client.println(String.valueOf(connInfo.getIdleTimeout()));
+                // and how the report queries are run
+                QueryProfile profile = connInfo.getQueryProfile();
+                client.println("--rows_per_fetch");
+                client.println(String.valueOf(profile.getFetchSize()));
+                client.println("--sql_timeout");
+                client.println(String.valueOf(profile.getStatementTimeout()));
+                client.println("--prefetch_rows");
+                client.println(String.valueOf(profile.getPrefetchRows()));
+                // and the settings of the server itself
+                for (String s : settings) {
+                    client.println(s);
+                }
                 if (silent) client.println("--silent");
                 
                 client.println(";");
@@ -186,6 +230,7 @@ public class ServerManager {
             try {
                 PrintServer server = new PrintServer(port, connInfo, silent);
                 server.setSilent(silent);
+                CommandLineProcessor.applyRequestThreadArgs(settings, server);
                 server.start();
                 return MessageType.INFO + "Started successfully: " + server.toString() + " with Connection " + connInfo.getIdentifier();
             } catch (Exception ex) {
@@ -22,6 +22,8 @@ import com.ticktockdata.jasper.JasperPrintMain;
 import com.ticktockdata.jasper.JasperReportImpl;
 import com.ticktockdata.jasper.PrintAction;
 import com.ticktockdata.jasper.PrintExecutor.Action;
+import com.ticktockdata.jasper.PrintStatusEvent.StatusCode;
+import com.ticktockdata.jasper.ReportBatch;
 import com.ticktockdata.jasper.ReportManager;
 import com.ticktockdata.jasperserver.PrintServer.Command;
 import static com.ticktockdata.jasperserver.ServerManager.LOGGER;
@@ -29,21 +31,29 @@ import com.ticktockdata.jasperserver.ServerManager.MessageType;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.ObjectInputStream;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.math.BigDecimal;
+import java.net.InetAddress;
 import java.net.Socket;
+import java.security.InvalidParameterException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
- * This class handles actual work for PrintServer - spawned from
- * server.connect()
+ * This class handles actual work for PrintServer - run by the
+ * {@link SelectorServer} for each request, once the whole request is read.
+ * It can also be started as a thread on a connected socket.
  * <p>
  * For some commands the server process returns a status message to the caller
  * (socket connection) which is always one of {INFO | WARN | ERROR}, followed by
@@ -57,13 +67,42 @@ public class ServerProcess extends Thread {
 
     private PrintServer server;
     private Socket socket;
+    private Closeable connection;
+    private InetAddress remoteAddress;
     private BufferedReader input = null;
     private PrintWriter output = null;
+    private OutputStream dataOutput = null;
+    private ChunkedOutputStream returned = null;
 
     public ServerProcess(PrintServer server, Socket socket) {
 
         this.server = server;
         this.socket = socket;
+        this.connection = socket;
+        this.remoteAddress = socket.getInetAddress();
+
+    }
+
+    /**
+     * Constructor for a request that was already read
+     *
+     * @param server
+     * @param input the request
+     * @param output the reply, sent when flushed
+     * @param dataOutput the same connection, for the output of a PRINT with
+     * --return true, null if not supported
+     * @param remoteAddress where the request came from
+     * @param connection closed when the reply is complete
+     */
+    ServerProcess(PrintServer server, BufferedReader input, PrintWriter output, OutputStream dataOutput,
+            InetAddress remoteAddress, Closeable connection) {
+
+        this.server = server;
+        this.input = input;
+        this.output = output;
+        this.dataOutput = dataOutput;
+        this.remoteAddress = remoteAddress;
+        this.connection = connection;
 
     }
 
@@ -72,8 +111,11 @@ public class ServerProcess extends Thread {
 
         try {
             // get input / output streams
-            input = new BufferedReader(new InputStreamReader(new BufferedInputStream(socket.getInputStream())));
-            output = new PrintWriter(new BufferedOutputStream(socket.getOutputStream()));
+            if (socket != null) {
+                input = new BufferedReader(new InputStreamReader(new BufferedInputStream(socket.getInputStream())));
+                dataOutput = new BufferedOutputStream(socket.getOutputStream());
+                output = new PrintWriter(dataOutput);
+            }
 
             String serverName = server.toString();
 
@@ -81,7 +123,7 @@ public class ServerProcess extends Thread {
             // but discard empty entries (in case direct communication via socket)
             String command = readLine();
             int readCt = 0;
-            while (input != null && !socket.isClosed() && (command == null || command.trim().isEmpty())) {
+            while (input != null && connection != null && (command == null || command.trim().isEmpty())) {
                 command = readLine();
                 readCt++;
                 if (readCt >= 20) {
@@ -156,8 +198,18 @@ public class ServerProcess extends Thread {
 
                     break;
                 case PRINT:
+                case SUBMIT:
+                case BATCH:
 
-                    processPrintJob();
+                    processPrintJob(cmd);
+
+                    break;
+                case POLL:
+                case WAIT:
+                case CANCEL:
+                case RESULT:
+
+                    processJobCommand(cmd);
 
                     break;
                 case HELP:
@@ -175,6 +227,7 @@ public class ServerProcess extends Thread {
         } catch (Exception ex) {
             LOGGER.error("Error during socket startup", ex);
             this.print(MessageType.ERROR + "Error during socket startup: " + ex.toString());
+            this.close();
         }
 
     }
@@ -220,6 +273,16 @@ System.out.println("Processing Help");
             case PRINT:
                 print(JasperPrintMain.getHelpPrint());
                 break;
+            case BATCH:
+                print(JasperPrintMain.getHelpBatch());
+                break;
+            case SUBMIT:
+            case POLL:
+            case WAIT:
+            case CANCEL:
+            case RESULT:
+                print(JasperPrintMain.getHelpJobs());
+                break;
             case HELP:
                 print(JasperPrintMain.getHelpHelp());
                 break;
@@ -257,8 +320,14 @@ System.out.println("Processing Help");
             
             // attempt to 
             server.addConnection(info, silent);
-
-            if (this.isAlive()) {
+            CommandLineProcessor.applyConnectionLimitArgs(args, info.getIdentifier());
+            // server settings, sent when START finds this server running
+            CommandLineProcessor.applyWorkerPoolArgs(args);
+            CommandLineProcessor.applyReportCacheArgs(args);
+            CommandLineProcessor.applyJobTableArgs(args);
+            CommandLineProcessor.applyRequestThreadArgs(args, server);
+
+            if (output != null) {
                 if (server.hasConnection(info.getIdentifier())) {
                     if (hasID) {
                         this.println(MessageType.INFO + serverName + " - Replaced an existing connection named " + info.getIdentifier());
@@ -280,11 +349,29 @@ System.out.println("Processing Help");
 
     /**
      * Routine that processes the commands for printing a document.
+     *
+     * @param cmd PRINT, SUBMIT (the report runs as a job of the
+     * {@link JobTable}, and the reply is its job ID) or BATCH (the report
+     * runs for each row of parameters after the --rows line)
      */
-    private void processPrintJob() {
+    private void processPrintJob(Command cmd) {
 
         String errs = "";
         String[] args = readCommands();
+        boolean replyLater = false;
+        boolean submit = (cmd == Command.SUBMIT);
+        
+        // the rows of a BATCH follow the --rows line
+        String[] rows = null;
+        if (cmd == Command.BATCH) {
+            for (int i = 0; i < args.length; i++) {
+                if ("--rows".equalsIgnoreCase(args[i])) {
+                    rows = Arrays.copyOfRange(args, i + 1, args.length);
+                    args = Arrays.copyOf(args, i);
+                    break;
+                }
+            }
+        }
 
         try {
             System.out.println("----------- listing args");
@@ -293,6 +380,20 @@ System.out.println("Processing Help");
             }
             System.out.println("----------- end of args");
 
+            // send the exported output back on this connection, no file
+            boolean returnOutput = Boolean.valueOf(CommandLineProcessor.getArgumentValue(args, "--return"));
+            if (returnOutput && cmd == Command.BATCH) {
+                errs += ("\n--return is not supported by " + Command.BATCH + ".");
+            } else if (returnOutput && !submit) {
+                if (dataOutput == null) {
+                    errs += ("\n--return is not supported in a " + Command.SESSION + ", use a connection of its own.");
+                } else {
+                    // from here on the reply starts with the output chunks
+                    output.flush();
+                    returned = new ChunkedOutputStream(dataOutput);
+                }
+            }
+
             // get the identifier, if any
             String id = CommandLineProcessor.getArgumentValue(args, "-id", "-n");
             if (id == null || id.trim().isEmpty()) {
@@ -320,6 +421,12 @@ System.out.println("Processing Help");
                     errs += ("\nInvalid --action specified: " + actionText);
                 }
             }
+            if (returnOutput && (action == null || !action.toString().contains("EXPORT"))) {
+                errs += ("\n--return requires an EXPORT_TO_XXX --action.");
+            }
+            if (cmd == Command.BATCH && (rows == null || rows.length == 0)) {
+                errs += ("\n" + Command.BATCH + " requires a --rows line, followed by a header line of parameter names and a line for each row.");
+            }
 
             // if there are any errors at this point then we need to exit
             if (!errs.isEmpty()) {
@@ -353,6 +460,45 @@ System.out.println("Processing Help");
                 report.setPromptForParameters(Boolean.valueOf(arg));
             }
 
+            // scheduling priority (not -pri, that is --printer)
+            arg = CommandLineProcessor.getArgumentValue(args, "--job_priority");
+            if (arg != null) {
+                report.setPriority(Integer.valueOf(arg));
+            }
+
+            // keep only some pages on the heap, for very large reports
+            arg = CommandLineProcessor.getArgumentValue(args, "--spool_mode");
+            if (arg != null) {
+                JasperReportImpl.Virtualization mode = JasperReportImpl.Virtualization.fromString(arg);
+                if (mode == null) {
+                    println(MessageType.ERROR + "Invalid --spool_mode specified: " + arg);
+                    return;
+                }
+                report.setVirtualization(mode);
+            }
+            arg = CommandLineProcessor.getArgumentValue(args, "--spool_pages");
+            if (arg != null) {
+                report.setVirtualizerMaxPages(Integer.valueOf(arg));
+            }
+
+            // reuse the filled report when run again within this many seconds
+            arg = CommandLineProcessor.getArgumentValue(args, "--result_ttl");
+            if (arg != null) {
+                report.setResultCacheTTL(Integer.valueOf(arg));
+            }
+
+            // fill from the data of an earlier run within this many seconds
+            arg = CommandLineProcessor.getArgumentValue(args, "--snapshot_ttl");
+            if (arg != null) {
+                report.setDataSnapshotTTL(Integer.valueOf(arg));
+            }
+
+            // fill the subreports on the shared subreport threads, or not
+            arg = CommandLineProcessor.getArgumentValue(args, "--subreport_pool");
+            if (arg != null) {
+                report.setPooledSubreports(Boolean.valueOf(arg));
+            }
+
             // *****************************************************************
             // if the action is for printing then check for printer, copies, etc.
             if (action.equals(Action.PRINT)) {
@@ -417,61 +563,376 @@ System.out.println("Processing Help");
                     }
                     String type = args[i + 1].trim().toUpperCase();
                     String name = args[i + 2];
-                    String val = args[i + 3];
-                    if ("STRING".equals(type)) {
-                        report.setParameter(name, val);
-                    } else if ("LONG".equals(type)) {
-                        report.setParameter(name, Long.valueOf(val));
-                    } else if ("INTEGER".equals(type)) {
-                        report.setParameter(name, Integer.valueOf(val));
-                    } else if ("BIGDECIMAL".equals(type)) {
-                        report.setParameter(name, new BigDecimal(val));
-                    } else if ("BOOLEAN".equals(type)) {
-                        report.setParameter(name, Boolean.valueOf(val));
-                    } else if ("DATE".equals(type)) {
-                        String[] dt = val.split("[\\-]");
-                        Calendar cal = GregorianCalendar.getInstance();
-                        cal.clear();
-                        cal.set(Integer.valueOf(dt[0]), Integer.valueOf(dt[1]), Integer.valueOf(dt[2]));
-                        report.setParameter(name, cal.getTime());
-                    } else if ("TIMESTAMP".equals(type)) {
-                        String[] s1 = val.split(" ");
-                        String[] dt = s1[0].split("[\\-]");
-                        String[] tm = s1[1].split("[\\:]");
-                        Calendar cal = GregorianCalendar.getInstance();
-                        cal.clear();
-                        cal.set(Integer.valueOf(dt[0]), Integer.valueOf(dt[1]), Integer.valueOf(dt[2]), Integer.valueOf(tm[0]), Integer.valueOf(tm[1]));
-                        // check for seconds
-                        if (dt.length > 2) {
-                            String[] sec = tm[2].split("[\\.]");
-                            cal.set(Calendar.SECOND, Integer.valueOf(sec[0]));
-                            if (sec.length > 1) {
-                                cal.set(Calendar.MILLISECOND, Integer.valueOf(sec[1]));
-                            }
-                        }
-                        //new java.sql.Timestamp(cal.getTime().getTime());
-                        report.setParameter(name, cal.getTime());
-                    } else {
+                    Object val = parseParameter(type, args[i + 3], null);
+                    if (val == null) {
                         println(MessageType.ERROR + "Invalid Parameter Type, don't know how to process " + type);
                         return;
                     }
+                    report.setParameter(name, val);
 
                     // increment counter
                     i += 3;
                 }
             }
 
+            if (cmd == Command.BATCH) {
+                ReportBatch batch = new ReportBatch(report.getDefinition(), Boolean.valueOf(CommandLineProcessor.getArgumentValue(args, "--merge")));
+                String err = readBatchRows(batch, rows);
+                if (err != null) {
+                    println(MessageType.ERROR + err);
+                    return;
+                }
+                batch.execute();
+                println(MessageType.INFO + "Queued a batch of " + batch.getRowCount() + " rows.");
+                return;
+            }
+
+            if (submit) {
+                // with --return the output is kept for RESULT
+                JobTable.Job job = JobTable.submit(report, returnOutput);
+                println(MessageType.INFO + "Submitted job " + job.getID());
+                return;
+            }
+
+            if (returned != null) {
+                // the exporter writes to this connection, reply when done
+                report.setExportOutputStream(returned);
+                replyLater = true;
+                report.execute().whenComplete((status, ex) -> finishReturned(status));
+                return;
+            }
+
             report.execute();
 
             println(MessageType.INFO + "Processed the print job and added to Executor queue.");
 
         } catch (Exception ex) {
-            println(MessageType.ERROR + "Error while processing " + PrintServer.Command.PRINT + " command: " + ex.toString());
+            println(MessageType.ERROR + "Error while processing " + cmd + " command: " + ex.toString());
             ex.printStackTrace();
+        } finally {
+            if (!replyLater) {
+                this.close();
+            }
+        }
+
+    }
+
+    /**
+     * Converts the text of a --parameter to its type.
+     *
+     * @param type STRING | LONG | INTEGER | BIGDECIMAL | BOOLEAN | DATE |
+     * TIMESTAMP | TIME
+     * @param val
+     * @param dateClass the java.util.Date subclass a DATE, TIMESTAMP or TIME
+     * is returned as, null for java.util.Date
+     * @return null if the type is not valid
+     */
+    private static Object parseParameter(String type, String val, Class<?> dateClass) {
+        if ("STRING".equals(type)) {
+            return val;
+        } else if ("LONG".equals(type)) {
+            return Long.valueOf(val);
+        } else if ("INTEGER".equals(type)) {
+            return Integer.valueOf(val);
+        } else if ("BIGDECIMAL".equals(type)) {
+            return new BigDecimal(val);
+        } else if ("BOOLEAN".equals(type)) {
+            return Boolean.valueOf(val);
+        } else if ("DATE".equals(type)) {
+            String[] dt = val.split("[\\-]");
+            Calendar cal = GregorianCalendar.getInstance();
+            cal.clear();
+            // Calendar months start at 0
+            cal.set(Integer.valueOf(dt[0]), Integer.valueOf(dt[1]) - 1, Integer.valueOf(dt[2]));
+            return toDateClass(cal.getTime(), dateClass);
+        } else if ("TIME".equals(type)) {
+            String[] tm = val.split("[\\:]");
+            Calendar cal = GregorianCalendar.getInstance();
+            cal.clear();
+            cal.set(Calendar.HOUR_OF_DAY, Integer.valueOf(tm[0]));
+            cal.set(Calendar.MINUTE, Integer.valueOf(tm[1]));
+            if (tm.length > 2) {
+                cal.set(Calendar.SECOND, Integer.valueOf(tm[2]));
+            }
+            return toDateClass(cal.getTime(), dateClass);
+        } else if ("TIMESTAMP".equals(type)) {
+            String[] s1 = val.split(" ");
+            String[] dt = s1[0].split("[\\-]");
+            String[] tm = s1[1].split("[\\:]");
+            Calendar cal = GregorianCalendar.getInstance();
+            cal.clear();
+            cal.set(Integer.valueOf(dt[0]), Integer.valueOf(dt[1]) - 1, Integer.valueOf(dt[2]), Integer.valueOf(tm[0]), Integer.valueOf(tm[1]));
+            // check for seconds
+            if (tm.length > 2) {
+                String[] sec = tm[2].split("[\\.]");
+                cal.set(Calendar.SECOND, Integer.valueOf(sec[0]));
+                if (sec.length > 1) {
+                    cal.set(Calendar.MILLISECOND, Integer.valueOf(sec[1]));
+                }
+            }
+            return toDateClass(cal.getTime(), dateClass);
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * @param date
+     * @param dateClass the class of the report parameter, or null
+     * @return the date as that class (JasperReports casts a
+     * java.sql.Timestamp parameter, for one), or as is if null
+     */
+    private static java.util.Date toDateClass(java.util.Date date, Class<?> dateClass) {
+        if (dateClass == java.sql.Timestamp.class) {
+            return new java.sql.Timestamp(date.getTime());
+        } else if (dateClass == java.sql.Date.class) {
+            return new java.sql.Date(date.getTime());
+        } else if (dateClass == java.sql.Time.class) {
+            return new java.sql.Time(date.getTime());
+        }
+        return date;
+    }
+
+    /**
+     * @param c the class of a report parameter
+     * @return the --parameter type to read it as, or null if it can not be
+     * read from text
+     */
+    private static String getParameterType(Class<?> c) {
+        if (c == String.class || c == Object.class) {
+            return "STRING";
+        } else if (c == Long.class) {
+            return "LONG";
+        } else if (c == Integer.class) {
+            return "INTEGER";
+        } else if (c == BigDecimal.class) {
+            return "BIGDECIMAL";
+        } else if (c == Boolean.class) {
+            return "BOOLEAN";
+        } else if (java.sql.Timestamp.class.isAssignableFrom(c)) {
+            return "TIMESTAMP";
+        } else if (java.sql.Time.class.isAssignableFrom(c)) {
+            return "TIME";
+        } else if (java.util.Date.class.isAssignableFrom(c)) {
+            return "DATE";
+        }
+        return null;
+    }
+
+    /**
+     * Adds the rows of a BATCH: the first line is the names of the report
+     * parameters, separated by commas, each other line is a row of values in
+     * the same order (CSV, a value with a comma or quote is quoted with ").
+     * The values are read as the class of the report's parameter, an empty
+     * value is not set.
+     *
+     * @param batch
+     * @param lines
+     * @return an error message, or null if all rows were added
+     */
+    private static String readBatchRows(ReportBatch batch, String[] lines) {
+
+        List<String> names = splitCSV(lines[0]);
+        String[] types = new String[names.size()];
+        for (int i = 0; i < types.length; i++) {
+            String name = names.get(i).trim();
+            names.set(i, name);
+            Class<?> c = batch.getParameterClass(name);
+            if (c == null) {
+                return "The report has no parameter named " + name;
+            }
+            types[i] = getParameterType(c);
+            if (types[i] == null) {
+                return "Parameter " + name + " of class " + c.getName() + " can not be read from a row";
+            }
+        }
+
+        for (int r = 1; r < lines.length; r++) {
+            if (lines[r].trim().isEmpty()) {
+                continue;
+            }
+            List<String> values = splitCSV(lines[r]);
+            if (values.size() != types.length) {
+                return "Row " + r + " has " + values.size() + " values, the header has " + types.length + ": " + lines[r];
+            }
+            Map<String, Object> params = new HashMap<>();
+            for (int i = 0; i < types.length; i++) {
+                String val = values.get(i);
+                if (val.isEmpty()) {
+                    continue;
+                }
+                try {
+                    params.put(names.get(i), parseParameter(types[i], "STRING".equals(types[i]) ? val : val.trim(),
+                            batch.getParameterClass(names.get(i))));
+                } catch (Exception ex) {
+                    return "Invalid value for " + names.get(i) + " in row " + r + ": " + val;
+                }
+            }
+            try {
+                batch.addRow(params);
+            } catch (InvalidParameterException ex) {
+                return ex.getMessage();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param line
+     * @return the values of a CSV line
+     */
+    private static List<String> splitCSV(String line) {
+
+        List<String> values = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    sb.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    sb.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(sb.toString());
+                sb.setLength(0);
+            } else {
+                sb.append(c);
+            }
+        }
+        values.add(sb.toString());
+        return values;
+    }
+
+    /**
+     * Processes the POLL, WAIT, CANCEL and RESULT commands for a job started
+     * by SUBMIT, the job is given by --job_id.  The reply is a status line of
+     * the job, like <b>INFO | Job 17 COMPLETE</b>.
+     *
+     * @param cmd
+     */
+    private void processJobCommand(Command cmd) {
+
+        String[] args = readCommands();
+        boolean replyLater = false;
+
+        try {
+            // RESULT --return true: the reply starts with the output chunks
+            if (cmd == Command.RESULT && Boolean.valueOf(CommandLineProcessor.getArgumentValue(args, "--return"))) {
+                if (dataOutput == null) {
+                    println(MessageType.ERROR + "--return is not supported in a " + Command.SESSION + ", use a connection of its own.");
+                    return;
+                }
+                output.flush();
+                returned = new ChunkedOutputStream(dataOutput);
+            }
+
+            String idText = CommandLineProcessor.getArgumentValue(args, "--job_id");
+            if (idText == null || idText.trim().isEmpty()) {
+                println(MessageType.ERROR + "--job_id is required for " + cmd);
+                return;
+            }
+            JobTable.Job job = JobTable.get(Long.valueOf(idText.trim()));
+            if (job == null) {
+                println(MessageType.WARN + "There is no job " + idText.trim() + ", its result was collected or it was removed.");
+                return;
+            }
+
+            switch (cmd) {
+                case CANCEL:
+                    JobTable.cancel(job);
+                    println(getJobStatus(job));
+                    break;
+                case WAIT:
+                    String timeout = CommandLineProcessor.getArgumentValue(args, "--timeout");
+                    int secs = (timeout == null || timeout.trim().isEmpty() ? 0 : Integer.valueOf(timeout.trim()));
+                    // reply when done, without holding this thread
+                    replyLater = true;
+                    JobTable.await(job, secs).whenComplete((status, ex) -> {
+                        try {
+                            println(getJobStatus(job));
+                        } finally {
+                            this.close();
+                        }
+                    });
+                    break;
+                case RESULT:
+                    if (!job.isFinished()) {
+                        println(MessageType.WARN + "Job " + job.getID() + " is " + job.getStatus() + ", it is not finished.");
+                        return;
+                    }
+                    if (returned != null && job.getStatus() == StatusCode.COMPLETE) {
+                        job.writeOutput(returned);
+                    }
+                    JobTable.remove(job);
+                    println(getJobStatus(job));
+                    break;
+                default:
+                    // POLL
+                    println(getJobStatus(job));
+            }
+
+        } catch (Exception ex) {
+            LOGGER.error("Error while processing " + cmd + " command", ex);
+            println(MessageType.ERROR + "Error while processing " + cmd + " command: " + ex.toString());
+        } finally {
+            if (!replyLater) {
+                this.close();
+            }
+        }
+    }
+
+    private static String getJobStatus(JobTable.Job job) {
+        StatusCode status = job.getStatus();
+        String text = "Job " + job.getID() + " " + status;
+        if (job.isFinished() && job.hasOutput()) {
+            text += " (" + job.getOutputSize() + " bytes of output)";
+        }
+        return (status == StatusCode.ERROR ? MessageType.ERROR : MessageType.INFO) + text;
+    }
+
+    /**
+     * Called when a PRINT with --return true is done, ends the returned output
+     * and replies with the status.
+     *
+     * @param status the final status of the job
+     */
+    private void finishReturned(StatusCode status) {
+
+        long total = returned.getTotal();
+        try {
+            endReturned();
+            if (status == StatusCode.COMPLETE) {
+                println(MessageType.INFO + "Returned " + total + " bytes.");
+            } else {
+                println(MessageType.ERROR + "The export did not complete, status " + status
+                        + ", the returned output is not complete.");
+            }
+        } catch (Exception ex) {
+            LOGGER.warn("Could not send the returned output: " + ex.toString());
         } finally {
             this.close();
         }
+    }
 
+    /**
+     * Sends the end chunk of the returned output (if any), before any text
+     * is written.
+     */
+    private void endReturned() {
+        if (returned != null && !returned.isFinished()) {
+            try {
+                returned.finish();
+            } catch (IOException ex) {
+                LOGGER.warn("Could not end the returned output: " + ex.toString());
+            }
+        }
     }
 
     /**
@@ -483,7 +944,7 @@ System.out.println("Processing Help");
 
         try {
             // close a specific connection, but do not shut down server
-            if (!socket.getInetAddress().isLoopbackAddress()) {
+            if (!remoteAddress.isLoopbackAddress()) {
                 this.println(MessageType.WARN + serverName + " - This operation is not permitted from a remote connection!");
                 this.close();
                 return;
@@ -531,7 +992,7 @@ System.out.println("Processing Help");
 
         try {
             
-            if (!socket.getInetAddress().isLoopbackAddress()) {
+            if (!remoteAddress.isLoopbackAddress()) {
                 this.println(MessageType.ERROR + serverName + " - It is not permitted to stop a Print Server running on annother host!");
                 return;
             }
@@ -657,6 +1118,7 @@ System.out.println("Processing Help");
      * @param text
      */
     public void print(String text) {
+        endReturned();
         output.print(text);
     }
 
@@ -667,11 +1129,13 @@ System.out.println("Processing Help");
      * @param text
      */
     public void println(String text) {
+        endReturned();
         output.println(text);
         output.flush();
     }
 
     public void println() {
+        endReturned();
         output.println();
         output.flush();
     }
@@ -683,16 +1147,22 @@ System.out.println("Processing Help");
 
     public synchronized void close() {
 
-        if (socket == null || socket.isClosed()) {
+        if (connection == null || (socket != null && socket.isClosed())) {
             LOGGER.debug("ServerProcess Socket already closed.");
             return;
         }
         try {
-            socket.close();
+            endReturned();
+            if (output != null) {
+                // send what was printed but not flushed
+                output.flush();
+            }
+            connection.close();
             // set variables null
             input = null;
             output = null;
             socket = null;
+            connection = null;
             LOGGER.debug("Closed the ServerProcess socket.");
         } catch (Exception ex) {
             LOGGER.error("Error while closing ServerProcess", ex);